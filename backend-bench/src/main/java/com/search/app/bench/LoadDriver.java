@@ -0,0 +1,429 @@
+package com.search.app.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.search.app.loadtest.SyntheticCorpus;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop load driver: each of {@code concurrency} clients sends its next request as soon as
+ * the previous one is answered, mixing searches, attachment downloads and uploads. For every
+ * corpus size and concurrency level it reports requests, errors, throughput and p50/p95/p99
+ * latency per operation, on stdout and as CSV.
+ * <p>
+ * With {@code app-jar} it starts the application once per corpus size under the
+ * {@code loadtest} profile, which seeds an in-memory database, and waits for the search index
+ * before measuring. The seeder is not part of the application jar: it comes from the backend's
+ * test jar ({@code fixtures-jar}, by default the {@code -tests} jar next to {@code app-jar}),
+ * which is put on the application's {@code loader.path}. With {@code base-url} it drives an application that is already running.
+ * Clients pick operations and queries from seeded generators, so runs are repeatable.
+ * Options are {@code name=value} arguments:
+ * <pre>
+ * app-jar=PATH [fixtures-jar=PATH] | base-url=URL   corpus-sizes=10000,100000  attachments=2
+ * concurrency=1,8,32  warmup=10  duration=30  (seconds)
+ * mix=search:90,download:8,upload:2  upload-bytes=65536  queries=1000  seed=1
+ * username=loadtest  password=loadtest123  port=18080  jvm-args="-Xmx2g"
+ * work-dir=target/loadtest  report=target/loadtest-report.csv
+ * </pre>
+ */
+public final class LoadDriver {
+
+    private static final Duration READY_TIMEOUT = Duration.ofMinutes(15);
+    private static final int TARGET_PAGES = 10;
+
+    private enum Op { SEARCH, DOWNLOAD, UPLOAD }
+
+    private final Map<String, String> options;
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+    private final ObjectMapper json = new ObjectMapper();
+    private final long seed;
+    private final List<String> queries;
+    private final byte[] uploadBytes;
+
+    private LoadDriver(Map<String, String> options) {
+        this.options = options;
+        this.seed = Long.parseLong(option("seed", "1"));
+        this.queries = SyntheticCorpus.queries(Integer.parseInt(option("queries", "1000")), seed);
+        this.uploadBytes = new byte[Integer.parseInt(option("upload-bytes", "65536"))];
+        new Random(seed).nextBytes(uploadBytes);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected name=value, got " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        new LoadDriver(options).run();
+    }
+
+    private void run() throws Exception {
+        List<Result> results = new ArrayList<>();
+        String appJar = option("app-jar", null);
+        if (appJar != null) {
+            for (String size : option("corpus-sizes", "10000").split(",")) {
+                Process app = start(Paths.get(appJar), size.trim());
+                try {
+                    String baseUrl = "http://localhost:" + option("port", "18080");
+                    awaitIndex(baseUrl, app);
+                    results.addAll(measure(baseUrl, size.trim()));
+                } finally {
+                    stop(app);
+                }
+            }
+        } else {
+            String baseUrl = option("base-url", "http://localhost:8080");
+            awaitIndex(baseUrl, null);
+            results.addAll(measure(baseUrl, "-"));
+        }
+        report(results);
+    }
+
+    private Process start(Path appJar, String size) throws IOException {
+        Path workDir = Paths.get(option("work-dir", "target/loadtest")).toAbsolutePath();
+        Files.createDirectories(workDir);
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        String jvmArgs = option("jvm-args", "");
+        if (!jvmArgs.isBlank()) {
+            command.addAll(Arrays.asList(jvmArgs.trim().split("\\s+")));
+        }
+        String defaultFixtures = appJar.getFileName().toString().replaceFirst("\\.jar$", "-tests.jar");
+        Path fixturesJar = Paths.get(option("fixtures-jar", appJar.resolveSibling(defaultFixtures).toString()));
+        // PropertiesLauncher rather than -jar, as only it adds loader.path to the application's classpath
+        command.addAll(List.of("-cp", appJar.toAbsolutePath().toString(),
+                "-Dloader.path=" + fixturesJar.toAbsolutePath(),
+                "org.springframework.boot.loader.launch.PropertiesLauncher",
+                "--spring.profiles.active=loadtest",
+                "--server.port=" + option("port", "18080"),
+                "--app.storage.dir=" + workDir.resolve("uploads-" + size),
+                "--app.loadtest.resources=" + size,
+                "--app.loadtest.attachments=" + option("attachments", "2"),
+                "--app.loadtest.seed=" + seed,
+                "--app.loadtest.username=" + option("username", "loadtest"),
+                "--app.loadtest.password=" + option("password", "loadtest123")));
+        Path log = workDir.resolve("app-" + size + ".log");
+        System.out.printf("Starting the application with %s resources (log: %s)%n", size, log);
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+    }
+
+    private static void stop(Process app) throws InterruptedException {
+        app.destroy();
+        if (!app.waitFor(30, TimeUnit.SECONDS)) {
+            app.destroyForcibly().waitFor();
+        }
+    }
+
+    /**
+     * Waits until searches are served by the index: only index searches return facets.
+     */
+    private void awaitIndex(String baseUrl, Process app) throws Exception {
+        long deadline = System.nanoTime() + READY_TIMEOUT.toNanos();
+        HttpRequest probe = HttpRequest.newBuilder(URI.create(baseUrl + "/api/resources/search?q=&facets=true")).build();
+        while (System.nanoTime() < deadline) {
+            if (app != null && !app.isAlive()) {
+                throw new IllegalStateException("Application exited with status " + app.exitValue());
+            }
+            try {
+                HttpResponse<String> response = client.send(probe, HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() == 200 && json.readTree(response.body()).path("facets").isObject()) {
+                    return;
+                }
+            } catch (IOException e) {
+                // not listening yet
+            }
+            Thread.sleep(500);
+        }
+        throw new IllegalStateException("Search index not ready after " + READY_TIMEOUT);
+    }
+
+    private List<Result> measure(String baseUrl, String corpus) throws Exception {
+        String token = login(baseUrl);
+        List<long[]> targets = downloadTargets(baseUrl, token);
+        Map<Op, Integer> mix = mix(!targets.isEmpty());
+        int warmup = Integer.parseInt(option("warmup", "10"));
+        int duration = Integer.parseInt(option("duration", "30"));
+        List<Result> results = new ArrayList<>();
+        for (String level : option("concurrency", "1,8,32").split(",")) {
+            int concurrency = Integer.parseInt(level.trim());
+            System.out.printf("Corpus %s, %d clients: %ds warm-up, %ds measured%n", corpus, concurrency, warmup, duration);
+            Client[] clients = new Client[concurrency];
+            long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmup);
+            long measureTo = measureFrom + TimeUnit.SECONDS.toNanos(duration);
+            ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+            try {
+                List<Future<?>> running = new ArrayList<>();
+                for (int i = 0; i < concurrency; i++) {
+                    clients[i] = new Client(baseUrl, token, targets, mix, new Random(seed * 1_000_003L + concurrency * 1_009L + i));
+                    Client c = clients[i];
+                    running.add(pool.submit(() -> c.loop(measureFrom, measureTo)));
+                }
+                for (Future<?> f : running) {
+                    f.get();
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+            List<Latencies> all = new ArrayList<>();
+            for (Op op : Op.values()) {
+                Latencies merged = new Latencies();
+                for (Client c : clients) {
+                    merged.addAll(c.latencies.get(op));
+                }
+                if (merged.count + merged.errors > 0) {
+                    results.add(merged.result(corpus, concurrency, op.name().toLowerCase(Locale.ROOT), duration));
+                    all.add(merged);
+                }
+            }
+            Latencies total = new Latencies();
+            all.forEach(total::addAll);
+            results.add(total.result(corpus, concurrency, "all", duration));
+        }
+        return results;
+    }
+
+    private String login(String baseUrl) throws Exception {
+        String body = json.writeValueAsString(Map.of(
+                "username", option("username", "loadtest"),
+                "password", option("password", "loadtest123")));
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/auth/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Login failed with status " + response.statusCode());
+        }
+        return json.readTree(response.body()).path("token").asText();
+    }
+
+    /**
+     * (resource id, attachment id) pairs from the first pages of the catalogue.
+     */
+    private List<long[]> downloadTargets(String baseUrl, String token) throws Exception {
+        List<long[]> targets = new ArrayList<>();
+        String cursor = "";
+        for (int page = 0; page < TARGET_PAGES && cursor != null; page++) {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(
+                            URI.create(baseUrl + "/api/resources?size=200&cursor=" + cursor))
+                    .header("Authorization", "Bearer " + token)
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                break;
+            }
+            JsonNode root = json.readTree(response.body());
+            for (JsonNode resource : root.path("content")) {
+                for (JsonNode attachment : resource.path("attachments")) {
+                    targets.add(new long[]{resource.path("id").asLong(), attachment.path("id").asLong()});
+                }
+            }
+            cursor = root.path("nextCursor").isTextual() ? root.path("nextCursor").asText() : null;
+        }
+        return targets;
+    }
+
+    private Map<Op, Integer> mix(boolean downloads) {
+        Map<Op, Integer> mix = new EnumMap<>(Op.class);
+        for (String part : option("mix", "search:90,download:8,upload:2").split(",")) {
+            String[] kv = part.trim().split(":");
+            mix.put(Op.valueOf(kv[0].trim().toUpperCase(Locale.ROOT)), Integer.parseInt(kv[1].trim()));
+        }
+        if (!downloads && mix.getOrDefault(Op.DOWNLOAD, 0) > 0) {
+            System.out.println("No attachments to download, leaving downloads out of the mix");
+            mix.remove(Op.DOWNLOAD);
+        }
+        return mix;
+    }
+
+    private void report(List<Result> results) throws IOException {
+        String header = String.format("%-8s %6s %-9s %9s %7s %10s %9s %9s %9s %9s",
+                "corpus", "conc", "op", "requests", "errors", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        System.out.println();
+        System.out.println(header);
+        for (Result r : results) {
+            System.out.printf(Locale.ROOT, "%-8s %6d %-9s %9d %7d %10.1f %9.2f %9.2f %9.2f %9.2f%n",
+                    r.corpus(), r.concurrency(), r.op(), r.requests(), r.errors(), r.throughput(),
+                    r.p50(), r.p95(), r.p99(), r.max());
+        }
+        Path csv = Paths.get(option("report", "target/loadtest-report.csv")).toAbsolutePath();
+        Files.createDirectories(csv.getParent());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(csv, StandardCharsets.UTF_8))) {
+            out.println("corpus,concurrency,op,requests,errors,throughput,p50_ms,p95_ms,p99_ms,max_ms");
+            for (Result r : results) {
+                out.printf(Locale.ROOT, "%s,%d,%s,%d,%d,%.2f,%.3f,%.3f,%.3f,%.3f%n",
+                        r.corpus(), r.concurrency(), r.op(), r.requests(), r.errors(), r.throughput(),
+                        r.p50(), r.p95(), r.p99(), r.max());
+            }
+        }
+        System.out.println("Report written to " + csv);
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    /**
+     * One closed-loop client with its own random stream and latency record per operation.
+     */
+    private final class Client {
+
+        private final String baseUrl;
+        private final String token;
+        private final List<long[]> targets;
+        private final Map<Op, Integer> mix;
+        private final int totalWeight;
+        private final Random random;
+        private final Map<Op, Latencies> latencies = new EnumMap<>(Op.class);
+
+        Client(String baseUrl, String token, List<long[]> targets, Map<Op, Integer> mix, Random random) {
+            this.baseUrl = baseUrl;
+            this.token = token;
+            this.targets = targets;
+            this.mix = mix;
+            this.totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+            this.random = random;
+            for (Op op : Op.values()) {
+                latencies.put(op, new Latencies());
+            }
+        }
+
+        void loop(long measureFrom, long measureTo) {
+            long now;
+            while ((now = System.nanoTime()) < measureTo) {
+                Op op = pick();
+                boolean ok;
+                try {
+                    ok = send(op);
+                } catch (IOException e) {
+                    ok = false;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (now >= measureFrom) {
+                    latencies.get(op).record(System.nanoTime() - now, ok);
+                }
+            }
+        }
+
+        private Op pick() {
+            int r = random.nextInt(totalWeight);
+            for (Map.Entry<Op, Integer> e : mix.entrySet()) {
+                r -= e.getValue();
+                if (r < 0) {
+                    return e.getKey();
+                }
+            }
+            throw new IllegalStateException("Empty mix");
+        }
+
+        private boolean send(Op op) throws IOException, InterruptedException {
+            HttpRequest request = switch (op) {
+                case SEARCH -> HttpRequest.newBuilder(URI.create(baseUrl + "/api/resources/search?size=10&q="
+                        + URLEncoder.encode(queries.get(random.nextInt(queries.size())), StandardCharsets.UTF_8))).build();
+                case DOWNLOAD -> {
+                    long[] target = targets.get(random.nextInt(targets.size()));
+                    yield HttpRequest.newBuilder(URI.create(baseUrl + "/api/resources/" + target[0] + "/download/" + target[1]))
+                            .header("Authorization", "Bearer " + token)
+                            .build();
+                }
+                case UPLOAD -> upload();
+            };
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        }
+
+        private HttpRequest upload() {
+            String boundary = "----loadtest" + Long.toHexString(random.nextLong());
+            String head = "--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"title\"\r\n"
+                    + "Content-Type: text/plain; charset=UTF-8\r\n\r\n"
+                    + SyntheticCorpus.title(random) + "\r\n"
+                    + "--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"files\"; filename=\"upload.bin\"\r\n"
+                    + "Content-Type: application/octet-stream\r\n\r\n";
+            String tail = "\r\n--" + boundary + "--\r\n";
+            return HttpRequest.newBuilder(URI.create(baseUrl + "/api/resources"))
+                    .header("Authorization", "Bearer " + token)
+                    .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                    .POST(HttpRequest.BodyPublishers.ofByteArrays(List.of(
+                            head.getBytes(StandardCharsets.UTF_8), uploadBytes, tail.getBytes(StandardCharsets.UTF_8))))
+                    .build();
+        }
+    }
+
+    /**
+     * Latencies of successful requests in nanoseconds, plus a count of failed ones.
+     */
+    private static final class Latencies {
+
+        private long[] values = new long[1024];
+        private int count;
+        private long errors;
+
+        void record(long nanos, boolean ok) {
+            if (!ok) {
+                errors++;
+                return;
+            }
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = nanos;
+        }
+
+        void addAll(Latencies other) {
+            if (count + other.count > values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, count + other.count));
+            }
+            System.arraycopy(other.values, 0, values, count, other.count);
+            count += other.count;
+            errors += other.errors;
+        }
+
+        Result result(String corpus, int concurrency, String op, int seconds) {
+            long[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            return new Result(corpus, concurrency, op, count, errors, (count + errors) / (double) seconds,
+                    millis(sorted, 50), millis(sorted, 95), millis(sorted, 99), count > 0 ? sorted[count - 1] / 1e6 : 0);
+        }
+
+        /**
+         * Nearest-rank percentile in milliseconds.
+         */
+        private static double millis(long[] sorted, int percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+            return sorted[Math.max(0, rank - 1)] / 1e6;
+        }
+    }
+
+    private record Result(String corpus, int concurrency, String op, long requests, long errors, double throughput,
+                          double p50, double p95, double p99, double max) {}
+}
@@ -0,0 +1,85 @@
+package com.search.app.search;
+
+import com.search.app.loadtest.SyntheticCorpus;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query evaluation against an {@link InvertedIndex} holding a synthetic corpus of
+ * {@code corpusSize} resources, one first page of 10 hits per operation. Each operation takes
+ * the next query from a fixed list, so common and rare terms are mixed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexSearchBenchmark {
+
+    private static final int QUERIES = 256;
+    private static final int PAGE = 10;
+    private static final int EXACT_TOTAL_THRESHOLD = 10_000;
+    private static final SearchFilter COLLEGE = new SearchFilter(List.of("计算机学院"), List.of(), List.of());
+    private static final HighlightParams HIGHLIGHT = new HighlightParams(120, 16384);
+
+    @Param({"10000", "100000"})
+    public int corpusSize;
+
+    private InvertedIndex index;
+    private List<List<String>> queries;
+    private int next;
+
+    @Setup
+    public void setup() {
+        RankingParams ranking = new RankingParams(1.2f, 0.75f, 3.0f, 1.0f, 0.5f, 0.4f, 365, 0.2f,
+                RankingParams.Strategy.TOPK);
+        index = new InvertedIndex(new CjkBigramAnalyzer(), ranking);
+        SyntheticCorpus.generate(corpusSize, 2, 1).forEach(index::add);
+        // split the way ResourceSearchService does before handing tokens to the index
+        queries = SyntheticCorpus.queries(QUERIES, 7).stream()
+                .map(q -> Arrays.asList(q.trim().toLowerCase(Locale.ROOT).split("\\s+")))
+                .toList();
+    }
+
+    @Benchmark
+    public SearchHits andRelevance() {
+        return search(true, "relevance", 0, false, SearchFilter.NONE, null);
+    }
+
+    @Benchmark
+    public SearchHits orRelevance() {
+        return search(false, "relevance", 0, false, SearchFilter.NONE, null);
+    }
+
+    @Benchmark
+    public SearchHits andByDate() {
+        return search(true, "date", 0, false, SearchFilter.NONE, null);
+    }
+
+    @Benchmark
+    public SearchHits fuzzy() {
+        return search(true, "relevance", 2, false, SearchFilter.NONE, null);
+    }
+
+    @Benchmark
+    public SearchHits facetsWithFilter() {
+        return search(true, "relevance", 0, true, COLLEGE, null);
+    }
+
+    @Benchmark
+    public SearchHits highlighted() {
+        return search(true, "relevance", 0, false, SearchFilter.NONE, HIGHLIGHT);
+    }
+
+    private SearchHits search(boolean and, String sort, int maxEdits, boolean facets, SearchFilter filter,
+                              HighlightParams highlight) {
+        List<String> tokens = queries.get(next++ & (QUERIES - 1));
+        return index.search(new IndexQuery(tokens, and, sort, 0, PAGE, EXACT_TOTAL_THRESHOLD, null, maxEdits, facets,
+                filter, highlight));
+    }
+}
@@ -0,0 +1,83 @@
+package com.search.app.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upload and download throughput of {@link FileStorageService} on the local disk, for files of
+ * {@code fileSize} bytes. Bytes per second is {@code fileSize} times the reported operations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileStorageBenchmark {
+
+    @Param({"65536", "4194304"})
+    public int fileSize;
+
+    private Path dir;
+    private FileStorageService storage;
+    private MockMultipartFile upload;
+    private String stored;
+    private FileStorageService.StoredFile lastStored;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("storage-bench");
+        storage = new FileStorageService(dir.toString());
+        byte[] bytes = new byte[fileSize];
+        new Random(5).nextBytes(bytes);
+        upload = new MockMultipartFile("files", "notes.pdf", "application/pdf", bytes);
+        FileStorageService.StoredFile file = storage.store(upload, Long.MAX_VALUE);
+        storage.settle(List.of(file), true);
+        stored = file.storedName();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    /**
+     * Removes what {@link #store()} wrote, so the disk does not fill up during long runs.
+     */
+    @TearDown(Level.Invocation)
+    public void removeStored() throws IOException {
+        if (lastStored != null) {
+            storage.settle(List.of(lastStored), true);
+            storage.delete(lastStored.storedName());
+            lastStored = null;
+        }
+    }
+
+    @Benchmark
+    public String store() throws IOException {
+        lastStored = storage.store(upload, Long.MAX_VALUE);
+        return lastStored.storedName();
+    }
+
+    /**
+     * The copy {@link FileDownloadService} falls back to when the connector cannot sendfile.
+     */
+    @Benchmark
+    public long load() throws IOException {
+        try (FileChannel channel = FileChannel.open(storage.path(stored), StandardOpenOption.READ)) {
+            return channel.transferTo(0, channel.size(), Channels.newChannel(OutputStream.nullOutputStream()));
+        }
+    }
+}
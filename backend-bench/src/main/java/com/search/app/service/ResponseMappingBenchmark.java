@@ -0,0 +1,78 @@
+package com.search.app.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.search.app.dto.AttachmentResponse;
+import com.search.app.dto.PageResponse;
+import com.search.app.dto.ResourceResponse;
+import com.search.app.loadtest.SyntheticCorpus;
+import com.search.app.model.enums.AttachmentCategory;
+import com.search.app.search.IndexedResource;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning one page of projection rows into {@link ResourceResponse}s the way {@link ResourceHydrator}
+ * does, and writing the page as JSON with a mapper configured like Spring Boot's.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseMappingBenchmark {
+
+    @Param({"20", "100"})
+    public int pageSize;
+
+    private List<Object[]> resourceRows;
+    private List<Object[]> attachmentRows;
+    private PageResponse<ResourceResponse> page;
+    private ObjectMapper mapper;
+
+    @Setup
+    public void setup() {
+        resourceRows = new ArrayList<>(pageSize);
+        attachmentRows = new ArrayList<>();
+        long attachmentId = 1;
+        // rows shaped like CourseResourceRepository.findSummaryRows and ResourceAttachmentRepository.findResponseRows
+        for (IndexedResource resource : SyntheticCorpus.generate(pageSize, 2, 3)) {
+            resourceRows.add(new Object[]{resource.id(), resource.title(), resource.college(), resource.uploader(),
+                    resource.createdAt()});
+            for (int i = 0; i < resource.attachmentNames().size(); i++) {
+                attachmentRows.add(new Object[]{resource.id(), attachmentId++, resource.attachmentNames().get(i),
+                        "application/octet-stream", 1L << 20, AttachmentCategory.valueOf(resource.categories().get(i))});
+            }
+        }
+        mapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        page = new PageResponse<>(map(), 1, pageSize, 1000, 1000 / pageSize);
+    }
+
+    @Benchmark
+    public List<ResourceResponse> map() {
+        Map<Long, List<AttachmentResponse>> attachments = ResourceHydrator.groupAttachments(attachmentRows);
+        List<ResourceResponse> responses = new ArrayList<>(resourceRows.size());
+        for (Object[] row : resourceRows) {
+            responses.add(ResourceHydrator.toResponse(row, attachments));
+        }
+        return responses;
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return mapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public byte[] mapAndSerialize() throws Exception {
+        return mapper.writeValueAsBytes(new PageResponse<>(map(), 1, pageSize, 1000, 1000 / pageSize));
+    }
+}
@@ -0,0 +1,71 @@
+package com.search.app.service;
+
+import com.search.app.loadtest.SyntheticCorpus;
+import com.search.app.search.Analyzer;
+import com.search.app.search.CjkBigramAnalyzer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query tokenization ({@link ResourceSearchService#tokenize} followed by the analyzer) and the
+ * analysis of titles and attachment text done while indexing. Terms are copied out as Strings,
+ * as the index does. Scores are per string.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizationBenchmark {
+
+    private static final int STRINGS = 1024;
+
+    private final Analyzer analyzer = new CjkBigramAnalyzer();
+    private List<String> queries;
+    private List<String> titles;
+    private List<String> texts;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        queries = SyntheticCorpus.queries(STRINGS, 7);
+        titles = new ArrayList<>(STRINGS);
+        texts = new ArrayList<>(STRINGS);
+        for (int i = 0; i < STRINGS; i++) {
+            titles.add(SyntheticCorpus.title(random));
+            texts.add(SyntheticCorpus.text(random, 400));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STRINGS)
+    public void query(Blackhole bh) {
+        for (String q : queries) {
+            for (String token : ResourceSearchService.tokenize(q)) {
+                analyzer.analyze(token, true, (buf, len, start, end) -> bh.consume(new String(buf, 0, len)));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STRINGS)
+    public void title(Blackhole bh) {
+        for (String title : titles) {
+            analyzer.analyze(title, false, (buf, len, start, end) -> bh.consume(new String(buf, 0, len)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STRINGS)
+    public void attachmentText(Blackhole bh) {
+        for (String text : texts) {
+            analyzer.analyze(text, false, (buf, len, start, end) -> bh.consume(new String(buf, 0, len)));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.search.app.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A benchmark whose queries find nothing measures an early return, so each operation is run once
+ * over the whole query list and has to do real work for most of it.
+ */
+class IndexSearchBenchmarkTest {
+
+    private final IndexSearchBenchmark benchmark = new IndexSearchBenchmark();
+
+    @BeforeEach
+    void setUp() {
+        benchmark.corpusSize = 2000;
+        benchmark.setup();
+    }
+
+    @Test
+    void mostQueriesFindAFullPage() {
+        for (Supplier<SearchHits> operation : List.<Supplier<SearchHits>>of(benchmark::andRelevance,
+                benchmark::orRelevance, benchmark::andByDate, benchmark::fuzzy)) {
+            List<SearchHits> results = cycle(operation);
+
+            assertThat(results).allSatisfy(hits -> assertThat(hits.ids()).hasSizeLessThanOrEqualTo(10));
+            assertThat(results.stream().filter(hits -> hits.ids().size() == 10).count()).isGreaterThan(128);
+        }
+    }
+
+    @Test
+    void facetAndHighlightOperationsProduceThem() {
+        assertThat(cycle(benchmark::facetsWithFilter).stream().filter(hits -> !hits.facets().isEmpty()).count())
+                .isGreaterThan(128);
+        assertThat(cycle(benchmark::highlighted).stream().filter(hits -> !hits.highlights().isEmpty()).count())
+                .isGreaterThan(128);
+    }
+
+    private static List<SearchHits> cycle(Supplier<SearchHits> operation) {
+        List<SearchHits> results = new ArrayList<>();
+        for (int i = 0; i < 256; i++) {
+            results.add(operation.get());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,33 @@
+package com.search.app.config;
+
+import com.search.app.search.Analyzer;
+import com.search.app.search.CjkBigramAnalyzer;
+import com.search.app.search.RankingParams;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class SearchConfig {
+
+    // Shared by indexing and querying; swap the bean to change how text is split into terms
+    @Bean
+    public Analyzer analyzer() {
+        return new CjkBigramAnalyzer();
+    }
+
+    @Bean
+    public RankingParams rankingParams(
+            @Value("${app.search.bm25.k1:1.2}") float k1,
+            @Value("${app.search.bm25.b:0.75}") float b,
+            @Value("${app.search.boost.title:3.0}") float titleBoost,
+            @Value("${app.search.boost.attachment:1.0}") float attachmentBoost,
+            @Value("${app.search.boost.college:0.5}") float collegeBoost,
+            @Value("${app.search.boost.content:0.4}") float contentBoost,
+            @Value("${app.search.recency.half-life-days:365}") double recencyHalfLifeDays,
+            @Value("${app.search.recency.weight:0.2}") float recencyWeight,
+            @Value("${app.search.ranking.strategy:topk}") String strategy) {
+        return new RankingParams(k1, b, titleBoost, attachmentBoost, collegeBoost, contentBoost, recencyHalfLifeDays, recencyWeight,
+                RankingParams.Strategy.valueOf(strategy.trim().toUpperCase()));
+    }
+}
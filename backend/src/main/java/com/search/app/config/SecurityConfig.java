@@ -34,6 +34,8 @@ public class SecurityConfig {
             .authorizeHttpRequests(authorize -> authorize
                 .requestMatchers("/api/auth/**").permitAll()
                 .requestMatchers("/api/resources/search").permitAll()
+                .requestMatchers("/api/resources/suggest").permitAll()
+                .requestMatchers("/actuator/health").permitAll()
                 .anyRequest().authenticated()
             );
         // Add JWT authentication filter before username/password filter
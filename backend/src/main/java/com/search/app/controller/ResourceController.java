@@ -3,36 +3,59 @@ package com.search.app.controller;
 import com.search.app.dto.AttachmentResponse;
 import com.search.app.dto.PageResponse;
 import com.search.app.dto.ResourceResponse;
+import com.search.app.dto.UploadCompleteRequest;
+import com.search.app.dto.UploadInitRequest;
+import com.search.app.metrics.SearchProfile;
+import com.search.app.metrics.SearchTrace;
+import com.search.app.metrics.SlowQueryLog;
 import com.search.app.model.CourseResource;
 import com.search.app.model.ResourceAttachment;
 import com.search.app.model.enums.AttachmentCategory;
 import com.search.app.repository.CourseResourceRepository;
 import com.search.app.repository.ResourceAttachmentRepository;
-import com.search.app.repository.UserRepository;
+import com.search.app.search.InvalidCursorException;
+import com.search.app.search.PrefixSuggester;
+import com.search.app.search.SearchCursor;
+import com.search.app.search.SearchFilter;
+import com.search.app.service.ChunkedUploadService;
+import com.search.app.service.FileDownloadService;
 import com.search.app.service.FileStorageService;
+import com.search.app.service.ResourceExportService;
+import com.search.app.service.ResourceHydrator;
 import com.search.app.service.ResourceSearchService;
+import com.search.app.service.ResourceUploadService;
+import com.search.app.service.SearchIndexService;
+import com.search.app.service.SearchResultCache;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.stream.Collectors;
 
 @RestController
@@ -41,6 +64,10 @@ public class ResourceController {
 
     private static final long MAX_FILE_SIZE = 50L * 1024 * 1024; // 50MB per file
     private static final String SUPER_DELETER = "testqwq";
+    private static final int MAX_LIST_PAGE_SIZE = 200;
+    private static final int MAX_SEARCH_PAGE_SIZE = 100;
+    private static final String CATALOGUE_EPOCH = Long.toString(System.currentTimeMillis(), 36);
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
 
     @Autowired
     private CourseResourceRepository resourceRepository;
@@ -51,14 +78,34 @@ public class ResourceController {
     @Autowired
     private FileStorageService storageService;
 
+    @Autowired
+    private FileDownloadService downloadService;
+
+    @Autowired
+    private ResourceUploadService uploadService;
+
+    @Autowired
+    private ChunkedUploadService chunkedUploadService;
+
     @Autowired
     private ResourceSearchService searchService;
 
     @Autowired
-    private UserRepository userRepository;
+    private SearchIndexService indexService;
+
+    @Autowired
+    private ResourceHydrator hydrator;
+
+    @Autowired
+    private ResourceExportService exportService;
+
+    @Autowired
+    private SearchResultCache searchCache;
+
+    @Autowired
+    private SlowQueryLog slowQueryLog;
 
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    @Transactional
     public ResponseEntity<?> upload(
             @RequestPart("title") @NotBlank String title,
             @RequestPart(value = "college", required = false) String college,
@@ -73,69 +120,242 @@ public class ResourceController {
             return ResponseEntity.badRequest().body("请至少上传一个附件");
         }
 
-        CourseResource resource = new CourseResource();
-        resource.setTitle(title.trim());
-        if (college != null) {
-            resource.setCollege(college.trim());
+        CourseResource resource = uploadService.upload(newResource(title, college), currentUsername(), files,
+                resolveCategories(categories, type, files.size()), MAX_FILE_SIZE);
+
+        ResourceResponse resp = toResponse(resource);
+        return ResponseEntity.ok(resp);
+    }
+
+    /**
+     * Starts a resumable upload of one file, for files too large to send in one multipart request.
+     * Send the bytes with {@code PUT /uploads/{uploadId}?offset=}, in chunks of any size, in any
+     * order and in parallel if wanted; {@code GET} reports the ranges received so far, so an
+     * interrupted upload resends only what is missing. {@code /uploads/complete} then creates the
+     * resource from one or more finished uploads.
+     */
+    @PostMapping("/uploads")
+    public ResponseEntity<?> startUpload(@Valid @RequestBody UploadInitRequest request) throws IOException {
+        if (request.getSize() > chunkedUploadService.maxBytes()) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body("文件超过大小限制");
         }
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        if (authentication != null && authentication.isAuthenticated()) {
-            userRepository.findByUsername(authentication.getName()).ifPresent(resource::setUploader);
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(chunkedUploadService.start(currentUsername(),
+                    request.getFilename(), request.getSize(), request.getContentType()));
+        } catch (ChunkedUploadService.LimitExceededException e) {
+            HttpStatus status = e.limit() == ChunkedUploadService.LimitExceededException.Limit.SESSIONS
+                    ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.PAYLOAD_TOO_LARGE;
+            return ResponseEntity.status(status).body(e.getMessage());
         }
+    }
 
-        resource = resourceRepository.save(resource);
+    @PutMapping(value = "/uploads/{uploadId}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> uploadChunk(@PathVariable String uploadId, @RequestParam("offset") long offset,
+                                         HttpServletRequest request) {
+        try {
+            return ResponseEntity.ok(chunkedUploadService.write(currentUsername(), uploadId, offset,
+                    request.getContentLengthLong(), request.getInputStream()));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            // What arrived before the connection dropped is kept; the status shows where to resume
+            return ResponseEntity.badRequest().body("分片未传完整");
+        }
+    }
 
-        for (int i = 0; i < files.size(); i++) {
-            MultipartFile file = files.get(i);
-            FileStorageService.StoredFile saved = storageService.store(file, MAX_FILE_SIZE);
-            ResourceAttachment att = new ResourceAttachment();
-            att.setResource(resource);
-            att.setOriginalName(saved.originalName());
-            att.setStoredName(saved.storedName());
-            att.setContentType(saved.contentType());
-            att.setSize(saved.size());
-            AttachmentCategory cat = resolveCategory(categories, i);
-            if (cat == null) {
-                cat = resolveType(type);
-            }
-            att.setCategory(cat);
-            attachmentRepository.save(att);
-            resource.getAttachments().add(att);
+    @GetMapping("/uploads/{uploadId}")
+    public ResponseEntity<?> uploadStatus(@PathVariable String uploadId) {
+        try {
+            return ResponseEntity.ok(chunkedUploadService.status(currentUsername(), uploadId));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
         }
+    }
 
-        ResourceResponse resp = toResponse(resource);
-        return ResponseEntity.ok(resp);
+    @DeleteMapping("/uploads/{uploadId}")
+    public ResponseEntity<?> abortUpload(@PathVariable String uploadId) throws IOException {
+        try {
+            chunkedUploadService.abort(currentUsername(), uploadId);
+            return ResponseEntity.noContent().build();
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        }
     }
 
+    @PostMapping("/uploads/complete")
+    public ResponseEntity<?> completeUpload(@Valid @RequestBody UploadCompleteRequest request) throws IOException {
+        if (request.getTitle().trim().isEmpty()) {
+            return ResponseEntity.badRequest().body("标题不能为空");
+        }
+        String uploader = currentUsername();
+        List<FileStorageService.StoredFile> stored;
+        try {
+            stored = chunkedUploadService.take(uploader, request.getUploads());
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+        CourseResource resource = uploadService.create(newResource(request.getTitle(), request.getCollege()), uploader,
+                stored, resolveCategories(request.getCategories(), request.getType(), stored.size()));
+        return ResponseEntity.ok(toResponse(resource));
+    }
+
+    /**
+     * One page of the catalogue in id order; pass the returned {@code nextCursor} back as {@code cursor}
+     * to continue. Use {@code /export} to read everything in one response.
+     */
     @GetMapping
-    public List<ResourceResponse> list() {
-        return resourceRepository.findAll().stream()
-                .map(this::toResponse)
-                .collect(Collectors.toList());
+    public PageResponse<ResourceResponse> list(
+            @RequestParam(value = "size", defaultValue = "50") int size,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            ServletWebRequest webRequest
+    ) {
+        if (notModified(webRequest)) {
+            return null;
+        }
+        size = Math.max(1, Math.min(size, MAX_LIST_PAGE_SIZE));
+        long afterId = 0;
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                afterId = Long.parseLong(cursor);
+            } catch (NumberFormatException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "无效的分页游标", e);
+            }
+        }
+
+        List<ResourceResponse> content = hydrator.hydrateAfter(afterId, size + 1);
+        String nextCursor = null;
+        if (content.size() > size) {
+            content = content.subList(0, size);
+            nextCursor = String.valueOf(content.get(size - 1).getId());
+        }
+        long total = indexService.isReady() ? indexService.size() : resourceRepository.count();
+        return new PageResponse<>(content, null, size, total, null, true, nextCursor, null, null, null);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export() {
+        StreamingResponseBody body = exportService::writeNdjson;
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=resources.ndjson")
+                .body(body);
     }
 
     @GetMapping("/search")
     public PageResponse<ResourceResponse> search(
-            @RequestParam("q") String q,
+            @RequestParam(value = "q", defaultValue = "") String q,
             @RequestParam(value = "page", defaultValue = "1") int page,
             @RequestParam(value = "size", defaultValue = "10") int size,
             @RequestParam(value = "sort", defaultValue = "relevance") String sort,
-            @RequestParam(value = "mode", defaultValue = "and") String mode
+            @RequestParam(value = "mode", defaultValue = "and") String mode,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "fuzzy", defaultValue = "false") boolean fuzzy,
+            @RequestParam(value = "facets", defaultValue = "false") boolean facets,
+            @RequestParam(value = "college", required = false) List<String> colleges,
+            @RequestParam(value = "category", required = false) List<String> categories,
+            @RequestParam(value = "uploader", required = false) List<String> uploaders,
+            @RequestParam(value = "highlight", defaultValue = "false") boolean highlight,
+            @RequestParam(value = "profile", defaultValue = "false") boolean profile,
+            ServletWebRequest webRequest
     ) {
+        if (profile) {
+            // Profiles expose timings and index statistics; keep them to signed-in users
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            if (authentication == null || authentication instanceof AnonymousAuthenticationToken) {
+                throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "未登录");
+            }
+        } else if (notModified(webRequest, SearchCursor.sortKey(sort).equals("relevance"))) {
+            return null;
+        }
         int pageIndex = Math.max(0, page - 1);
-        Pageable pageable = switch (sort) {
-            case "date" -> PageRequest.of(pageIndex, size, Sort.by(Sort.Direction.DESC, "createdAt"));
-            case "name" -> PageRequest.of(pageIndex, size, Sort.by(Sort.Direction.ASC, "title"));
-            default -> PageRequest.of(pageIndex, size);
-        };
+        size = Math.max(1, Math.min(size, MAX_SEARCH_PAGE_SIZE));
+        ResourceSearchService.SearchResult result;
+        try {
+            Pageable pageable = switch (sort) {
+                case "date" -> PageRequest.of(pageIndex, size, Sort.by(Sort.Direction.DESC, "createdAt"));
+                case "name" -> PageRequest.of(pageIndex, size, Sort.by(Sort.Direction.ASC, "title"));
+                default -> PageRequest.of(pageIndex, size);
+            };
+            result = searchService.search(q, mode, sort, pageable, cursor, fuzzy, facets,
+                    new SearchFilter(colleges, categories, uploaders), highlight);
+        } catch (InvalidCursorException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "无效的分页游标", e);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "无效的查询参数", e);
+        }
 
-        Page<CourseResource> resultPage = searchService.search(q, mode, sort, pageable);
+        long hydrateStart = System.nanoTime();
+        List<ResourceResponse> content = hydrator.hydrate(result.ids());
+        SearchTrace.record(SearchTrace.Stage.HYDRATE, hydrateStart);
 
-        List<ResourceResponse> content = resultPage.getContent().stream()
-                .map(this::toResponse)
-                .collect(Collectors.toList());
+        boolean byNumber = cursor == null || cursor.isBlank();
+        Integer totalPages = byNumber ? (int) ((result.total() + size - 1) / size) : null;
+        SearchTrace.handlerDone(content.size(), result.total());
+        SearchProfile searchProfile = profile && SearchTrace.current() != null ? SearchTrace.current().profile() : null;
+        return new PageResponse<>(content, byNumber ? pageIndex + 1 : null, size, result.total(), totalPages,
+                result.totalExact(), result.nextCursor(), result.facets(), result.highlights(), searchProfile);
+    }
+
+    /**
+     * Answers a conditional GET for a page derived from the catalogue. Pages only change when the
+     * catalogue does, so its generation (plus a per-process epoch, as generations restart at zero)
+     * serves as a weak ETag and a 304 skips the search or page read entirely.
+     */
+    private boolean notModified(ServletWebRequest webRequest) {
+        return notModified(webRequest, false);
+    }
+
+    /**
+     * @param byRelevance whether the page is ranked by relevance, whose recency factor moves as
+     *                    documents age, so the tag also changes with the day
+     */
+    private boolean notModified(ServletWebRequest webRequest, boolean byRelevance) {
+        webRequest.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+        return webRequest.checkNotModified(catalogueTag(indexService.generation(), byRelevance, System.currentTimeMillis()));
+    }
 
-        return new PageResponse<>(content, pageIndex + 1, size, resultPage.getTotalElements(), resultPage.getTotalPages());
+    static String catalogueTag(long generation, boolean byRelevance, long nowMillis) {
+        String tag = CATALOGUE_EPOCH + "-" + generation;
+        return "W/\"" + (byRelevance ? tag + "-" + nowMillis / DAY_MS : tag) + "\"";
+    }
+
+    /**
+     * Type-ahead phrases for {@code prefix}, served from memory; empty until the index is built.
+     */
+    @GetMapping("/suggest")
+    public List<String> suggest(
+            @RequestParam("prefix") String prefix,
+            @RequestParam(value = "limit", defaultValue = "8") int limit
+    ) {
+        if (!indexService.isReady()) {
+            return List.of();
+        }
+        return indexService.suggest(prefix, Math.min(limit, PrefixSuggester.TOP_N));
+    }
+
+    @GetMapping("/search/cache-stats")
+    public ResponseEntity<?> searchCacheStats() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !SUPER_DELETER.equalsIgnoreCase(authentication.getName())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("无权限查看");
+        }
+        return ResponseEntity.ok(searchCache.stats());
+    }
+
+    /**
+     * Recent searches over {@code app.metrics.search.slow.threshold-ms}, newest first.
+     */
+    @GetMapping("/search/slow-queries")
+    public ResponseEntity<?> slowQueries() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !SUPER_DELETER.equalsIgnoreCase(authentication.getName())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("无权限查看");
+        }
+        return ResponseEntity.ok(slowQueryLog.entries());
     }
 
     @DeleteMapping("/{id}")
@@ -157,13 +377,44 @@ public class ResourceController {
 
         if (resource.getAttachments() != null) {
             for (ResourceAttachment attachment : resource.getAttachments()) {
-                storageService.delete(attachment.getStoredName());
+                // Other attachments may share the blob; it goes once the last reference is gone
+                storageService.release(attachment.getStoredName());
             }
         }
         resourceRepository.delete(resource);
+        indexService.remove(id);
         return ResponseEntity.noContent().build();
     }
 
+    private static CourseResource newResource(String title, String college) {
+        CourseResource resource = new CourseResource();
+        resource.setTitle(title.trim());
+        if (college != null) {
+            resource.setCollege(college.trim());
+        }
+        return resource;
+    }
+
+    private static String currentUsername() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()) {
+            return authentication.getName();
+        }
+        return null;
+    }
+
+    private List<AttachmentCategory> resolveCategories(List<String> categories, String type, int count) {
+        List<AttachmentCategory> resolved = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            AttachmentCategory cat = resolveCategory(categories, i);
+            if (cat == null) {
+                cat = resolveType(type);
+            }
+            resolved.add(cat);
+        }
+        return resolved;
+    }
+
     private AttachmentCategory resolveCategory(List<String> categories, int index) {
         if (categories == null || categories.isEmpty() || index >= categories.size()) return null;
         String raw = categories.get(index);
@@ -183,20 +434,34 @@ public class ResourceController {
         return AttachmentCategory.NOTE;
     }
 
+    /**
+     * Sends an attachment; supports {@code Range} requests so interrupted downloads can resume.
+     * Stored files never change, so the content hash is a strong ETag and the resource's creation
+     * time its Last-Modified; conditional requests are answered before the file is touched.
+     */
     @GetMapping("/{id}/download/{attachmentId}")
-    public ResponseEntity<Resource> download(@PathVariable Long id, @PathVariable Long attachmentId) throws IOException {
+    public void download(@PathVariable Long id, @PathVariable Long attachmentId,
+                         HttpServletRequest request, HttpServletResponse response) throws IOException {
         ResourceAttachment att = attachmentRepository.findById(attachmentId).orElseThrow();
         if (!att.getResource().getId().equals(id)) {
-            return ResponseEntity.notFound().build();
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String etag = att.getContentHash() != null ? "\"" + att.getContentHash() + "\"" : null;
+        long lastModified = att.getResource().getCreatedAt().toEpochMilli();
+        // Shared caches may keep a copy but must revalidate it, which re-runs authentication here
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().cachePublic().getHeaderValue());
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
         }
-        Resource file = storageService.loadAsResource(att.getStoredName());
 
         String filename = URLEncoder.encode(att.getOriginalName(), StandardCharsets.UTF_8);
-        return ResponseEntity.ok()
-                .contentType(att.getContentType() != null ? MediaType.parseMediaType(att.getContentType()) : MediaType.APPLICATION_OCTET_STREAM)
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename*=UTF-8''" + filename)
-                .contentLength(att.getSize())
-                .body(file);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename*=UTF-8''" + filename);
+        downloadService.send(request, response, storageService.path(att.getStoredName()),
+                att.getContentType() != null ? att.getContentType() : MediaType.APPLICATION_OCTET_STREAM_VALUE, headers,
+                etag, lastModified);
     }
 
     private ResourceResponse toResponse(CourseResource resource) {
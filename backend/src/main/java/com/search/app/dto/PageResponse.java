@@ -1,17 +1,48 @@
 package com.search.app.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.search.app.metrics.SearchProfile;
+import com.search.app.search.FacetCount;
+import com.search.app.search.Highlight;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
 import java.util.List;
+import java.util.Map;
 
 @Data
 @AllArgsConstructor
 public class PageResponse<T> {
     private List<T> content;
-    private int page;
+    // 1-based; omitted when the page was reached through a cursor, which is the only position it has
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer page;
     private int size;
     private long totalElements;
-    private int totalPages;
+    // omitted along with page, since such a page cannot be jumped to by number
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer totalPages;
+    // false when totalElements is only a lower bound ("at least N")
+    private boolean totalExact = true;
+    // opaque search-after position for the next page; omitted on the last page
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
+    // facet name -> value counts over all matches; omitted unless requested
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, List<FacetCount>> facets;
+    // resource id -> highlighted title / snippet (HTML, escaped); omitted unless requested
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<Long, Highlight> highlights;
+    // execution breakdown of this request; omitted unless requested
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private SearchProfile profile;
+
+    public PageResponse(List<T> content, int page, int size, long totalElements, int totalPages) {
+        this.content = content;
+        this.page = page;
+        this.size = size;
+        this.totalElements = totalElements;
+        this.totalPages = totalPages;
+    }
 }
 
@@ -0,0 +1,25 @@
+package com.search.app.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class UploadCompleteRequest {
+
+    @NotBlank
+    private String title;
+
+    private String college;
+
+    private String type;
+
+    // Upload ids, one per attachment
+    @NotEmpty
+    private List<String> uploads;
+
+    // Category of each upload, in the same order
+    private List<String> categories;
+}
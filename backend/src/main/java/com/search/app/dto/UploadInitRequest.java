@@ -0,0 +1,17 @@
+package com.search.app.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+
+@Data
+public class UploadInitRequest {
+
+    @NotBlank
+    private String filename;
+
+    @Positive
+    private long size;
+
+    private String contentType;
+}
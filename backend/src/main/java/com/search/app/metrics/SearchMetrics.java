@@ -0,0 +1,98 @@
+package com.search.app.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes {@link SearchTrace}s to Micrometer:
+ * <ul>
+ *   <li>{@code search.request} timer, tagged with the plan and outcome;</li>
+ *   <li>{@code search.stage} timer per stage (only stages the request went through);</li>
+ *   <li>{@code search.sql.statements}, {@code search.results} and {@code search.hits} summaries per request.</li>
+ * </ul>
+ * Only a {@code sample-rate} share of requests is traced, so the timers can stay on under load;
+ * counts are then of sampled requests.
+ */
+@Component
+public class SearchMetrics {
+
+    private final MeterRegistry registry;
+    private final double sampleRate;
+    private final double[] percentiles;
+    private final boolean histogram;
+    private final Map<SearchTrace.Stage, Timer> stages = new EnumMap<>(SearchTrace.Stage.class);
+    private final Map<String, Timer> requests = new ConcurrentHashMap<>();
+    private final DistributionSummary sqlStatements;
+    private final DistributionSummary results;
+    private final DistributionSummary hits;
+
+    public SearchMetrics(MeterRegistry registry,
+                         @Value("${app.metrics.search.sample-rate:1.0}") double sampleRate,
+                         @Value("${app.metrics.search.percentiles:0.5,0.95,0.99}") List<Double> percentiles,
+                         @Value("${app.metrics.search.histogram:false}") boolean histogram) {
+        this.registry = registry;
+        this.sampleRate = sampleRate;
+        this.percentiles = percentiles.stream().mapToDouble(Double::doubleValue).toArray();
+        this.histogram = histogram;
+        for (SearchTrace.Stage stage : SearchTrace.Stage.values()) {
+            stages.put(stage, Timer.builder("search.stage")
+                    .description("Time spent in one stage of a search request")
+                    .tag("stage", stage.name().toLowerCase())
+                    .publishPercentiles(this.percentiles)
+                    .publishPercentileHistogram(histogram)
+                    .register(registry));
+        }
+        this.sqlStatements = summary("search.sql.statements", "SQL statements run by a search request", null);
+        this.results = summary("search.results", "Resources returned on a search page", "resources");
+        this.hits = summary("search.hits", "Matches reported for a search", "resources");
+    }
+
+    /**
+     * Whether to trace the next request.
+     */
+    public boolean sample() {
+        return sampleRate >= 1 || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    public void publish(SearchTrace trace, boolean success) {
+        String plan = trace.plan() != null ? trace.plan().name().toLowerCase() : "none";
+        String outcome = success ? "success" : "error";
+        requests.computeIfAbsent(plan + "/" + outcome, k -> Timer.builder("search.request")
+                        .description("Search requests from arrival to the written response")
+                        .tag("plan", plan)
+                        .tag("outcome", outcome)
+                        .publishPercentiles(percentiles)
+                        .publishPercentileHistogram(histogram)
+                        .register(registry))
+                .record(trace.elapsedNanos(), TimeUnit.NANOSECONDS);
+        for (Map.Entry<SearchTrace.Stage, Timer> e : stages.entrySet()) {
+            long nanos = trace.stageNanos(e.getKey());
+            if (nanos > 0) {
+                e.getValue().record(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        sqlStatements.record(trace.sqlStatements());
+        if (success) {
+            results.record(trace.results());
+            hits.record(trace.hits());
+        }
+    }
+
+    private DistributionSummary summary(String name, String description, String unit) {
+        return DistributionSummary.builder(name)
+                .description(description)
+                .baseUnit(unit)
+                .publishPercentiles(percentiles)
+                .register(registry);
+    }
+}
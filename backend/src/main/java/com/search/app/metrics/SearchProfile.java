@@ -0,0 +1,21 @@
+package com.search.app.metrics;
+
+import com.search.app.search.TokenStats;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Execution breakdown of one search request.
+ *
+ * @param tokens        the normalized query tokens
+ * @param plan          {@code index}, {@code sql} or {@code cache}
+ * @param candidates    per-token match counts from the index; null while the index is being built
+ * @param stageMillis   time per stage the request went through; serialization is only known once
+ *                      the response has been written, so it is missing from profiles returned inline
+ * @param sqlStatements SQL statements run so far
+ * @param elapsedMillis time since the request arrived
+ */
+public record SearchProfile(List<String> tokens, String plan, List<TokenStats> candidates,
+                            Map<String, Double> stageMillis, int sqlStatements, double elapsedMillis) {
+}
@@ -0,0 +1,166 @@
+package com.search.app.metrics;
+
+import com.search.app.search.TokenStats;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Timings and counters of one search request, held in a thread local from the moment
+ * {@link SearchTraceInterceptor} picks the request until it completes. Requests are traced when
+ * sampled for metrics or when they ask for a profile. Code on the search path records through the
+ * static methods, which do nothing when the current request is not traced.
+ */
+public final class SearchTrace {
+
+    public enum Stage { TOKENIZE, CACHE, INDEX, SQL, HYDRATE, SERIALIZE }
+
+    /** Where the page of ids came from. */
+    public enum Plan { INDEX, SQL, CACHE }
+
+    private static final ThreadLocal<SearchTrace> CURRENT = new ThreadLocal<>();
+
+    private final long startNanos = System.nanoTime();
+    private final long[] stageNanos = new long[Stage.values().length];
+    private final boolean sampled;
+    private final boolean profiling;
+    private List<String> tokens;
+    private List<TokenStats> candidates;
+    private Plan plan;
+    private int sqlStatements;
+    private int results;
+    private long hits;
+    private long handlerEndNanos;
+
+    private SearchTrace(boolean sampled, boolean profiling) {
+        this.sampled = sampled;
+        this.profiling = profiling;
+    }
+
+    static SearchTrace begin(boolean sampled, boolean profiling) {
+        SearchTrace trace = new SearchTrace(sampled, profiling);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    static SearchTrace end() {
+        SearchTrace trace = CURRENT.get();
+        CURRENT.remove();
+        return trace;
+    }
+
+    /**
+     * The trace of the request on this thread, or null if it is not traced.
+     */
+    public static SearchTrace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * The trace of the request on this thread if it asked for a profile, otherwise null. Worth
+     * checking before collecting details that only a profile shows.
+     */
+    public static SearchTrace profiling() {
+        SearchTrace trace = CURRENT.get();
+        return trace != null && trace.profiling ? trace : null;
+    }
+
+    public static void tokens(List<String> tokens) {
+        SearchTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.tokens = tokens;
+        }
+    }
+
+    /**
+     * Adds the time since {@code fromNanos} (a {@link System#nanoTime()} reading) to {@code stage}.
+     */
+    public static void record(Stage stage, long fromNanos) {
+        SearchTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.stageNanos[stage.ordinal()] += System.nanoTime() - fromNanos;
+        }
+    }
+
+    public static void plan(Plan plan) {
+        SearchTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.plan = plan;
+        }
+    }
+
+    /**
+     * Records the page size and total matches once the response body is ready to be written.
+     */
+    public static void handlerDone(int results, long hits) {
+        SearchTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.results = results;
+            trace.hits = hits;
+            trace.handlerEndNanos = System.nanoTime();
+        }
+    }
+
+    static void sqlStatement() {
+        SearchTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.sqlStatements++;
+        }
+    }
+
+    /**
+     * Counts the time since the handler returned as serialization of the response body.
+     */
+    void serialized() {
+        if (handlerEndNanos > 0) {
+            stageNanos[Stage.SERIALIZE.ordinal()] += System.nanoTime() - handlerEndNanos;
+        }
+    }
+
+    public void candidates(List<TokenStats> candidates) {
+        this.candidates = candidates;
+    }
+
+    /**
+     * What has been recorded so far.
+     */
+    public SearchProfile profile() {
+        Map<String, Double> stages = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            if (stageNanos[stage.ordinal()] > 0) {
+                stages.put(stage.name().toLowerCase(), stageNanos[stage.ordinal()] / 1e6);
+            }
+        }
+        return new SearchProfile(tokens, plan != null ? plan.name().toLowerCase() : null, candidates, stages,
+                sqlStatements, elapsedNanos() / 1e6);
+    }
+
+    public boolean sampled() {
+        return sampled;
+    }
+
+    public long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    public long stageNanos(Stage stage) {
+        return stageNanos[stage.ordinal()];
+    }
+
+    public Plan plan() {
+        return plan;
+    }
+
+    public int sqlStatements() {
+        return sqlStatements;
+    }
+
+    public int results() {
+        return results;
+    }
+
+    public long hits() {
+        return hits;
+    }
+}
@@ -0,0 +1,64 @@
+package com.search.app.metrics;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Starts a {@link SearchTrace} for sampled search requests and those asking for a profile, and
+ * publishes it once the request completes. {@code @ResponseBody} results are written before
+ * {@link #postHandle} runs, so the time from the handler returning to there is the JSON serialization.
+ * Every request is timed for the {@link SlowQueryLog}.
+ */
+@Component
+public class SearchTraceInterceptor implements HandlerInterceptor {
+
+    private static final String START = SearchTraceInterceptor.class.getName() + ".start";
+
+    @Autowired
+    private SearchMetrics metrics;
+
+    @Autowired
+    private SlowQueryLog slowQueryLog;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        request.setAttribute(START, System.nanoTime());
+        boolean sampled = metrics.sample();
+        boolean profiling = "true".equalsIgnoreCase(request.getParameter("profile"));
+        if (sampled || profiling) {
+            SearchTrace.begin(sampled, profiling);
+        }
+        return true;
+    }
+
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView modelAndView) {
+        SearchTrace trace = SearchTrace.current();
+        if (trace != null) {
+            trace.serialized();
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        SearchTrace trace = SearchTrace.end();
+        if (trace != null && trace.sampled()) {
+            metrics.publish(trace, ex == null && response.getStatus() < 400);
+        }
+        long elapsed = System.nanoTime() - (Long) request.getAttribute(START);
+        if (slowQueryLog.isSlow(elapsed)) {
+            String query = request.getQueryString() != null
+                    ? URLDecoder.decode(request.getQueryString(), StandardCharsets.UTF_8) : "";
+            slowQueryLog.add(new SlowQueryLog.Entry(Instant.now(), query, response.getStatus(), elapsed / 1e6,
+                    trace != null ? trace.profile() : null));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.search.app.metrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The most recent search requests that took at least {@code threshold-ms}, oldest dropped first.
+ * Every request is timed for this, sampled or not; the breakdown is only there for traced ones.
+ */
+@Component
+public class SlowQueryLog {
+
+    private final long thresholdNanos;
+    private final int capacity;
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+
+    public SlowQueryLog(@Value("${app.metrics.search.slow.threshold-ms:500}") long thresholdMillis,
+                        @Value("${app.metrics.search.slow.capacity:100}") int capacity) {
+        this.thresholdNanos = thresholdMillis * 1_000_000L;
+        this.capacity = capacity;
+    }
+
+    public boolean isSlow(long elapsedNanos) {
+        return capacity > 0 && elapsedNanos >= thresholdNanos;
+    }
+
+    public synchronized void add(Entry entry) {
+        if (entries.size() >= capacity) {
+            entries.removeFirst();
+        }
+        entries.addLast(entry);
+    }
+
+    /**
+     * Newest first.
+     */
+    public synchronized List<Entry> entries() {
+        List<Entry> newest = new ArrayList<>(entries.size());
+        for (Iterator<Entry> it = entries.descendingIterator(); it.hasNext(); ) {
+            newest.add(it.next());
+        }
+        return newest;
+    }
+
+    /**
+     * @param query   the decoded query string of the request
+     * @param profile the breakdown, or null when the request was not traced
+     */
+    public record Entry(Instant at, String query, int status, double elapsedMillis, SearchProfile profile) {}
+}
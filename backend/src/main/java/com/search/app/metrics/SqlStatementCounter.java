@@ -0,0 +1,16 @@
+package com.search.app.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts the SQL statements Hibernate prepares while a traced search request is running, without
+ * changing them. Registered for the whole session factory; outside a trace it only reads a thread local.
+ */
+public class SqlStatementCounter implements StatementInspector {
+
+    @Override
+    public String inspect(String sql) {
+        SearchTrace.sqlStatement();
+        return sql;
+    }
+}
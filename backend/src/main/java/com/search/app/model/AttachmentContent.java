@@ -0,0 +1,44 @@
+package com.search.app.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "attachment_contents")
+@Data
+@NoArgsConstructor
+public class AttachmentContent {
+
+    @Id
+    @Column(name = "attachment_id")
+    private Long attachmentId;
+
+    @Lob
+    @Column(columnDefinition = "LONGTEXT")
+    private String text; // 提取出的正文，格式不支持或解析失败时为空
+
+    @Column(nullable = false)
+    private Instant extractedAt = Instant.now();
+
+    // only mapped for the foreign key, so ddl-auto creates the same cascade as searchapp_schema.sql
+    @OneToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "attachment_id", insertable = false, updatable = false,
+            foreignKey = @ForeignKey(name = "fk_attachment_contents_attachment"))
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private ResourceAttachment attachment;
+
+    public AttachmentContent(Long attachmentId, String text, Instant extractedAt) {
+        this.attachmentId = attachmentId;
+        this.text = text;
+        this.extractedAt = extractedAt;
+    }
+}
@@ -7,7 +7,7 @@ import lombok.NoArgsConstructor;
 import com.search.app.model.enums.AttachmentCategory;
 
 @Entity
-@Table(name = "resource_attachments")
+@Table(name = "resource_attachments", indexes = @Index(name = "idx_attachment_stored_name", columnList = "storedName"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -33,6 +33,10 @@ public class ResourceAttachment {
     @Column(nullable = false)
     private long size;
 
+    // hex SHA-256 of the stored file, served as its ETag; null for files stored before it was recorded
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
     @Enumerated(EnumType.STRING)
     @Column(name = "category")
     private AttachmentCategory category = AttachmentCategory.NOTE;
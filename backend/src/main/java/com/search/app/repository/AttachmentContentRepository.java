@@ -0,0 +1,24 @@
+package com.search.app.repository;
+
+import com.search.app.model.AttachmentContent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface AttachmentContentRepository extends JpaRepository<AttachmentContent, Long> {
+
+    // resourceId, text; in attachment order
+    @Query("select a.resource.id, c.text from AttachmentContent c join ResourceAttachment a on a.id = c.attachmentId " +
+            "where c.text is not null and a.resource.id in :resourceIds order by a.id")
+    List<Object[]> findIndexRows(@Param("resourceIds") Collection<Long> resourceIds);
+
+    // joined like findIndexRows, so it counts exactly the texts a rebuild would index
+    @Query("select count(c) from AttachmentContent c join ResourceAttachment a on a.id = c.attachmentId " +
+            "where c.text is not null")
+    long countExtracted();
+}
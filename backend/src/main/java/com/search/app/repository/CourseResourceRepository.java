@@ -1,13 +1,20 @@
 package com.search.app.repository;
 
 import com.search.app.model.CourseResource;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
 @Repository
 public interface CourseResourceRepository extends JpaRepository<CourseResource, Long> {
 
@@ -27,4 +34,34 @@ public interface CourseResourceRepository extends JpaRepository<CourseResource,
                    "where lower(r.title) like lower(concat('%', :q, '%')) " +
                    "or lower(a.originalName) like lower(concat('%', :q, '%'))")
     Page<CourseResource> searchRelevance(@Param("q") String q, Pageable pageable);
+
+    // id, title, college, createdAt, uploader username
+    @Query("select r.id, r.title, r.college, r.createdAt, u.username from CourseResource r left join r.uploader u " +
+            "where r.id > :afterId order by r.id")
+    List<Object[]> findIndexRowsAfter(@Param("afterId") long afterId, Pageable pageable);
+
+    @Query("select r.id, r.title, r.college, r.createdAt, u.username from CourseResource r left join r.uploader u where r.id in :ids")
+    List<Object[]> findIndexRows(@Param("ids") Collection<Long> ids);
+
+    // resource count, highest id; resources are never edited, so together these tell whether a stored index is current
+    @Query("select count(r), max(r.id) from CourseResource r")
+    List<Object[]> findIndexFingerprint();
+
+    // id, title, college, uploader username, createdAt
+    @Query("select r.id, r.title, r.college, u.username, r.createdAt from CourseResource r left join r.uploader u where r.id in :ids")
+    List<Object[]> findSummaryRows(@Param("ids") Collection<Long> ids);
+
+    @Query("select r.id, r.title, r.college, u.username, r.createdAt from CourseResource r left join r.uploader u " +
+            "where r.id > :afterId order by r.id")
+    List<Object[]> findSummaryRowsAfter(@Param("afterId") long afterId, Pageable pageable);
+
+    // id, title, college, uploader username, createdAt, then attachment id, originalName, contentType, size,
+    // category (all null for a resource without attachments); one row per attachment, grouped by resource
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select r.id, r.title, r.college, u.username, r.createdAt, a.id, a.originalName, a.contentType, a.size, a.category " +
+            "from CourseResource r left join r.uploader u left join r.attachments a order by r.id, a.id")
+    Stream<Object[]> streamExportRows();
 }
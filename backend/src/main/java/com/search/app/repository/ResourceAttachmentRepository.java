@@ -1,10 +1,44 @@
 package com.search.app.repository;
 
 import com.search.app.model.ResourceAttachment;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
 
 @Repository
 public interface ResourceAttachmentRepository extends JpaRepository<ResourceAttachment, Long> {
+
+    // resourceId, originalName, category
+    @Query("select a.resource.id, a.originalName, a.category from ResourceAttachment a where a.resource.id in :resourceIds")
+    List<Object[]> findIndexRows(@Param("resourceIds") Collection<Long> resourceIds);
+
+    // id, resourceId, storedName, originalName, contentType of attachments whose text has not been extracted yet
+    @Query("select a.id, a.resource.id, a.storedName, a.originalName, a.contentType from ResourceAttachment a " +
+            "where a.id > :afterId and not exists (select c.attachmentId from AttachmentContent c where c.attachmentId = a.id) " +
+            "order by a.id")
+    List<Object[]> findUnextracted(@Param("afterId") long afterId, Pageable pageable);
+
+    boolean existsByStoredName(String storedName);
+
+    // Files stored before uploads were content-addressed: not named by their hash, or never hashed
+    @Query("select distinct a.storedName from ResourceAttachment a where a.contentHash is null or a.storedName <> a.contentHash")
+    List<String> findLegacyStoredNames();
+
+    @Transactional
+    @Modifying
+    @Query("update ResourceAttachment a set a.storedName = :blob, a.contentHash = :blob where a.storedName = :storedName")
+    int relink(@Param("storedName") String storedName, @Param("blob") String blob);
+
+    // resourceId, id, originalName, contentType, size, category
+    @Query("select a.resource.id, a.id, a.originalName, a.contentType, a.size, a.category from ResourceAttachment a " +
+            "where a.resource.id in :resourceIds order by a.id")
+    List<Object[]> findResponseRows(@Param("resourceIds") Collection<Long> resourceIds);
 }
 
@@ -0,0 +1,18 @@
+package com.search.app.search;
+
+/**
+ * Turns text into index terms. The same analyzer is used for documents and queries; the
+ * {@code query} flag only lets an implementation skip expansions that are useless on the query side.
+ */
+public interface Analyzer {
+
+    void analyze(CharSequence text, boolean query, TermConsumer consumer);
+
+    /**
+     * Receives each term in a reused buffer; copy out whatever must outlive the call.
+     */
+    @FunctionalInterface
+    interface TermConsumer {
+        void term(char[] buffer, int length, int startOffset, int endOffset);
+    }
+}
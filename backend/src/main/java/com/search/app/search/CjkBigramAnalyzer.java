@@ -0,0 +1,88 @@
+package com.search.app.search;
+
+/**
+ * Single-pass analyzer for mixed Chinese/Latin text.
+ * <ul>
+ *   <li>full-width ASCII is folded to half-width and letters are lowercased;</li>
+ *   <li>runs of letters/digits become one word term;</li>
+ *   <li>runs of CJK characters become overlapping bigrams ("高等数学" -> 高等, 等数, 数学).</li>
+ * </ul>
+ * Documents additionally get every CJK character as a unigram so a one-character query still
+ * finds them; queries only use a unigram when the CJK run is a single character.
+ */
+public class CjkBigramAnalyzer implements Analyzer {
+
+    private static final int MAX_WORD_LENGTH = 255;
+    // the analyzer is shared by indexing and every request thread; consumers copy what they keep
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[MAX_WORD_LENGTH]);
+
+    @Override
+    public void analyze(CharSequence text, boolean query, TermConsumer consumer) {
+        if (text == null) {
+            return;
+        }
+        char[] buf = BUFFER.get();
+        int len = 0;
+        int wordStart = 0;
+        char prevCjk = 0;
+        int prevCjkOffset = 0;
+        int cjkRun = 0;
+
+        for (int i = 0, n = text.length(); i <= n; i++) {
+            char c = i < n ? fold(text.charAt(i)) : ' ';
+            if (isCjk(c)) {
+                if (len > 0) {
+                    consumer.term(buf, len, wordStart, i);
+                    len = 0;
+                }
+                if (cjkRun > 0) {
+                    buf[0] = prevCjk;
+                    buf[1] = c;
+                    consumer.term(buf, 2, prevCjkOffset, i + 1);
+                }
+                if (!query) {
+                    buf[0] = c;
+                    consumer.term(buf, 1, i, i + 1);
+                }
+                prevCjk = c;
+                prevCjkOffset = i;
+                cjkRun++;
+                continue;
+            }
+            if (cjkRun == 1 && query) {
+                buf[0] = prevCjk;
+                consumer.term(buf, 1, prevCjkOffset, prevCjkOffset + 1);
+            }
+            cjkRun = 0;
+            if (Character.isLetterOrDigit(c)) {
+                if (len == 0) {
+                    wordStart = i;
+                }
+                if (len < MAX_WORD_LENGTH) {
+                    buf[len++] = Character.toLowerCase(c);
+                }
+            } else if (len > 0) {
+                consumer.term(buf, len, wordStart, i);
+                len = 0;
+            }
+        }
+    }
+
+    static char fold(char c) {
+        if (c >= '\uFF01' && c <= '\uFF5E') {
+            return (char) (c - 0xFEE0);
+        }
+        if (c == '\u3000') {
+            return ' ';
+        }
+        return c;
+    }
+
+    static boolean isCjk(char c) {
+        return (c >= '\u4E00' && c <= '\u9FFF') // CJK unified ideographs
+                || (c >= '\u3400' && c <= '\u4DBF') // extension A
+                || (c >= '\uF900' && c <= '\uFAFF') // compatibility ideographs
+                || (c >= '\u3040' && c <= '\u30FF') // hiragana / katakana
+                || (c >= '\uAC00' && c <= '\uD7AF'); // hangul syllables
+    }
+}
@@ -0,0 +1,7 @@
+package com.search.app.search;
+
+/**
+ * How many matching resources carry {@code value} in one facet.
+ */
+public record FacetCount(String value, long count) {
+}
@@ -0,0 +1,150 @@
+package com.search.app.search;
+
+import java.util.*;
+
+/**
+ * Per-document values of one facet, stored as small sorted arrays of value ordinals so that
+ * counting is a single array walk per matching document.
+ * <p>
+ * Filtering uses a document bitset per value, built on first use and then kept up to date as
+ * documents are set and cleared rather than rebuilt. Only the most recently used bitsets are
+ * kept; compaction drops them all since it renumbers documents.
+ */
+final class FacetValues {
+
+    private static final int[] NONE = new int[0];
+    private static final int MAX_CACHED_BITSETS = 256;
+
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+    private int[][] docOrds = new int[16][];
+    // built lazily under the index read lock, so guarded by its own monitor
+    private final LinkedHashMap<Integer, BitSet> bitsets = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, BitSet> eldest) {
+            return size() > MAX_CACHED_BITSETS;
+        }
+    };
+
+    void set(int doc, Collection<String> docValues) {
+        ensureCapacity(doc + 1);
+        int[] ords = NONE;
+        for (String value : docValues) {
+            if (value == null || value.isBlank()) {
+                continue;
+            }
+            int ord = ordinals.computeIfAbsent(value, v -> {
+                values.add(v);
+                return values.size() - 1;
+            });
+            int at = Arrays.binarySearch(ords, ord);
+            if (at < 0) {
+                at = -at - 1;
+                int[] next = new int[ords.length + 1];
+                System.arraycopy(ords, 0, next, 0, at);
+                next[at] = ord;
+                System.arraycopy(ords, at, next, at + 1, ords.length - at);
+                ords = next;
+            }
+        }
+        docOrds[doc] = ords;
+        synchronized (bitsets) {
+            for (int ord : ords) {
+                BitSet bits = bitsets.get(ord);
+                if (bits != null) {
+                    bits.set(doc);
+                }
+            }
+        }
+    }
+
+    void clear(int doc) {
+        int[] ords = docOrds[doc];
+        if (ords == null) {
+            return;
+        }
+        synchronized (bitsets) {
+            for (int ord : ords) {
+                BitSet bits = bitsets.get(ord);
+                if (bits != null) {
+                    bits.clear(doc);
+                }
+            }
+        }
+        docOrds[doc] = null;
+    }
+
+    /**
+     * Documents having {@code value}. The bitset is shared with later calls and must not be modified.
+     */
+    BitSet docs(String value) {
+        Integer ord = ordinals.get(value);
+        if (ord == null) {
+            return new BitSet();
+        }
+        synchronized (bitsets) {
+            BitSet bits = bitsets.get(ord);
+            if (bits == null) {
+                bits = new BitSet(docOrds.length);
+                for (int doc = 0; doc < docOrds.length; doc++) {
+                    if (docOrds[doc] != null && Arrays.binarySearch(docOrds[doc], ord) >= 0) {
+                        bits.set(doc);
+                    }
+                }
+                bitsets.put(ord, bits);
+            }
+            return bits;
+        }
+    }
+
+    /**
+     * Adds the values of {@code doc} to {@code counts}, indexed by value ordinal.
+     */
+    void count(int doc, long[] counts) {
+        int[] ords = docOrds[doc];
+        if (ords != null) {
+            for (int ord : ords) {
+                counts[ord]++;
+            }
+        }
+    }
+
+    int cardinality() {
+        return values.size();
+    }
+
+    /**
+     * Non-zero counts as facet entries, most frequent first.
+     */
+    List<FacetCount> top(long[] counts) {
+        List<FacetCount> top = new ArrayList<>();
+        for (int ord = 0; ord < counts.length; ord++) {
+            if (counts[ord] > 0) {
+                top.add(new FacetCount(values.get(ord), counts[ord]));
+            }
+        }
+        top.sort(Comparator.comparingLong(FacetCount::count).reversed().thenComparing(FacetCount::value));
+        return top;
+    }
+
+    /**
+     * Moves values along with a compaction that renumbers documents densely into {@code [0, liveDocs)}.
+     */
+    void remap(int[] remap, int maxDoc, int liveDocs) {
+        for (int doc = 0; doc < maxDoc; doc++) {
+            if (remap[doc] >= 0) {
+                docOrds[remap[doc]] = docOrds[doc];
+            }
+        }
+        Arrays.fill(docOrds, liveDocs, maxDoc, null);
+        synchronized (bitsets) {
+            bitsets.clear();
+        }
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed > docOrds.length) {
+            docOrds = Arrays.copyOf(docOrds, Math.max(needed, docOrds.length + (docOrds.length >> 1)));
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.search.app.search;
+
+/**
+ * Highlighted fragments of one hit, as HTML: text is escaped and matches are wrapped in {@code <em>}.
+ *
+ * @param title   the whole title, or null if it has no match or did not fit the byte budget
+ * @param snippet the best-matching window of the attachment text, or null
+ */
+public record Highlight(String title, String snippet) {
+}
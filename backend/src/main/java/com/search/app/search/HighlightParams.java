@@ -0,0 +1,9 @@
+package com.search.app.search;
+
+/**
+ * @param snippetChars longest snippet, in characters of the source text
+ * @param maxBytes     UTF-8 bytes all highlights of one page may add up to; later hits get shorter
+ *                     snippets, then none, once it runs low
+ */
+public record HighlightParams(int snippetChars, int maxBytes) {
+}
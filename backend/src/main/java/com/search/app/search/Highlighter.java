@@ -0,0 +1,193 @@
+package com.search.app.search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Builds highlighted titles and snippets from the start offsets kept in posting lists, so the
+ * stored text is only sliced, never re-analyzed or re-read. The index only keeps a prefix of long
+ * attachment text; matches past it are left out of snippets.
+ * <p>
+ * A term's match is assumed to span as many characters as the term itself, which holds for
+ * {@link CjkBigramAnalyzer} (it folds characters one to one). The snippet is the window of at
+ * most {@code snippetChars} covering the most distinct query terms, then the most matches.
+ */
+final class Highlighter {
+
+    private static final String OPEN = "<em>";
+    private static final String CLOSE = "</em>";
+    private static final String ELLIPSIS = "…";
+    private static final int MIN_SNIPPET_CHARS = 16;
+
+    private final List<Term> titleTerms;
+    private final List<Term> contentTerms;
+    private final int groups;
+    private final int snippetChars;
+    private int budget;
+
+    /**
+     * @param groups number of query terms; a term's variants share its group
+     */
+    Highlighter(List<Term> titleTerms, List<Term> contentTerms, int groups, HighlightParams params) {
+        this.titleTerms = titleTerms;
+        this.contentTerms = contentTerms;
+        this.groups = groups;
+        this.snippetChars = params.snippetChars();
+        this.budget = params.maxBytes();
+    }
+
+    /**
+     * Highlights {@code doc}, spending at most an even share of what is left of the budget
+     * across the {@code remainingHits} still to come (this one included).
+     */
+    Highlight highlight(int doc, String title, String content, int remainingHits) {
+        int allowance = budget / Math.max(1, remainingHits);
+        String titleHtml = null;
+        List<Span> titleSpans = spans(doc, titleTerms, title.length());
+        if (!titleSpans.isEmpty()) {
+            String html = render(title, titleSpans, 0, title.length());
+            int bytes = utf8Length(html);
+            if (bytes <= allowance) {
+                titleHtml = html;
+                allowance -= bytes;
+                budget -= bytes;
+            }
+        }
+        String snippet = null;
+        List<Span> contentSpans = content != null ? spans(doc, contentTerms, content.length()) : List.of();
+        if (!contentSpans.isEmpty()) {
+            // CJK text is three bytes a character, the widest this index deals with
+            int width = Math.min(snippetChars, allowance / 3);
+            while (snippet == null && width >= MIN_SNIPPET_CHARS) {
+                String html = snippet(content, contentSpans, width);
+                int bytes = utf8Length(html);
+                if (bytes <= allowance) {
+                    snippet = html;
+                    budget -= bytes;
+                } else {
+                    width /= 2;
+                }
+            }
+        }
+        return titleHtml == null && snippet == null ? null : new Highlight(titleHtml, snippet);
+    }
+
+    /**
+     * Matches of {@code terms} in {@code doc} that end within {@code length}, ordered by start offset.
+     */
+    private static List<Span> spans(int doc, List<Term> terms, int length) {
+        List<Span> spans = new ArrayList<>();
+        for (Term term : terms) {
+            PostingList list = term.list();
+            int i = list.seek(0, doc);
+            if (i < list.size() && list.doc(i) == doc) {
+                for (int n = 0; n < list.freq(i); n++) {
+                    int start = list.offset(i, n);
+                    if (start + term.length() <= length) {
+                        spans.add(new Span(start, start + term.length(), term.group()));
+                    }
+                }
+            }
+        }
+        spans.sort(Comparator.comparingInt(Span::start).thenComparingInt(Span::end));
+        return spans;
+    }
+
+    private String snippet(String text, List<Span> spans, int width) {
+        int[] seen = new int[groups];
+        int distinct = 0;
+        int bestFrom = 0, bestTo = 0, bestDistinct = -1, bestCount = -1;
+        for (int left = 0, right = 0; right < spans.size(); right++) {
+            if (seen[spans.get(right).group()]++ == 0) {
+                distinct++;
+            }
+            while (spans.get(right).end() - spans.get(left).start() > width) {
+                if (--seen[spans.get(left).group()] == 0) {
+                    distinct--;
+                }
+                left++;
+            }
+            int count = right - left + 1;
+            if (distinct > bestDistinct || (distinct == bestDistinct && count > bestCount)) {
+                bestDistinct = distinct;
+                bestCount = count;
+                bestFrom = left;
+                bestTo = right;
+            }
+        }
+        int start = spans.get(bestFrom).start();
+        int end = Math.min(text.length(), spans.get(bestTo).end());
+        // spread the spare width around the matches, a third before and the rest after
+        int spare = Math.max(0, width - (end - start));
+        int from = Math.max(0, start - spare / 3);
+        int to = Math.min(text.length(), from + width);
+        from = Math.max(0, Math.min(from, to - width));
+        if (from > 0 && Character.isLowSurrogate(text.charAt(from))) {
+            from++;
+        }
+        if (to < text.length() && Character.isLowSurrogate(text.charAt(to))) {
+            to--;
+        }
+        return (from > 0 ? ELLIPSIS : "") + render(text, spans, from, to) + (to < text.length() ? ELLIPSIS : "");
+    }
+
+    /**
+     * Escapes {@code text[from, to)} with overlapping or adjacent matches merged into one {@code <em>}.
+     */
+    private static String render(String text, List<Span> spans, int from, int to) {
+        StringBuilder out = new StringBuilder((to - from) + 16);
+        int pos = from;
+        int i = 0;
+        while (i < spans.size() && pos < to) {
+            Span span = spans.get(i);
+            if (span.end() <= pos) {
+                i++;
+                continue;
+            }
+            int start = Math.max(span.start(), pos);
+            if (start >= to) {
+                break;
+            }
+            int end = span.end();
+            while (++i < spans.size() && spans.get(i).start() <= end) {
+                end = Math.max(end, spans.get(i).end());
+            }
+            end = Math.min(end, to);
+            escape(text, pos, start, out);
+            out.append(OPEN);
+            escape(text, start, end, out);
+            out.append(CLOSE);
+            pos = end;
+        }
+        escape(text, pos, to, out);
+        return out.toString();
+    }
+
+    private static void escape(String text, int from, int to, StringBuilder out) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '&' -> out.append("&amp;");
+                case '"' -> out.append("&quot;");
+                case '\'' -> out.append("&#39;");
+                case '\n', '\r', '\t' -> out.append(' ');
+                default -> out.append(c);
+            }
+        }
+    }
+
+    private static int utf8Length(String s) {
+        return s.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * A posting list to look matches up in, the length of its term and the query term it stands for.
+     */
+    record Term(PostingList list, int length, int group) {}
+
+    private record Span(int start, int end, int group) {}
+}
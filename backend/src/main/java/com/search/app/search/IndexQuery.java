@@ -0,0 +1,22 @@
+package com.search.app.search;
+
+import java.util.List;
+
+/**
+ * A search against the {@link InvertedIndex}.
+ *
+ * @param tokens              whitespace-separated query tokens, each analyzed into terms that must all match
+ * @param and                 whether every token has to match, or any token
+ * @param sort                {@code relevance}, {@code date} or {@code name}
+ * @param exactTotalThreshold OR queries whose posting lists add up to more than this are ranked without
+ *                            materialising the match set and report a lower-bound total; negative disables
+ * @param after               search-after position; when set, {@code offset} is ignored
+ * @param maxEdits            how many edits a misspelled term may be from an indexed one; 0 matches exactly
+ * @param facets              whether to count colleges and attachment categories over all matches
+ * @param filter              restricts matches before they are scored; with no tokens it alone decides the matches
+ * @param highlight           how to highlight the hits of the page, or null not to
+ */
+public record IndexQuery(List<String> tokens, boolean and, String sort, int offset, int limit,
+                         int exactTotalThreshold, SearchCursor after, int maxEdits, boolean facets,
+                         SearchFilter filter, HighlightParams highlight) {
+}
@@ -0,0 +1,15 @@
+package com.search.app.search;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Detached snapshot of a {@code CourseResource} holding only what the index needs.
+ *
+ * @param categories attachment category names, one per attachment (duplicates allowed)
+ * @param uploader   username of the uploader, or null
+ * @param contents   text extracted from the attachments, one per attachment that has been extracted
+ */
+public record IndexedResource(Long id, String title, String college, Instant createdAt, List<String> attachmentNames,
+                              List<String> categories, String uploader, List<String> contents) {
+}
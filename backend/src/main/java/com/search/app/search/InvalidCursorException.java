@@ -0,0 +1,16 @@
+package com.search.app.search;
+
+/**
+ * A {@code cursor} parameter that cannot be resumed from: malformed, issued for another sort, or
+ * a relevance cursor while relevance ranking is unavailable.
+ */
+public class InvalidCursorException extends IllegalArgumentException {
+
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+
+    public InvalidCursorException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,1030 @@
+package com.search.app.search;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index over resource titles, attachment names, colleges and extracted attachment text.
+ * <p>
+ * Text is split into terms by an {@link Analyzer}; queries go through the same analyzer, so
+ * matching is a plain dictionary lookup per term.
+ * <p>
+ * Every resource gets an int ordinal; posting lists hold ordinals, and per-ordinal arrays keep
+ * what is needed to sort and score without touching the database. Deleted resources are
+ * tombstoned and squeezed out once they make up a large share of the ordinals.
+ * <p>
+ * Title and attachment-text postings also keep term start offsets, and the attachment text itself
+ * is kept per ordinal, so hits can be highlighted without going back to the files.
+ * <p>
+ * Fuzzy queries widen each query term into the indexed terms within a few edits of it, found
+ * through the {@link TermDictionary}. A term and its variants count as one term for matching;
+ * variants score with a boost reduced by their share of edited characters.
+ * <p>
+ * Latin query words are widened the same way into the indexed words they start, so "calc" finds
+ * "calculus"; a completion scores with a boost of the share of it the query word covers.
+ * <p>
+ * The live documents and their postings can be written out as a segment and appended back
+ * without analyzing anything, which is how {@link SegmentStore} restores the index on restart.
+ */
+public class InvertedIndex {
+
+    public enum Field { TITLE, ATTACHMENT, COLLEGE, CONTENT }
+
+    public static final String COLLEGE_FACET = "college";
+    public static final String CATEGORY_FACET = "category";
+
+    private static final Logger log = LoggerFactory.getLogger(InvertedIndex.class);
+
+    private static final int FIELDS = Field.values().length;
+    private static final int COMPACT_MIN_DELETED = 1024;
+    private static final int MAX_FUZZY_VARIANTS = 32;
+    private static final int MIN_PREFIX_LENGTH = 3;
+    // completions looked at per query word, of which the MAX_PREFIX_VARIANTS most frequent are kept
+    private static final int MAX_PREFIX_SCAN = 1024;
+    private static final int MAX_PREFIX_VARIANTS = 32;
+    private static final int DEFAULT_STORED_CONTENT_CHARS = 8192;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Analyzer analyzer;
+    private final RankingParams ranking;
+    private final int storedContentChars;
+
+    @SuppressWarnings("unchecked")
+    private final Map<String, PostingList>[] postings = new Map[FIELDS];
+    private final Map<Long, Integer> ordinals = new HashMap<>();
+    private final TermDictionary dictionary = new TermDictionary();
+    private final FacetValues colleges = new FacetValues();
+    private final FacetValues categories = new FacetValues();
+    private final FacetValues uploaders = new FacetValues();
+    private final BitSet live = new BitSet();
+
+    private long[] resourceIds = new long[16];
+    private long[] createdAt = new long[16]; // epoch micros, the precision of the createdAt column
+    private String[] titles = new String[16];
+    // leading storedContentChars of the extracted attachment text, joined by newlines; only snippets read it
+    private String[] contents = new String[16];
+    // the indexed resource without its extracted text, and how many texts it had, for writing segments
+    private IndexedResource[] sources = new IndexedResource[16];
+    private int[] contentCounts = new int[16];
+    private long extractedCount;
+    private int[][] fieldLengths = new int[FIELDS][16];
+    private final long[] totalFieldLengths = new long[FIELDS];
+    private int maxDoc;
+    private int deleted;
+    // live ordinals in name order and each ordinal's position in it; built on the first name sort after a change
+    private volatile NameOrder nameOrder;
+
+    public InvertedIndex(Analyzer analyzer, RankingParams ranking) {
+        this(analyzer, ranking, DEFAULT_STORED_CONTENT_CHARS);
+    }
+
+    /**
+     * @param storedContentChars how much of each resource's extracted text to keep for snippets;
+     *                           all of it is indexed, but matches further in get no snippet
+     */
+    public InvertedIndex(Analyzer analyzer, RankingParams ranking, int storedContentChars) {
+        this.analyzer = analyzer;
+        this.ranking = ranking;
+        this.storedContentChars = Math.max(0, storedContentChars);
+        for (Field f : Field.values()) {
+            postings[f.ordinal()] = new HashMap<>();
+        }
+    }
+
+    public void add(IndexedResource resource) {
+        lock.writeLock().lock();
+        try {
+            // one text per document so that stored offsets point into a single string
+            String content = resource.contents() != null && !resource.contents().isEmpty()
+                    ? String.join("\n", resource.contents()) : null;
+            int doc = addDocument(withoutContents(resource), resource.contents() != null ? resource.contents().size() : 0,
+                    storedPrefix(content));
+            indexText(Field.TITLE, resource.title(), doc);
+            indexText(Field.COLLEGE, resource.college(), doc);
+            if (resource.attachmentNames() != null) {
+                for (String name : resource.attachmentNames()) {
+                    indexText(Field.ATTACHMENT, name, doc);
+                }
+            }
+            indexText(Field.CONTENT, content, doc);
+            // re-adding tombstones the old ordinal, so repeated reindexing fills the index with them too
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long resourceId) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(resourceId);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops every document, e.g. after a segment could not be loaded completely.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            for (Long id : new ArrayList<>(ordinals.keySet())) {
+                removeLocked(id);
+            }
+            compact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean contains(Long resourceId) {
+        lock.readLock().lock();
+        try {
+            return ordinals.containsKey(resourceId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ordinals.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The highest indexed resource id, or null when the index is empty.
+     */
+    public Long maxResourceId() {
+        lock.readLock().lock();
+        try {
+            return ordinals.isEmpty() ? null : Collections.max(ordinals.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * How many extracted attachment texts the indexed resources hold between them.
+     */
+    public long extractedCount() {
+        lock.readLock().lock();
+        try {
+            return extractedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The indexed resources without their extracted text, in ordinal order.
+     */
+    public List<IndexedResource> resources() {
+        lock.readLock().lock();
+        try {
+            List<IndexedResource> resources = new ArrayList<>(ordinals.size());
+            for (int doc = live.nextSetBit(0); doc >= 0; doc = live.nextSetBit(doc + 1)) {
+                resources.add(sources[doc]);
+            }
+            return resources;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * An empty index analyzing and storing like this one.
+     */
+    InvertedIndex emptyCopy() {
+        return new InvertedIndex(analyzer, ranking, storedContentChars);
+    }
+
+    /**
+     * Writes the live documents, numbered densely in ordinal order, and their postings as a segment
+     * body ({@link SegmentCodec}). Holds the read lock throughout, so changes wait for it.
+     *
+     * @return how many documents were written
+     */
+    int writeSegment(DataOutput out) throws IOException {
+        lock.readLock().lock();
+        try {
+            int[] remap = new int[maxDoc];
+            int count = 0;
+            for (int doc = 0; doc < maxDoc; doc++) {
+                remap[doc] = live.get(doc) ? count++ : -1;
+            }
+            out.writeInt(count);
+            for (int doc = live.nextSetBit(0); doc >= 0; doc = live.nextSetBit(doc + 1)) {
+                SegmentCodec.writeDocument(out, sources[doc], contentCounts[doc], contents[doc]);
+            }
+            for (Map<String, PostingList> fieldPostings : postings) {
+                String[] terms = fieldPostings.keySet().toArray(new String[0]);
+                Arrays.sort(terms);
+                for (String term : terms) {
+                    SegmentCodec.writePostings(out, term, fieldPostings.get(term), remap);
+                }
+                SegmentCodec.writeString(out, null);
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Applies a segment written by {@link #writeSegment}: removes {@code removed}, then adds its
+     * documents after every current ordinal, replacing earlier documents with the same ids, and
+     * appends their postings. Field lengths are the postings' frequencies summed back up.
+     *
+     * @return how many documents were read
+     */
+    int readSegment(long[] removed, DataInput in) throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (long id : removed) {
+                removeLocked(id);
+            }
+            int count = in.readInt();
+            int[] docMap = new int[count];
+            for (int i = 0; i < count; i++) {
+                SegmentCodec.Document document = SegmentCodec.readDocument(in);
+                docMap[i] = addDocument(document.source(), document.contentCount(), storedPrefix(document.storedContent()));
+            }
+            for (int f = 0; f < FIELDS; f++) {
+                boolean offsets = hasOffsets(f);
+                int[] length = fieldLengths[f];
+                for (String term = SegmentCodec.readString(in); term != null; term = SegmentCodec.readString(in)) {
+                    PostingList list = postings[f].computeIfAbsent(term, t -> {
+                        dictionary.add(t);
+                        return new PostingList(offsets);
+                    });
+                    int from = list.size();
+                    SegmentCodec.readPostings(in, docMap, list);
+                    for (int i = from; i < list.size(); i++) {
+                        length[list.doc(i)] += list.freq(i);
+                        totalFieldLengths[f] += list.freq(i);
+                    }
+                }
+            }
+            compactIfNeeded();
+            return count;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ordinals in use, live or tombstoned.
+     */
+    int maxDoc() {
+        lock.readLock().lock();
+        try {
+            return maxDoc;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Evaluates the query against the index and returns the requested slice of resource ids.
+     */
+    public SearchHits search(IndexQuery query) {
+        lock.readLock().lock();
+        try {
+            List<List<String>> clauses = clauses(query.tokens());
+            List<String> queryTerms = new ArrayList<>();
+            for (List<String> terms : clauses) {
+                for (String term : terms) {
+                    if (!queryTerms.contains(term)) {
+                        queryTerms.add(term);
+                    }
+                }
+            }
+            Map<String, List<Variant>> variants = new HashMap<>();
+            for (String term : queryTerms) {
+                variants.put(term, variants(term, query.maxEdits()));
+            }
+            SearchCursor after = query.after();
+            int offset = after != null ? 0 : query.offset();
+            String sort = SearchCursor.sortKey(query.sort());
+            // later pages score at the instant of the first, so recency does not move the keys between pages
+            long now = after != null && after.now() > 0 ? after.now() : System.currentTimeMillis();
+            BitSet allowed = filterDocs(query.filter());
+            // one extra hit tells whether there is a next page; never more than could possibly match
+            int k = (int) Math.min((long) offset + query.limit() + 1,
+                    allowed != null ? allowed.cardinality() : ordinals.size());
+            Highlighter highlighter = query.highlight() != null && !queryTerms.isEmpty()
+                    ? highlighter(queryTerms, variants, query.highlight()) : null;
+
+            if (sort.equals("relevance") && !query.and() && !clauses.isEmpty() && !query.facets()
+                    && ranking.strategy() == RankingParams.Strategy.TOPK
+                    && query.exactTotalThreshold() >= 0 && postingCost(variants) > query.exactTotalThreshold()) {
+                QueryScorer scorer = scorer(queryTerms, variants, now);
+                scorer.setClauses(clauses, queryTerms);
+                TopKCollector top = collector(k, after);
+                int counted = scorer.collectTopK(null, allowed != null ? allowed : live, top);
+                return page(top.drain(), top, sort, now, offset, query.limit(), counted, !scorer.pruned(), null, highlighter);
+            }
+
+            int[] matches;
+            if (query.tokens().isEmpty()) {
+                matches = allowed != null ? allowed.stream().toArray() : liveDocs();
+            } else {
+                matches = evaluate(clauses, variants, query.and());
+                if (allowed != null) {
+                    matches = retain(matches, allowed);
+                }
+            }
+            Map<String, List<FacetCount>> facets = query.facets() ? countFacets(matches) : null;
+            TopKCollector top;
+            if (sort.equals("name")) {
+                top = collectByName(matches, Math.min(k, matches.length), after);
+            } else if (sort.equals("date")) {
+                top = collector(Math.min(k, matches.length), after);
+                for (int doc : matches) {
+                    top.collect(doc, createdAt[doc], resourceIds[doc]);
+                }
+            } else {
+                top = collector(Math.min(k, matches.length), after);
+                rank(matches, queryTerms, variants, top, after, now);
+            }
+            return page(top.drain(), top, sort, now, offset, query.limit(), matches.length, true, facets, highlighter);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Per-token match counts for {@code tokens}, for profiling a query; evaluates each token the way
+     * {@link #search} does, so it costs about as much as the search itself.
+     */
+    public List<TokenStats> explain(List<String> tokens, int maxEdits) {
+        lock.readLock().lock();
+        try {
+            List<TokenStats> stats = new ArrayList<>(tokens.size());
+            for (String token : tokens) {
+                Map<String, Integer> termCounts = new LinkedHashMap<>();
+                List<TermCursor> cursors = new ArrayList<>();
+                for (String term : queryTerms(token)) {
+                    List<Variant> termVariants = variants(term, maxEdits);
+                    termCounts.put(term, countLive(termCursor(termVariants)));
+                    cursors.add(termCursor(termVariants));
+                }
+                stats.add(new TokenStats(token, termCounts, cursors.isEmpty() ? 0 : conjunction(cursors).length));
+            }
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static TopKCollector collector(int k, SearchCursor after) {
+        return after == null ? new TopKCollector(k) : new TopKCollector(k, after.key(), after.id());
+    }
+
+    /**
+     * Cuts {@code [offset, offset + limit)} out of {@code ranked} and, if anything follows it,
+     * builds the cursor of the last hit from {@code top}'s keys (or the title for name sort).
+     */
+    private SearchHits page(int[] ranked, TopKCollector top, String sort, long now, int offset, int limit, long total,
+                            boolean exact, Map<String, List<FacetCount>> facets, Highlighter highlighter) {
+        int from = Math.min(offset, ranked.length);
+        int to = Math.min(from + limit, ranked.length);
+        List<Long> ids = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            ids.add(resourceIds[ranked[i]]);
+        }
+        SearchCursor next = null;
+        if (ranked.length > to && to > from) {
+            int last = ranked[to - 1];
+            next = switch (sort) {
+                case "name" -> new SearchCursor(sort, 0, titles[last], resourceIds[last]);
+                case "date" -> new SearchCursor(sort, top.key(to - 1), null, resourceIds[last]);
+                default -> new SearchCursor(sort, top.key(to - 1), null, resourceIds[last], now);
+            };
+        }
+        Map<Long, Highlight> highlights = null;
+        if (highlighter != null) {
+            highlights = new HashMap<>();
+            for (int i = from; i < to; i++) {
+                int doc = ranked[i];
+                Highlight highlight = highlighter.highlight(doc, titles[doc], contents[doc], to - i);
+                if (highlight != null) {
+                    highlights.put(resourceIds[doc], highlight);
+                }
+            }
+        }
+        return new SearchHits(ids, total, exact, next, facets, highlights);
+    }
+
+    private Highlighter highlighter(List<String> queryTerms, Map<String, List<Variant>> variants, HighlightParams params) {
+        List<Highlighter.Term> titleTerms = new ArrayList<>();
+        List<Highlighter.Term> contentTerms = new ArrayList<>();
+        for (int group = 0; group < queryTerms.size(); group++) {
+            for (Variant variant : variants.get(queryTerms.get(group))) {
+                PostingList title = postings[Field.TITLE.ordinal()].get(variant.term());
+                if (title != null) {
+                    titleTerms.add(new Highlighter.Term(title, variant.term().length(), group));
+                }
+                PostingList content = postings[Field.CONTENT.ordinal()].get(variant.term());
+                if (content != null) {
+                    contentTerms.add(new Highlighter.Term(content, variant.term().length(), group));
+                }
+            }
+        }
+        return new Highlighter(titleTerms, contentTerms, queryTerms.size(), params);
+    }
+
+    /**
+     * Counts every facet in one walk over {@code matches}.
+     */
+    private Map<String, List<FacetCount>> countFacets(int[] matches) {
+        long[] collegeCounts = new long[colleges.cardinality()];
+        long[] categoryCounts = new long[categories.cardinality()];
+        for (int doc : matches) {
+            colleges.count(doc, collegeCounts);
+            categories.count(doc, categoryCounts);
+        }
+        Map<String, List<FacetCount>> facets = new LinkedHashMap<>();
+        facets.put(COLLEGE_FACET, colleges.top(collegeCounts));
+        facets.put(CATEGORY_FACET, categories.top(categoryCounts));
+        return facets;
+    }
+
+    /**
+     * Each clause is the conjunction of its terms. In AND mode every term of every clause must match,
+     * so they all go into one conjunction; otherwise the clauses' matches are unioned.
+     */
+    private int[] evaluate(List<List<String>> clauses, Map<String, List<Variant>> variants, boolean and) {
+        if (clauses.isEmpty()) {
+            return new int[0];
+        }
+        if (and) {
+            Set<String> terms = new LinkedHashSet<>();
+            clauses.forEach(terms::addAll);
+            List<TermCursor> cursors = new ArrayList<>(terms.size());
+            for (String term : terms) {
+                cursors.add(termCursor(variants.get(term)));
+            }
+            return conjunction(cursors);
+        }
+        int[] result = new int[0];
+        for (List<String> terms : clauses) {
+            List<TermCursor> cursors = new ArrayList<>(terms.size());
+            for (String term : terms) {
+                cursors.add(termCursor(variants.get(term)));
+            }
+            result = union(result, conjunction(cursors));
+        }
+        return result;
+    }
+
+    /**
+     * Live documents every cursor lands on. The rarest cursor leads and the others leapfrog after it
+     * with {@link PostingList#seek}, so the cost follows the rarest term rather than the sum of the
+     * posting lengths.
+     */
+    private int[] conjunction(List<TermCursor> cursors) {
+        cursors.sort(Comparator.comparingLong(TermCursor::cost));
+        TermCursor lead = cursors.get(0);
+        int[] out = new int[(int) Math.min(lead.cost(), maxDoc)];
+        int n = 0;
+        int doc = lead.advance(0);
+        candidates:
+        while (doc != TermCursor.NO_MORE) {
+            for (int i = 1; i < cursors.size(); i++) {
+                int other = cursors.get(i).advance(doc);
+                if (other != doc) {
+                    doc = lead.advance(other);
+                    continue candidates;
+                }
+            }
+            if (live.get(doc)) {
+                out[n++] = doc;
+            }
+            doc = lead.advance(doc + 1);
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private int countLive(TermCursor cursor) {
+        int count = 0;
+        for (int doc = cursor.advance(0); doc != TermCursor.NO_MORE; doc = cursor.advance(doc + 1)) {
+            if (live.get(doc)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The union of a term's variants over every field, walked without copying the lists.
+     */
+    private TermCursor termCursor(List<Variant> termVariants) {
+        List<PostingList> lists = new ArrayList<>(termVariants.size() * FIELDS);
+        for (Variant variant : termVariants) {
+            for (Map<String, PostingList> fieldPostings : postings) {
+                PostingList list = fieldPostings.get(variant.term());
+                if (list != null) {
+                    lists.add(list);
+                }
+            }
+        }
+        return new TermCursor(lists.toArray(new PostingList[0]));
+    }
+
+    private long postingCost(Map<String, List<Variant>> variants) {
+        long cost = 0;
+        for (List<Variant> termVariants : variants.values()) {
+            for (Variant variant : termVariants) {
+                cost += docFreq(variant.term());
+            }
+        }
+        return cost;
+    }
+
+    private long docFreq(String term) {
+        long freq = 0;
+        for (Map<String, PostingList> fieldPostings : postings) {
+            PostingList list = fieldPostings.get(term);
+            if (list != null) {
+                freq += list.size();
+            }
+        }
+        return freq;
+    }
+
+    /**
+     * {@code term} itself, the most frequent indexed words it is a prefix of when it is a Latin word of
+     * at least three characters, and, when {@code maxEdits} allows, the closest indexed terms. Letter-only
+     * words may be edited once from three characters and twice from six; a CJK bigram may have one
+     * character replaced, but only when it does not occur in the index at all, since any real
+     * bigram has plenty of unrelated neighbours. Digits and single characters are never widened.
+     */
+    private List<Variant> variants(String term, int maxEdits) {
+        List<Variant> variants = new ArrayList<>();
+        variants.add(new Variant(term, 1f));
+        if (term.length() >= MIN_PREFIX_LENGTH && Character.isLetter(term.charAt(0))
+                && !CjkBigramAnalyzer.isCjk(term.charAt(0))) {
+            List<String> completions = new ArrayList<>(dictionary.completions(term, MAX_PREFIX_SCAN));
+            completions.removeIf(completion -> docFreq(completion) == 0);
+            completions.sort(Comparator.comparingLong(this::docFreq).reversed().thenComparing(Comparator.naturalOrder()));
+            for (String completion : completions.subList(0, Math.min(completions.size(), MAX_PREFIX_VARIANTS))) {
+                variants.add(new Variant(completion, (float) term.length() / completion.length()));
+            }
+        }
+        int edits = Math.min(maxEdits, allowedEdits(term));
+        if (edits == 0) {
+            return variants;
+        }
+        List<TermDictionary.Match> matches = new ArrayList<>(dictionary.similar(term, edits));
+        // a completion that is also a few edits away keeps its completion boost
+        matches.removeIf(match -> match.term().startsWith(term));
+        matches.sort(Comparator.comparingInt(TermDictionary.Match::edits)
+                .thenComparing(Comparator.comparingLong((TermDictionary.Match m) -> docFreq(m.term())).reversed())
+                .thenComparing(TermDictionary.Match::term));
+        for (TermDictionary.Match match : matches.subList(0, Math.min(matches.size(), MAX_FUZZY_VARIANTS))) {
+            variants.add(new Variant(match.term(), 1f - (float) match.edits() / term.length()));
+        }
+        return variants;
+    }
+
+    private int allowedEdits(String term) {
+        if (CjkBigramAnalyzer.isCjk(term.charAt(0))) {
+            return term.length() == 2 && !dictionary.contains(term) ? 1 : 0;
+        }
+        for (int i = 0; i < term.length(); i++) {
+            if (!Character.isLetter(term.charAt(i))) {
+                return 0;
+            }
+        }
+        return term.length() >= 6 ? 2 : term.length() >= 3 ? 1 : 0;
+    }
+
+    /**
+     * Collects the best of {@code matches} by field-weighted BM25 times a recency factor.
+     */
+    private void rank(int[] matches, List<String> queryTerms, Map<String, List<Variant>> variants,
+                      TopKCollector top, SearchCursor after, long now) {
+        switch (ranking.strategy()) {
+            case EXHAUSTIVE -> rankExhaustive(matches, scorer(queryTerms, variants, now), top);
+            case TOPK -> scorer(queryTerms, variants, now).collectTopK(matches, live, top);
+            case VERIFY -> {
+                scorer(queryTerms, variants, now).collectTopK(matches, live, top);
+                TopKCollector check = collector(top.capacity(), after);
+                rankExhaustive(matches, scorer(queryTerms, variants, now), check);
+                int[] actual = top.peek();
+                int[] expected = check.drain();
+                if (!Arrays.equals(actual, expected)) {
+                    log.warn("Top-k ranking differs from exhaustive ranking for terms {}: {} vs {}",
+                            queryTerms, Arrays.toString(actual), Arrays.toString(expected));
+                }
+            }
+        }
+    }
+
+    private void rankExhaustive(int[] matches, QueryScorer scorer, TopKCollector top) {
+        float[] scores = scorer.scoreAll(matches);
+        for (int i = 0; i < matches.length; i++) {
+            top.collect(matches[i], Float.floatToIntBits(scores[i]), resourceIds[matches[i]]);
+        }
+    }
+
+    private QueryScorer scorer(List<String> queryTerms, Map<String, List<Variant>> variants, long now) {
+        QueryScorer scorer = new QueryScorer(ranking, resourceIds, createdAt, now);
+        int liveDocs = ordinals.size();
+        for (String term : queryTerms) {
+            for (Variant variant : variants.get(term)) {
+                for (Field field : Field.values()) {
+                    PostingList list = postings[field.ordinal()].get(variant.term());
+                    if (list != null) {
+                        int f = field.ordinal();
+                        float avgLength = liveDocs == 0 ? 1f : Math.max(1f, (float) totalFieldLengths[f] / liveDocs);
+                        // units are registered under the query term so a variant satisfies it when matching
+                        scorer.addUnit(term, list, ranking.boost(field) * variant.boost(), fieldLengths[f], avgLength, liveDocs);
+                    }
+                }
+            }
+        }
+        return scorer;
+    }
+
+    /**
+     * Collects the first {@code k} of {@code matches} by title through the same heap as the other
+     * sorts, keyed by each document's position in the cached {@link NameOrder}.
+     */
+    private TopKCollector collectByName(int[] matches, int k, SearchCursor after) {
+        NameOrder order = nameOrder();
+        TopKCollector top;
+        if (after == null) {
+            top = new TopKCollector(k);
+        } else {
+            // keep positions >= the first one sorting after the cursor; keys are negated positions
+            top = new TopKCollector(k, 1L - order.after(after.text(), after.id()), Long.MIN_VALUE);
+        }
+        for (int doc : matches) {
+            top.collect(doc, -order.rank[doc], resourceIds[doc]);
+        }
+        return top;
+    }
+
+    /**
+     * Called under the read lock; writers clear the cached order under the write lock, so a racing
+     * build by two readers computes the same thing.
+     */
+    private NameOrder nameOrder() {
+        NameOrder order = nameOrder;
+        if (order == null) {
+            int[] docs = liveDocs();
+            Integer[] boxed = new Integer[docs.length];
+            for (int i = 0; i < docs.length; i++) {
+                boxed[i] = docs[i];
+            }
+            Arrays.sort(boxed, (a, b) -> SearchCursor.compareByName(titles[a], resourceIds[a], titles[b], resourceIds[b]));
+            int[] byName = new int[boxed.length];
+            int[] rank = new int[maxDoc];
+            for (int i = 0; i < boxed.length; i++) {
+                byName[i] = boxed[i];
+                rank[boxed[i]] = i;
+            }
+            order = new NameOrder(byName, rank);
+            nameOrder = order;
+        }
+        return order;
+    }
+
+    /**
+     * What {@link #search} evaluates for {@code tokens}: the analyzed terms of each token, leaving out
+     * tokens with none. Queries with the same clauses match the same documents.
+     */
+    public List<List<String>> clauses(List<String> tokens) {
+        List<List<String>> clauses = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            List<String> terms = queryTerms(token);
+            if (!terms.isEmpty()) {
+                clauses.add(terms);
+            }
+        }
+        return clauses;
+    }
+
+    private List<String> queryTerms(String token) {
+        List<String> terms = new ArrayList<>(4);
+        analyzer.analyze(token, true, (buf, len, start, end) -> {
+            String term = new String(buf, 0, len);
+            if (!terms.contains(term)) {
+                terms.add(term);
+            }
+        });
+        return terms;
+    }
+
+    private void indexText(Field field, String text, int doc) {
+        if (text == null) {
+            return;
+        }
+        int f = field.ordinal();
+        Map<String, PostingList> fieldPostings = postings[f];
+        int[] length = fieldLengths[f];
+        analyzer.analyze(text, false, (buf, len, start, end) -> {
+            fieldPostings.computeIfAbsent(new String(buf, 0, len), t -> {
+                dictionary.add(t);
+                return new PostingList(hasOffsets(f));
+            }).add(doc, start);
+            length[doc]++;
+            totalFieldLengths[f]++;
+        });
+    }
+
+    /**
+     * Gives {@code source} a new ordinal, tombstoning any earlier one, and sets everything but its postings.
+     */
+    private int addDocument(IndexedResource source, int contentCount, String storedContent) {
+        removeLocked(source.id());
+        nameOrder = null;
+        int doc = maxDoc++;
+        ensureCapacity(maxDoc);
+        resourceIds[doc] = source.id();
+        createdAt[doc] = epochMicros(source.createdAt());
+        titles[doc] = source.title() != null ? source.title() : "";
+        contents[doc] = storedContent;
+        sources[doc] = source;
+        contentCounts[doc] = contentCount;
+        extractedCount += contentCount;
+        ordinals.put(source.id(), doc);
+        live.set(doc);
+        colleges.set(doc, source.college() != null ? List.of(source.college()) : List.of());
+        categories.set(doc, source.categories() != null ? source.categories() : List.of());
+        uploaders.set(doc, source.uploader() != null ? List.of(source.uploader()) : List.of());
+        return doc;
+    }
+
+    private static IndexedResource withoutContents(IndexedResource resource) {
+        return new IndexedResource(resource.id(), resource.title(), resource.college(), resource.createdAt(),
+                resource.attachmentNames(), resource.categories(), resource.uploader(), List.of());
+    }
+
+    private static boolean hasOffsets(int field) {
+        return field == Field.TITLE.ordinal() || field == Field.CONTENT.ordinal();
+    }
+
+    private void removeLocked(Long resourceId) {
+        Integer doc = ordinals.remove(resourceId);
+        if (doc != null) {
+            nameOrder = null;
+            live.clear(doc);
+            titles[doc] = null;
+            contents[doc] = null;
+            sources[doc] = null;
+            extractedCount -= contentCounts[doc];
+            contentCounts[doc] = 0;
+            colleges.clear(doc);
+            categories.clear(doc);
+            uploaders.clear(doc);
+            for (int f = 0; f < FIELDS; f++) {
+                totalFieldLengths[f] -= fieldLengths[f][doc];
+            }
+            deleted++;
+        }
+    }
+
+    private String storedPrefix(String content) {
+        if (content == null || content.length() <= storedContentChars) {
+            return content;
+        }
+        int end = storedContentChars;
+        if (end > 0 && Character.isHighSurrogate(content.charAt(end - 1))) {
+            end--;
+        }
+        return content.substring(0, end);
+    }
+
+    private static long epochMicros(Instant instant) {
+        return instant == null ? 0L : instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000;
+    }
+
+    /**
+     * Live documents passing {@code filter}, or null when it does not restrict anything. Values within
+     * a facet are ORed and facets are ANDed, all over the facets' cached value bitsets.
+     */
+    private BitSet filterDocs(SearchFilter filter) {
+        if (filter == null || filter.isEmpty()) {
+            return null;
+        }
+        BitSet allowed = (BitSet) live.clone();
+        and(allowed, colleges, filter.colleges());
+        and(allowed, categories, filter.categories());
+        and(allowed, uploaders, filter.uploaders());
+        return allowed;
+    }
+
+    private static void and(BitSet allowed, FacetValues facet, List<String> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        if (values.size() == 1) {
+            allowed.and(facet.docs(values.get(0)));
+            return;
+        }
+        BitSet any = new BitSet();
+        for (String value : values) {
+            any.or(facet.docs(value));
+        }
+        allowed.and(any);
+    }
+
+    private static int[] retain(int[] docs, BitSet allowed) {
+        int[] out = new int[docs.length];
+        int n = 0;
+        for (int doc : docs) {
+            if (allowed.get(doc)) {
+                out[n++] = doc;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private int[] liveDocs() {
+        return live.stream().toArray();
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        int[] out = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                out[n++] = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                out[n++] = b[j++];
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= resourceIds.length) {
+            return;
+        }
+        int capacity = Math.max(needed, resourceIds.length + (resourceIds.length >> 1));
+        resourceIds = Arrays.copyOf(resourceIds, capacity);
+        createdAt = Arrays.copyOf(createdAt, capacity);
+        titles = Arrays.copyOf(titles, capacity);
+        contents = Arrays.copyOf(contents, capacity);
+        sources = Arrays.copyOf(sources, capacity);
+        contentCounts = Arrays.copyOf(contentCounts, capacity);
+        for (int f = 0; f < FIELDS; f++) {
+            fieldLengths[f] = Arrays.copyOf(fieldLengths[f], capacity);
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (deleted >= COMPACT_MIN_DELETED && deleted * 2 >= maxDoc) {
+            compact();
+        }
+    }
+
+    /**
+     * Renumbers live documents densely and drops tombstoned ordinals from every posting list.
+     */
+    private void compact() {
+        nameOrder = null;
+        int[] remap = new int[maxDoc];
+        int next = 0;
+        for (int doc = 0; doc < maxDoc; doc++) {
+            if (live.get(doc)) {
+                remap[doc] = next;
+                resourceIds[next] = resourceIds[doc];
+                createdAt[next] = createdAt[doc];
+                titles[next] = titles[doc];
+                contents[next] = contents[doc];
+                sources[next] = sources[doc];
+                contentCounts[next] = contentCounts[doc];
+                for (int f = 0; f < FIELDS; f++) {
+                    fieldLengths[f][next] = fieldLengths[f][doc];
+                }
+                next++;
+            } else {
+                remap[doc] = -1;
+            }
+        }
+        for (Map<String, PostingList> fieldPostings : postings) {
+            Iterator<PostingList> it = fieldPostings.values().iterator();
+            while (it.hasNext()) {
+                PostingList list = it.next();
+                list.remap(remap);
+                if (list.size() == 0) {
+                    it.remove();
+                }
+            }
+        }
+        colleges.remap(remap, maxDoc, next);
+        categories.remap(remap, maxDoc, next);
+        uploaders.remap(remap, maxDoc, next);
+        dictionary.clear();
+        for (Map<String, PostingList> fieldPostings : postings) {
+            fieldPostings.keySet().forEach(dictionary::add);
+        }
+        Arrays.fill(titles, next, maxDoc, null);
+        Arrays.fill(contents, next, maxDoc, null);
+        Arrays.fill(sources, next, maxDoc, null);
+        Arrays.fill(contentCounts, next, maxDoc, 0);
+        for (int f = 0; f < FIELDS; f++) {
+            Arrays.fill(fieldLengths[f], next, maxDoc, 0);
+        }
+        ordinals.replaceAll((id, doc) -> remap[doc]);
+        live.clear();
+        live.set(0, next);
+        maxDoc = next;
+        deleted = 0;
+    }
+
+    private record Variant(String term, float boost) {}
+
+    /**
+     * Forward-only walk over the union of some posting lists; each list keeps its own position.
+     */
+    private static final class TermCursor {
+
+        static final int NO_MORE = Integer.MAX_VALUE;
+
+        private final PostingList[] lists;
+        private final int[] positions;
+        private final long cost;
+
+        TermCursor(PostingList[] lists) {
+            this.lists = lists;
+            this.positions = new int[lists.length];
+            long total = 0;
+            for (PostingList list : lists) {
+                total += list.size();
+            }
+            this.cost = total;
+        }
+
+        /**
+         * Upper bound on the documents the cursor visits.
+         */
+        long cost() {
+            return cost;
+        }
+
+        /**
+         * Moves to the first ordinal {@code >= target} and returns it, or {@link #NO_MORE}.
+         */
+        int advance(int target) {
+            int doc = NO_MORE;
+            for (int i = 0; i < lists.length; i++) {
+                positions[i] = lists[i].seek(positions[i], target);
+                if (positions[i] < lists[i].size()) {
+                    doc = Math.min(doc, lists[i].doc(positions[i]));
+                }
+            }
+            return doc;
+        }
+    }
+
+    private final class NameOrder {
+
+        final int[] byName;
+        final int[] rank;
+
+        NameOrder(int[] byName, int[] rank) {
+            this.byName = byName;
+            this.rank = rank;
+        }
+
+        /**
+         * Position of the first live document sorting strictly after {@code (title, id)}.
+         */
+        int after(String title, long id) {
+            int lo = 0;
+            int hi = byName.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                int doc = byName[mid];
+                if (SearchCursor.compareByName(titles[doc], resourceIds[doc], title, id) <= 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
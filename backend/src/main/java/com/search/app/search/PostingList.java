@@ -0,0 +1,155 @@
+package com.search.app.search;
+
+import java.util.Arrays;
+
+/**
+ * Growable, sorted list of document ordinals with the term frequency for each. Ordinals are
+ * handed out in increasing order, so appends keep the list sorted without any extra work.
+ * <p>
+ * A list created with offsets also keeps the start offset of every occurrence, for highlighting.
+ * They are stored back to back; entry {@code i} owns {@code freq(i)} of them from {@code firstOffset[i]}.
+ */
+final class PostingList {
+
+    private static final int[] NONE = new int[0];
+
+    private int[] docs = new int[4];
+    private int[] freqs = new int[4];
+    private int size;
+    private final boolean withOffsets;
+    private int[] firstOffset = NONE;
+    private int[] offsets = NONE;
+    private int offsetCount;
+
+    PostingList() {
+        this(false);
+    }
+
+    PostingList(boolean withOffsets) {
+        this.withOffsets = withOffsets;
+        if (withOffsets) {
+            firstOffset = new int[4];
+            offsets = new int[4];
+        }
+    }
+
+    void add(int doc) {
+        add(doc, 0);
+    }
+
+    /**
+     * Records one occurrence in {@code doc} starting at {@code offset}; the offset is dropped unless
+     * the list keeps offsets.
+     */
+    void add(int doc, int offset) {
+        if (size > 0 && docs[size - 1] == doc) {
+            freqs[size - 1]++;
+            addOffset(offset);
+            return;
+        }
+        if (size == docs.length) {
+            int capacity = size + (size >> 1) + 1;
+            docs = Arrays.copyOf(docs, capacity);
+            freqs = Arrays.copyOf(freqs, capacity);
+            if (withOffsets) {
+                firstOffset = Arrays.copyOf(firstOffset, capacity);
+            }
+        }
+        docs[size] = doc;
+        freqs[size] = 1;
+        if (withOffsets) {
+            firstOffset[size] = offsetCount;
+        }
+        size++;
+        addOffset(offset);
+    }
+
+    private void addOffset(int offset) {
+        if (!withOffsets) {
+            return;
+        }
+        if (offsetCount == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsetCount + (offsetCount >> 1) + 1);
+        }
+        offsets[offsetCount++] = offset;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Empties the list, keeping its capacity for reuse.
+     */
+    void clear() {
+        size = 0;
+        offsetCount = 0;
+    }
+
+    int doc(int i) {
+        return docs[i];
+    }
+
+    int freq(int i) {
+        return freqs[i];
+    }
+
+    boolean hasOffsets() {
+        return withOffsets;
+    }
+
+    /**
+     * Start offset of the {@code n}-th occurrence in entry {@code i}, in increasing order.
+     */
+    int offset(int i, int n) {
+        return offsets[firstOffset[i] + n];
+    }
+
+    /**
+     * Index of the first entry at or after {@code from} whose ordinal is {@code >= doc},
+     * or {@link #size()} if there is none. Gallops forward, then binary searches.
+     */
+    int seek(int from, int doc) {
+        int lo = from;
+        int step = 1;
+        int hi = from;
+        while (hi < size && docs[hi] < doc) {
+            lo = hi + 1;
+            hi += step;
+            step <<= 1;
+        }
+        hi = Math.min(hi, size);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (docs[mid] < doc) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Rewrites the list through {@code remap}, dropping ordinals mapped to -1.
+     */
+    void remap(int[] remap) {
+        int n = 0;
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            int mapped = remap[docs[i]];
+            if (mapped >= 0) {
+                if (withOffsets) {
+                    System.arraycopy(offsets, firstOffset[i], offsets, kept, freqs[i]);
+                    firstOffset[n] = kept;
+                    kept += freqs[i];
+                }
+                docs[n] = mapped;
+                freqs[n] = freqs[i];
+                n++;
+            }
+        }
+        size = n;
+        offsetCount = kept;
+    }
+}
@@ -0,0 +1,430 @@
+package com.search.app.search;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Type-ahead over resource titles, colleges and attachment names.
+ * <p>
+ * Every distinct phrase (after full-width folding, lowercasing and whitespace collapsing) is an
+ * entry weighted by how many live resources use it. Entries are reachable from a character trie
+ * whose children are kept in sorted arrays, keyed by the phrase itself and by its suffixes that
+ * start a word or a CJK character, so "数学" also suggests "高等数学". Each node keeps the ids of
+ * its best {@value #TOP_N} entries, making a lookup a walk down the prefix plus a copy.
+ * <p>
+ * Weight increases are pushed into the top lists along the affected paths. Decreases only
+ * recompute the nodes that actually listed the entry, since an entry missing from a node's top
+ * list cannot be in any ancestor's either.
+ */
+public class PrefixSuggester {
+
+    public static final int TOP_N = 10;
+    // keys are cut here; longer prefixes are matched by filtering the candidates of the cut prefix
+    private static final int MAX_KEY_LENGTH = 24;
+
+    private static final int[] NO_ENTRIES = new int[0];
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Node root = new Node();
+    private final Map<String, Integer> entryIds = new HashMap<>();
+    private final Map<Long, int[]> byResource = new HashMap<>();
+    private final ArrayDeque<Integer> freeIds = new ArrayDeque<>();
+    private String[] texts = new String[16];
+    private String[] keys = new String[16];
+    private int[] weights = new int[16];
+    private int entryCount;
+
+    /**
+     * Replaces the contents with {@code resources}, computing the top lists once at the end.
+     */
+    public void load(Collection<IndexedResource> resources) {
+        lock.writeLock().lock();
+        try {
+            root = new Node();
+            entryIds.clear();
+            byResource.clear();
+            freeIds.clear();
+            Arrays.fill(texts, 0, entryCount, null);
+            Arrays.fill(keys, 0, entryCount, null);
+            Arrays.fill(weights, 0, entryCount, 0);
+            entryCount = 0;
+            for (IndexedResource resource : resources) {
+                int[] entries = entriesOf(resource);
+                byResource.put(resource.id(), entries);
+                for (int e : entries) {
+                    if (weights[e]++ == 0) {
+                        forEachKey(keys[e], key -> terminal(key, e));
+                    }
+                }
+            }
+            rebuildTops(root);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void add(IndexedResource resource) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(resource.id());
+            int[] entries = entriesOf(resource);
+            byResource.put(resource.id(), entries);
+            for (int e : entries) {
+                if (weights[e]++ == 0) {
+                    forEachKey(keys[e], key -> terminal(key, e));
+                }
+                forEachKey(keys[e], key -> promote(key, e));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long resourceId) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(resourceId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Up to {@code limit} phrases starting with {@code prefix} (or with a word inside them doing so),
+     * most used first.
+     */
+    public List<String> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        boolean cut = key.length() > MAX_KEY_LENGTH;
+        String walk = cut ? key.substring(0, MAX_KEY_LENGTH) : key;
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            for (int i = 0; i < walk.length() && node != null; i++) {
+                node = node.child(walk.charAt(i));
+            }
+            if (node == null) {
+                return List.of();
+            }
+            List<String> out = new ArrayList<>(Math.min(limit, node.top.length));
+            for (int e : node.top) {
+                if (out.size() == limit) {
+                    break;
+                }
+                if (!cut || containsWordStart(keys[e], key)) {
+                    out.add(texts[e]);
+                }
+            }
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeLocked(Long resourceId) {
+        int[] entries = byResource.remove(resourceId);
+        if (entries == null) {
+            return;
+        }
+        for (int e : entries) {
+            if (--weights[e] == 0) {
+                forEachKey(keys[e], key -> untie(key, e));
+                forEachKey(keys[e], key -> demote(key, e));
+                entryIds.remove(keys[e]);
+                texts[e] = null;
+                keys[e] = null;
+                freeIds.push(e);
+            } else {
+                forEachKey(keys[e], key -> demote(key, e));
+            }
+        }
+    }
+
+    private int[] entriesOf(IndexedResource resource) {
+        List<String> phrases = new ArrayList<>();
+        phrases.add(resource.title());
+        phrases.add(resource.college());
+        if (resource.attachmentNames() != null) {
+            phrases.addAll(resource.attachmentNames());
+        }
+        int[] entries = new int[phrases.size()];
+        int n = 0;
+        for (String phrase : phrases) {
+            String key = normalize(phrase);
+            if (key.isEmpty()) {
+                continue;
+            }
+            int e = entryIds.computeIfAbsent(key, k -> allocate(k, phrase.trim()));
+            boolean seen = false;
+            for (int i = 0; i < n; i++) {
+                seen |= entries[i] == e;
+            }
+            if (!seen) {
+                entries[n++] = e;
+            }
+        }
+        return Arrays.copyOf(entries, n);
+    }
+
+    private int allocate(String key, String text) {
+        int e;
+        if (!freeIds.isEmpty()) {
+            e = freeIds.pop();
+        } else {
+            e = entryCount++;
+            if (e == texts.length) {
+                texts = Arrays.copyOf(texts, e * 2);
+                keys = Arrays.copyOf(keys, e * 2);
+                weights = Arrays.copyOf(weights, e * 2);
+            }
+        }
+        texts[e] = text;
+        keys[e] = key;
+        return e;
+    }
+
+    /** Creates the path for {@code key} and registers {@code e} as ending there. */
+    private void terminal(String key, int e) {
+        Node node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.childOrCreate(key.charAt(i));
+        }
+        node.entries = with(node.entries, e);
+    }
+
+    /** Drops {@code e} from the node where {@code key} ends. */
+    private void untie(String key, int e) {
+        Node node = path(key)[key.length()];
+        node.entries = without(node.entries, e);
+    }
+
+    /** {@code e} got heavier: it can only move up in, or enter, the top lists along the path. */
+    private void promote(String key, int e) {
+        for (Node node : path(key)) {
+            int[] top = without(node.top, e);
+            int at = 0;
+            while (at < top.length && better(top[at], e)) {
+                at++;
+            }
+            if (at < TOP_N) {
+                int[] next = new int[Math.min(top.length + 1, TOP_N)];
+                System.arraycopy(top, 0, next, 0, at);
+                next[at] = e;
+                System.arraycopy(top, at, next, at + 1, next.length - at - 1);
+                node.top = next;
+            }
+        }
+    }
+
+    /** {@code e} got lighter or went away: recompute bottom-up while nodes still list it. */
+    private void demote(String key, int e) {
+        Node[] path = path(key);
+        for (int d = path.length - 1; d >= 0; d--) {
+            Node node = path[d];
+            if (node == null) {
+                continue; // pruned while demoting a longer key sharing this path
+            }
+            if (indexOf(node.top, e) < 0) {
+                break;
+            }
+            node.top = merge(node);
+            if (d > 0 && node.top.length == 0 && node.entries.length == 0 && node.labels.length == 0) {
+                path[d - 1].removeChild(key.charAt(d - 1));
+            }
+        }
+    }
+
+    private void rebuildTops(Node node) {
+        for (Node child : node.children) {
+            rebuildTops(child);
+        }
+        node.top = merge(node);
+    }
+
+    /** Best {@value #TOP_N} of the node's own entries and its children's top lists. */
+    private int[] merge(Node node) {
+        int[] best = new int[TOP_N];
+        int n = 0;
+        for (int e : node.entries) {
+            n = offer(best, n, e);
+        }
+        for (Node child : node.children) {
+            for (int e : child.top) {
+                if (n == TOP_N && weights[e] > 0 && !better(e, best[n - 1])) {
+                    break; // child lists are sorted, the rest are worse still
+                }
+                n = offer(best, n, e);
+            }
+        }
+        return Arrays.copyOf(best, n);
+    }
+
+    private int offer(int[] best, int n, int e) {
+        if (weights[e] == 0 || indexOf(best, n, e) >= 0) {
+            return n;
+        }
+        int at = n;
+        while (at > 0 && better(e, best[at - 1])) {
+            at--;
+        }
+        if (at >= TOP_N) {
+            return n;
+        }
+        int moved = Math.min(n, TOP_N - 1) - at;
+        System.arraycopy(best, at, best, at + 1, moved);
+        best[at] = e;
+        return Math.min(n + 1, TOP_N);
+    }
+
+    private boolean better(int a, int b) {
+        if (weights[a] != weights[b]) {
+            return weights[a] > weights[b];
+        }
+        if (keys[a].length() != keys[b].length()) {
+            return keys[a].length() < keys[b].length();
+        }
+        return keys[a].compareTo(keys[b]) < 0;
+    }
+
+    /** Nodes from the root to the end of {@code key}; null past the first missing one. */
+    private Node[] path(String key) {
+        Node[] path = new Node[key.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < key.length() && path[i] != null; i++) {
+            path[i + 1] = path[i].child(key.charAt(i));
+        }
+        return path;
+    }
+
+    /** Calls {@code action} with every trie key of the phrase {@code key}: itself and its word-start suffixes. */
+    private static void forEachKey(String key, Consumer<String> action) {
+        for (int i = 0; i < key.length(); i++) {
+            if (isStart(key, i)) {
+                action.accept(key.substring(i, Math.min(key.length(), i + MAX_KEY_LENGTH)));
+            }
+        }
+    }
+
+    private static boolean containsWordStart(String key, String prefix) {
+        for (int i = key.indexOf(prefix); i >= 0; i = key.indexOf(prefix, i + 1)) {
+            if (isStart(key, i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isStart(String key, int i) {
+        char c = key.charAt(i);
+        if (i == 0 || CjkBigramAnalyzer.isCjk(c)) {
+            return true;
+        }
+        return Character.isLetterOrDigit(c) && !Character.isLetterOrDigit(key.charAt(i - 1));
+    }
+
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = CjkBigramAnalyzer.fold(text.charAt(i));
+            if (Character.isWhitespace(c)) {
+                space = sb.length() > 0;
+            } else {
+                if (space) {
+                    sb.append(' ');
+                    space = false;
+                }
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int indexOf(int[] values, int value) {
+        return indexOf(values, values.length, value);
+    }
+
+    private static int indexOf(int[] values, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int[] with(int[] values, int value) {
+        if (indexOf(values, value) >= 0) {
+            return values;
+        }
+        int[] next = Arrays.copyOf(values, values.length + 1);
+        next[values.length] = value;
+        return next;
+    }
+
+    private static int[] without(int[] values, int value) {
+        int at = indexOf(values, value);
+        if (at < 0) {
+            return values;
+        }
+        int[] next = new int[values.length - 1];
+        System.arraycopy(values, 0, next, 0, at);
+        System.arraycopy(values, at + 1, next, at, next.length - at);
+        return next;
+    }
+
+    private static final class Node {
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        char[] labels = new char[0];
+        Node[] children = NO_CHILDREN;
+        int[] entries = NO_ENTRIES;
+        int[] top = NO_ENTRIES;
+
+        Node child(char c) {
+            int at = Arrays.binarySearch(labels, c);
+            return at >= 0 ? children[at] : null;
+        }
+
+        Node childOrCreate(char c) {
+            int at = Arrays.binarySearch(labels, c);
+            if (at >= 0) {
+                return children[at];
+            }
+            at = -at - 1;
+            char[] nextLabels = new char[labels.length + 1];
+            Node[] nextChildren = new Node[children.length + 1];
+            System.arraycopy(labels, 0, nextLabels, 0, at);
+            System.arraycopy(children, 0, nextChildren, 0, at);
+            nextLabels[at] = c;
+            nextChildren[at] = new Node();
+            System.arraycopy(labels, at, nextLabels, at + 1, labels.length - at);
+            System.arraycopy(children, at, nextChildren, at + 1, children.length - at);
+            labels = nextLabels;
+            children = nextChildren;
+            return nextChildren[at];
+        }
+
+        void removeChild(char c) {
+            int at = Arrays.binarySearch(labels, c);
+            if (at < 0) {
+                return;
+            }
+            char[] nextLabels = new char[labels.length - 1];
+            Node[] nextChildren = new Node[children.length - 1];
+            System.arraycopy(labels, 0, nextLabels, 0, at);
+            System.arraycopy(children, 0, nextChildren, 0, at);
+            System.arraycopy(labels, at + 1, nextLabels, at, nextLabels.length - at);
+            System.arraycopy(children, at + 1, nextChildren, at, nextChildren.length - at);
+            labels = nextLabels;
+            children = nextChildren;
+        }
+    }
+}
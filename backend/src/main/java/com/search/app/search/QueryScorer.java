@@ -0,0 +1,324 @@
+package com.search.app.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Scores one query against the index. The query is flattened into scoring units, one per
+ * (term, field) posting list, each contributing {@code weight * tf / (tf + norm)} with
+ * {@code weight = boost * idf * (k1 + 1)}. Since that fraction is below 1, {@code weight} is also
+ * the unit's maximum possible contribution, which is what lets {@link #collectTopK} prune.
+ * <p>
+ * Units are always summed in the order they were added, so exhaustive and pruned scoring produce
+ * bit-identical scores.
+ * <p>
+ * When the match set has not been materialised, {@link #setClauses} describes the query shape
+ * (any clause matches when all of its terms occur) so candidates can be checked directly.
+ */
+final class QueryScorer {
+
+    private final RankingParams ranking;
+    private final long[] resourceIds;
+    private final long[] createdAtMicros;
+    private final long now;
+
+    private String[] unitTerms = new String[8];
+    private PostingList[] lists = new PostingList[8];
+    private int[][] lengths = new int[8][];
+    private float[] avgLengths = new float[8];
+    private float[] weights = new float[8];
+    private int units;
+
+    private int[] cursors;
+    private int[][] clauses;
+    private int[][] termUnits;
+    private boolean pruned;
+
+    QueryScorer(RankingParams ranking, long[] resourceIds, long[] createdAtMicros, long now) {
+        this.ranking = ranking;
+        this.resourceIds = resourceIds;
+        this.createdAtMicros = createdAtMicros;
+        this.now = now;
+    }
+
+    void addUnit(String term, PostingList list, float boost, int[] fieldLengths, float avgLength, int liveDocs) {
+        if (units == lists.length) {
+            int capacity = units * 2;
+            unitTerms = Arrays.copyOf(unitTerms, capacity);
+            lists = Arrays.copyOf(lists, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            avgLengths = Arrays.copyOf(avgLengths, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+        }
+        // lists keep tombstoned ordinals until compaction, so their size can exceed the live documents;
+        // capping it keeps idf, and with it every weight and score, non-negative
+        int docFreq = Math.min(list.size(), liveDocs);
+        float idf = (float) Math.log(1 + (liveDocs - docFreq + 0.5) / (docFreq + 0.5));
+        unitTerms[units] = term;
+        lists[units] = list;
+        lengths[units] = fieldLengths;
+        avgLengths[units] = avgLength;
+        weights[units] = boost * idf * (ranking.k1() + 1);
+        units++;
+    }
+
+    /**
+     * @param clauses query clauses as lists of terms, each term one of {@code terms}
+     */
+    void setClauses(List<List<String>> clauses, List<String> terms) {
+        termUnits = new int[terms.size()][];
+        for (int t = 0; t < terms.size(); t++) {
+            List<Integer> found = new ArrayList<>();
+            for (int u = 0; u < units; u++) {
+                if (unitTerms[u].equals(terms.get(t))) {
+                    found.add(u);
+                }
+            }
+            termUnits[t] = found.stream().mapToInt(Integer::intValue).toArray();
+        }
+        this.clauses = new int[clauses.size()][];
+        for (int c = 0; c < clauses.size(); c++) {
+            this.clauses[c] = clauses.get(c).stream().mapToInt(terms::indexOf).toArray();
+        }
+    }
+
+    /**
+     * Whether {@link #collectTopK} skipped any part of a posting list, making its count a lower bound.
+     */
+    boolean pruned() {
+        return pruned;
+    }
+
+    /**
+     * Scores every document in {@code matches} by walking each posting list alongside it.
+     */
+    float[] scoreAll(int[] matches) {
+        float[] scores = new float[matches.length];
+        for (int u = 0; u < units; u++) {
+            PostingList list = lists[u];
+            int i = 0, j = 0, n = list.size();
+            while (i < matches.length && j < n) {
+                int doc = list.doc(j);
+                if (matches[i] < doc) {
+                    i++;
+                } else if (matches[i] > doc) {
+                    j++;
+                } else {
+                    scores[i] += contribution(u, doc, list.freq(j));
+                    i++;
+                    j++;
+                }
+            }
+        }
+        for (int i = 0; i < matches.length; i++) {
+            scores[i] = finalScore(scores[i], matches[i]);
+        }
+        return scores;
+    }
+
+    /**
+     * MaxScore: units are ordered by their maximum contribution, and once the heap is full the
+     * low-bound prefix whose bounds sum to no more than the current threshold becomes
+     * "non-essential". Candidates are only drawn from essential posting lists, and a candidate
+     * stops being scored as soon as its partial score plus the remaining bounds cannot beat the
+     * threshold. Candidates are restricted to {@code matches} when given, otherwise to live
+     * documents satisfying the clauses.
+     *
+     * @return how many matching documents were visited; the full match count unless {@link #pruned()}
+     */
+    int collectTopK(int[] matches, BitSet live, TopKCollector top) {
+        if (units == 0) {
+            if (matches == null) {
+                return 0;
+            }
+            for (int doc : matches) {
+                top.collect(doc, Float.floatToIntBits(finalScore(0f, doc)), resourceIds[doc]);
+            }
+            return matches.length;
+        }
+        cursors = new int[units];
+        int[] byBound = new int[units];
+        for (int u = 0; u < units; u++) {
+            byBound[u] = u;
+        }
+        sortByWeight(byBound);
+        // prefix[j]: sum of bounds of byBound[0..j)
+        float[] prefix = new float[units + 1];
+        for (int j = 0; j < units; j++) {
+            prefix[j + 1] = prefix[j] + weights[byBound[j]];
+        }
+
+        int visited = 0;
+        int firstEssential = 0;
+        // Pruning compares against a slightly lowered threshold so rounding differences between
+        // bound sums and the canonical score can never drop a document that belongs in the top k
+        float threshold = -1f;
+        int m = 0;
+        while (true) {
+            int doc = Integer.MAX_VALUE;
+            for (int j = firstEssential; j < units; j++) {
+                int u = byBound[j];
+                if (cursors[u] < lists[u].size()) {
+                    doc = Math.min(doc, lists[u].doc(cursors[u]));
+                }
+            }
+            if (doc == Integer.MAX_VALUE) {
+                break;
+            }
+            boolean match;
+            if (matches != null) {
+                m = gallop(matches, m, doc);
+                if (m == matches.length) {
+                    break;
+                }
+                match = matches[m] == doc;
+            } else {
+                match = live.get(doc) && matchesClauses(doc);
+            }
+            if (match) {
+                visited++;
+            }
+
+            if (match && (!top.full() || upperBound(doc, byBound, firstEssential, prefix, threshold) > threshold)) {
+                float score = finalScore(score(doc), doc);
+                top.collect(doc, Float.floatToIntBits(score), resourceIds[doc]);
+                if (top.full()) {
+                    float min = Float.intBitsToFloat((int) top.minKey());
+                    threshold = min - min * 1e-5f;
+                    while (firstEssential < units && prefix[firstEssential + 1] <= threshold) {
+                        firstEssential++;
+                        pruned = true;
+                    }
+                }
+            }
+
+            for (int j = firstEssential; j < units; j++) {
+                int u = byBound[j];
+                if (cursors[u] < lists[u].size() && lists[u].doc(cursors[u]) == doc) {
+                    cursors[u]++;
+                }
+            }
+        }
+        return visited;
+    }
+
+    private boolean matchesClauses(int doc) {
+        for (int[] clause : clauses) {
+            boolean all = true;
+            for (int t : clause) {
+                if (!hasTerm(t, doc)) {
+                    all = false;
+                    break;
+                }
+            }
+            if (all) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasTerm(int term, int doc) {
+        for (int u : termUnits[term]) {
+            int c = seek(u, doc);
+            if (c < lists[u].size() && lists[u].doc(c) == doc) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Exact contributions from essential units plus bounds for the rest, tightened from the
+     * highest bound down and abandoned as soon as it drops to {@code threshold}.
+     */
+    private float upperBound(int doc, int[] byBound, int firstEssential, float[] prefix, float threshold) {
+        float bound = 0f;
+        for (int j = firstEssential; j < units; j++) {
+            int u = byBound[j];
+            int c = cursors[u];
+            if (c < lists[u].size() && lists[u].doc(c) == doc) {
+                bound += contribution(u, doc, lists[u].freq(c));
+            }
+        }
+        if (bound + prefix[firstEssential] <= threshold) {
+            return bound + prefix[firstEssential];
+        }
+        for (int j = firstEssential - 1; j >= 0; j--) {
+            int u = byBound[j];
+            int c = seek(u, doc);
+            if (c < lists[u].size() && lists[u].doc(c) == doc) {
+                bound += contribution(u, doc, lists[u].freq(c));
+            }
+            if (bound + prefix[j] <= threshold) {
+                return bound + prefix[j];
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Raw BM25 for {@code doc}, summed in unit order. Documents must be visited in ascending order.
+     */
+    private float score(int doc) {
+        float score = 0f;
+        for (int u = 0; u < units; u++) {
+            int c = seek(u, doc);
+            if (c < lists[u].size() && lists[u].doc(c) == doc) {
+                score += contribution(u, doc, lists[u].freq(c));
+            }
+        }
+        return score;
+    }
+
+    private int seek(int u, int doc) {
+        cursors[u] = lists[u].seek(cursors[u], doc);
+        return cursors[u];
+    }
+
+    private float contribution(int u, int doc, int freq) {
+        float tf = freq;
+        float norm = ranking.k1() * (1 - ranking.b() + ranking.b() * lengths[u][doc] / avgLengths[u]);
+        return weights[u] * tf / (tf + norm);
+    }
+
+    private float finalScore(float raw, int doc) {
+        float base = units == 0 ? 1f : raw;
+        return base * ranking.recency(createdAtMicros[doc] / 1000, now);
+    }
+
+    private void sortByWeight(int[] order) {
+        for (int i = 1; i < order.length; i++) {
+            int u = order[i];
+            int j = i - 1;
+            while (j >= 0 && weights[order[j]] > weights[u]) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = u;
+        }
+    }
+
+    private static int gallop(int[] docs, int from, int doc) {
+        int lo = from;
+        int hi = from;
+        int step = 1;
+        while (hi < docs.length && docs[hi] < doc) {
+            lo = hi + 1;
+            hi += step;
+            step <<= 1;
+        }
+        hi = Math.min(hi, docs.length);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (docs[mid] < doc) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
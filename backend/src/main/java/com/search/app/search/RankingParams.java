@@ -0,0 +1,41 @@
+package com.search.app.search;
+
+/**
+ * Tuning knobs for relevance ranking: BM25 {@code k1}/{@code b}, per-field boosts, a recency
+ * decay where {@code recencyWeight} of the score halves every {@code recencyHalfLifeDays}, and
+ * the {@link Strategy} used to pick the top documents.
+ */
+public record RankingParams(float k1, float b,
+                            float titleBoost, float attachmentBoost, float collegeBoost, float contentBoost,
+                            double recencyHalfLifeDays, float recencyWeight,
+                            Strategy strategy) {
+
+    public enum Strategy {
+        /** Bounded heap with MaxScore pruning. */
+        TOPK,
+        /** Score every match and sort. */
+        EXHAUSTIVE,
+        /** Run both, log any difference, return the top-k result. */
+        VERIFY
+    }
+
+    float boost(InvertedIndex.Field field) {
+        return switch (field) {
+            case TITLE -> titleBoost;
+            case ATTACHMENT -> attachmentBoost;
+            case COLLEGE -> collegeBoost;
+            case CONTENT -> contentBoost;
+        };
+    }
+
+    /**
+     * Multiplier in {@code (1 - recencyWeight, 1]} for a document created at {@code createdAtMillis}.
+     */
+    float recency(long createdAtMillis, long nowMillis) {
+        if (recencyWeight <= 0 || recencyHalfLifeDays <= 0) {
+            return 1f;
+        }
+        double ageDays = Math.max(0, nowMillis - createdAtMillis) / 86_400_000d;
+        return (float) ((1 - recencyWeight) + recencyWeight * Math.pow(0.5, ageDays / recencyHalfLifeDays));
+    }
+}
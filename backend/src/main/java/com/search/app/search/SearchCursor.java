@@ -0,0 +1,84 @@
+package com.search.app.search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque search-after position: the sort key and resource id of the last hit on a page. The next
+ * page starts strictly after it, so no rows are skipped to get there.
+ * <p>
+ * Relevance scores decay with age, so a relevance cursor also carries the clock its first page was
+ * scored at; later pages score against the same instant and the keys stay comparable. They can
+ * still drift if the catalogue changes between pages, which shifts the corpus statistics.
+ *
+ * @param key  {@code createdAt} in epoch microseconds for {@code date}, score bits for {@code relevance}
+ * @param text the title for {@code name}
+ * @param now  epoch millis the relevance scores were computed at; 0 for the other sorts
+ */
+public record SearchCursor(String sort, long key, String text, long id, long now) {
+
+    public SearchCursor(String sort, long key, String text, long id) {
+        this(sort, key, text, id, 0);
+    }
+
+    public String encode() {
+        String raw = sort + ":" + key + ":" + id + ":" + now + ":" + (text != null ? text : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws InvalidCursorException if {@code encoded} is malformed or was issued for another sort
+     */
+    public static SearchCursor decode(String encoded, String expectedSort) {
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException("Malformed cursor", e);
+        }
+        String[] parts = raw.split(":", 5);
+        if (parts.length != 5 || !parts[0].equals(expectedSort)) {
+            throw new InvalidCursorException("Cursor does not match sort " + expectedSort);
+        }
+        try {
+            return new SearchCursor(parts[0], Long.parseLong(parts[1]), parts[4], Long.parseLong(parts[2]),
+                    Long.parseLong(parts[3]));
+        } catch (NumberFormatException e) {
+            throw new InvalidCursorException("Malformed cursor", e);
+        }
+    }
+
+    /**
+     * Normalises the request's sort parameter to the three sorts cursors know about.
+     */
+    public static String sortKey(String sort) {
+        if ("date".equalsIgnoreCase(sort)) {
+            return "date";
+        }
+        if ("name".equalsIgnoreCase(sort)) {
+            return "name";
+        }
+        return "relevance";
+    }
+
+    /**
+     * Title order shared by the index and the SQL fallback: by Unicode code point, which is what a
+     * binary collation such as MySQL's {@code utf8mb4_bin} compares, then by id.
+     */
+    public static int compareByName(String titleA, long idA, String titleB, long idB) {
+        int n = Math.min(titleA.length(), titleB.length());
+        for (int i = 0; i < n; i++) {
+            char a = titleA.charAt(i);
+            char b = titleB.charAt(i);
+            if (a != b) {
+                // UTF-16 order only differs from code point order where surrogates meet U+E000..U+FFFF
+                if (Character.isSurrogate(a) != Character.isSurrogate(b)) {
+                    return Character.isSurrogate(a) ? 1 : -1;
+                }
+                return Character.compare(a, b);
+            }
+        }
+        int c = Integer.compare(titleA.length(), titleB.length());
+        return c != 0 ? c : Long.compare(idA, idB);
+    }
+}
@@ -0,0 +1,22 @@
+package com.search.app.search;
+
+import java.util.List;
+
+/**
+ * Restricts a search to resources from any of the given colleges, with an attachment in any of the
+ * given categories and uploaded by any of the given users. Empty lists do not restrict.
+ */
+public record SearchFilter(List<String> colleges, List<String> categories, List<String> uploaders) {
+
+    public static final SearchFilter NONE = new SearchFilter(List.of(), List.of(), List.of());
+
+    public SearchFilter {
+        colleges = colleges == null ? List.of() : List.copyOf(colleges);
+        categories = categories == null ? List.of() : List.copyOf(categories);
+        uploaders = uploaders == null ? List.of() : List.copyOf(uploaders);
+    }
+
+    public boolean isEmpty() {
+        return colleges.isEmpty() && categories.isEmpty() && uploaders.isEmpty();
+    }
+}
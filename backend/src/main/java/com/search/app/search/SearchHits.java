@@ -0,0 +1,15 @@
+package com.search.app.search;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of resource ids in display order, plus the size of the full match set. When
+ * {@code totalExact} is false, {@code total} is a lower bound. {@code next} is null on the last page.
+ * {@code facets} maps facet name to value counts over the full match set, or is null when not requested.
+ * {@code highlights} maps the ids of this page that matched something highlightable to their fragments,
+ * or is null when not requested.
+ */
+public record SearchHits(List<Long> ids, long total, boolean totalExact, SearchCursor next,
+                         Map<String, List<FacetCount>> facets, Map<Long, Highlight> highlights) {
+}
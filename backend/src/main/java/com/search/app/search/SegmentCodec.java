@@ -0,0 +1,183 @@
+package com.search.app.search;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encoding of the body of a segment file, shared by the {@link InvertedIndex} that writes and loads
+ * segments and the {@link SegmentStore} that merges them.
+ * <p>
+ * A body is the document count and the documents, then the postings of each field in
+ * {@link InvertedIndex.Field} order: one entry per term in ascending term order, ended by a null
+ * term. Postings refer to documents by their position in the segment. Document numbers, frequencies
+ * and offsets are written as variable-length deltas, so the common small values take one byte.
+ */
+final class SegmentCodec {
+
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private SegmentCodec() {
+    }
+
+    /**
+     * A stored document: the resource without its extracted text, how many texts were extracted
+     * and the prefix of them kept for snippets.
+     */
+    record Document(IndexedResource source, int contentCount, String storedContent) {}
+
+    static void writeDocument(DataOutput out, IndexedResource source, int contentCount, String storedContent)
+            throws IOException {
+        out.writeLong(source.id());
+        Instant createdAt = source.createdAt();
+        out.writeLong(createdAt == null ? NO_TIME : createdAt.getEpochSecond());
+        out.writeInt(createdAt == null ? 0 : createdAt.getNano());
+        writeString(out, source.title());
+        writeString(out, source.college());
+        writeString(out, source.uploader());
+        writeStrings(out, source.attachmentNames());
+        writeStrings(out, source.categories());
+        writeVInt(out, contentCount);
+        writeString(out, storedContent);
+    }
+
+    static Document readDocument(DataInput in) throws IOException {
+        long id = in.readLong();
+        long seconds = in.readLong();
+        int nanos = in.readInt();
+        Instant createdAt = seconds == NO_TIME ? null : Instant.ofEpochSecond(seconds, nanos);
+        String title = readString(in);
+        String college = readString(in);
+        String uploader = readString(in);
+        List<String> names = readStrings(in);
+        List<String> categories = readStrings(in);
+        int contentCount = readVInt(in);
+        String storedContent = readString(in);
+        return new Document(new IndexedResource(id, title, college, createdAt, names, categories, uploader, List.of()),
+                contentCount, storedContent);
+    }
+
+    /**
+     * Writes the entries of {@code list} whose documents {@code remap} keeps, renumbered through it
+     * ({@code null} keeps every entry as it is). Nothing is written when no entry is kept.
+     */
+    static void writePostings(DataOutput out, String term, PostingList list, int[] remap) throws IOException {
+        int kept = 0;
+        for (int i = 0; i < list.size(); i++) {
+            if (remap == null || remap[list.doc(i)] >= 0) {
+                kept++;
+            }
+        }
+        if (kept == 0) {
+            return;
+        }
+        writeString(out, term);
+        writeVInt(out, kept);
+        int previous = 0;
+        for (int i = 0; i < list.size(); i++) {
+            int doc = remap == null ? list.doc(i) : remap[list.doc(i)];
+            if (doc < 0) {
+                continue;
+            }
+            int freq = list.freq(i);
+            writeVInt(out, doc - previous);
+            writeVInt(out, freq);
+            previous = doc;
+            if (list.hasOffsets()) {
+                int offset = 0;
+                for (int n = 0; n < freq; n++) {
+                    writeVInt(out, list.offset(i, n) - offset);
+                    offset = list.offset(i, n);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the entries following a term into {@code into}, renumbering each document through
+     * {@code docMap} and dropping those it maps to -1. Offsets are expected when {@code into} keeps them.
+     */
+    static void readPostings(DataInput in, int[] docMap, PostingList into) throws IOException {
+        int entries = readVInt(in);
+        int doc = 0;
+        for (int i = 0; i < entries; i++) {
+            doc += readVInt(in);
+            int freq = readVInt(in);
+            int mapped = docMap[doc];
+            if (!into.hasOffsets()) {
+                for (int n = 0; mapped >= 0 && n < freq; n++) {
+                    into.add(mapped);
+                }
+                continue;
+            }
+            int offset = 0;
+            for (int n = 0; n < freq; n++) {
+                offset += readVInt(in);
+                if (mapped >= 0) {
+                    into.add(mapped, offset);
+                }
+            }
+        }
+    }
+
+    static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStrings(DataOutput out, List<String> strings) throws IOException {
+        List<String> list = strings != null ? strings : List.of();
+        writeVInt(out, list.size());
+        for (String s : list) {
+            writeString(out, s);
+        }
+    }
+
+    private static List<String> readStrings(DataInput in) throws IOException {
+        int count = readVInt(in);
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(readString(in));
+        }
+        return strings;
+    }
+
+    private static void writeVInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length int");
+    }
+}
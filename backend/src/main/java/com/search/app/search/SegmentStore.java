@@ -0,0 +1,702 @@
+package com.search.app.search;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * On-disk copy of an {@link InvertedIndex}, so a restart loads the analyzed index instead of
+ * walking the catalogue tables and analyzing every resource again.
+ * <p>
+ * The index is kept as immutable segments, each a checksummed file holding removed resource ids,
+ * documents and their postings per field in term order ({@link SegmentCodec}). Loading appends the
+ * segments to the index oldest first, so a later segment's documents replace earlier ones with
+ * the same ids.
+ * <p>
+ * Segments are written and read as buffered streams rather than memory-mapped. A mapped buffer is
+ * limited to 2 GB, so large segments would need several mappings stitched together; segments are
+ * only ever read front to back, once per load or merge, which gains nothing from mapping; and on
+ * Windows a mapped file cannot be deleted until its buffer is garbage collected, which would leave
+ * merged-away segments behind. Streaming also means a segment never has to fit in memory.
+ * <p>
+ * Changes (an indexed resource, or the removal of one) are appended to a small delta log of
+ * resource records, which loading analyzes again. Once it holds {@code flushOps} changes the
+ * latest change per resource is analyzed into a new segment. When there are more than
+ * {@code maxSegments}, the small ones after the first are merged into one, and that is folded
+ * into the first once it reaches half its size. Merging walks the segments' sorted terms side by
+ * side, so it streams from file to file; removals are only dropped when the first segment is
+ * part of the merge, since nothing older is left for them to remove.
+ * <p>
+ * The MANIFEST lists the live segments and is replaced atomically, so a crash leaves either the
+ * old or the new set; files it does not list are deleted on load. Any header, version or checksum
+ * mismatch makes {@link #load()} fail, and the caller is expected to clear the index, rebuild it
+ * and {@link #reset}.
+ * <p>
+ * Flushing and merging are meant to run on one background thread; appends may come from others.
+ */
+public class SegmentStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentStore.class);
+
+    private static final int SEGMENT_MAGIC = 0x53454731; // "SEG1"
+    private static final int DELTA_MAGIC = 0x444c5431; // "DLT1"
+    private static final int MANIFEST_MAGIC = 0x4d414e31; // "MAN1"
+    // bump whenever the record layout changes; older files are then rebuilt rather than misread
+    private static final int FORMAT_VERSION = 3;
+    private static final int DELTA_HEADER = 4 + 4;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private final InvertedIndex index;
+    private final Path dir;
+    private final Path manifest;
+    private final Path delta;
+    private final int flushOps;
+    private final int maxSegments;
+
+    // segment list, guarded by this; the delta log is guarded by deltaLock
+    private List<Segment> segments = new ArrayList<>();
+    private long nextSegmentId = 1;
+    private final Object deltaLock = new Object();
+    private FileChannel deltaChannel;
+    private int deltaOps;
+
+    public SegmentStore(InvertedIndex index, Path dir, int flushOps, int maxSegments) {
+        this.index = index;
+        this.dir = dir;
+        this.manifest = dir.resolve("MANIFEST");
+        this.delta = dir.resolve("delta.log");
+        this.flushOps = Math.max(1, flushOps);
+        this.maxSegments = Math.max(2, maxSegments);
+    }
+
+    /**
+     * Loads every segment and the delta log into the index and opens the log for appending. The
+     * index is left partly loaded if this fails.
+     *
+     * @throws IOException if there is nothing stored, or it is unreadable or was written in another format
+     */
+    public synchronized void load() throws IOException {
+        if (!Files.exists(manifest)) {
+            throw new NoSuchFileException(manifest.toString());
+        }
+        readManifest();
+        for (Segment segment : segments) {
+            readSegment(segment);
+        }
+        synchronized (deltaLock) {
+            Map<Long, IndexedResource> changes = new LinkedHashMap<>();
+            long end = readDelta(changes);
+            changes.forEach((id, resource) -> {
+                if (resource != null) {
+                    index.add(resource);
+                } else {
+                    index.remove(id);
+                }
+            });
+            openDelta(end);
+        }
+        deleteUnlisted();
+    }
+
+    /**
+     * Replaces everything stored with a single segment holding the whole index and an empty delta log.
+     */
+    public synchronized void reset() throws IOException {
+        Files.createDirectories(dir);
+        List<Segment> previous = segments;
+        segments = new ArrayList<>(List.of(writeSegment(new long[0], index)));
+        writeManifest();
+        synchronized (deltaLock) {
+            closeDelta();
+            writeEmptyDelta();
+            openDelta(DELTA_HEADER);
+        }
+        delete(previous);
+        deleteUnlisted();
+    }
+
+    /**
+     * Appends the indexing of {@code resource} to the delta log.
+     *
+     * @return whether the log has grown enough that it should be {@link #flush() flushed}
+     */
+    public boolean append(IndexedResource resource) throws IOException {
+        return appendChange(resource.id(), resource);
+    }
+
+    /**
+     * Appends the removal of {@code resourceId} to the delta log.
+     *
+     * @return whether the log has grown enough that it should be {@link #flush() flushed}
+     */
+    public boolean appendRemove(long resourceId) throws IOException {
+        return appendChange(resourceId, null);
+    }
+
+    private boolean appendChange(long id, IndexedResource resource) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        writeChange(new DataOutputStream(bytes), id, resource);
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer frame = ByteBuffer.allocate(8 + payload.length);
+        frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        synchronized (deltaLock) {
+            if (deltaChannel == null) {
+                throw new IOException("Segment store is not open");
+            }
+            while (frame.hasRemaining()) {
+                deltaChannel.write(frame);
+            }
+            deltaOps++;
+            return deltaOps % flushOps == 0;
+        }
+    }
+
+    /**
+     * Writes the delta log out as a new segment and empties it. Appends wait while this runs.
+     */
+    public synchronized void flush() throws IOException {
+        synchronized (deltaLock) {
+            if (deltaChannel == null || deltaOps == 0) {
+                return;
+            }
+            deltaChannel.force(false);
+            Map<Long, IndexedResource> changes = new LinkedHashMap<>();
+            readDelta(changes);
+            InvertedIndex added = index.emptyCopy();
+            List<Long> removed = new ArrayList<>();
+            changes.forEach((id, resource) -> {
+                if (resource != null) {
+                    added.add(resource);
+                } else {
+                    removed.add(id);
+                }
+            });
+            segments.add(writeSegment(removed.stream().mapToLong(Long::longValue).toArray(), added));
+            // once the manifest lists the segment, replaying the same changes again would be harmless
+            writeManifest();
+            deltaChannel.truncate(DELTA_HEADER);
+            deltaChannel.position(DELTA_HEADER);
+            deltaOps = 0;
+        }
+    }
+
+    /**
+     * Merges segments if there are more than {@code maxSegments}.
+     *
+     * @return whether anything was merged
+     */
+    public synchronized boolean mergeIfNeeded() throws IOException {
+        if (segments.size() <= maxSegments) {
+            return false;
+        }
+        long tailOps = 0;
+        for (Segment segment : segments.subList(1, segments.size())) {
+            tailOps += segment.ops();
+        }
+        boolean full = tailOps * 2 >= segments.get(0).ops();
+        List<Segment> merging = full ? List.copyOf(segments) : List.copyOf(segments.subList(1, segments.size()));
+
+        Segment merged = merge(merging, full);
+        List<Segment> next = new ArrayList<>();
+        if (!full) {
+            next.add(segments.get(0));
+        }
+        next.add(merged);
+        segments = next;
+        writeManifest();
+        delete(merging);
+        log.info("Merged {} search index segments into one of {} entries", merging.size(), merged.ops());
+        return true;
+    }
+
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Removes the manifest so the next {@link #load()} fails and the index is rebuilt, for when
+     * changes could not be written.
+     */
+    public synchronized void invalidate() {
+        try {
+            Files.deleteIfExists(manifest);
+        } catch (IOException e) {
+            log.warn("Could not remove {}: {}", manifest, e.getMessage());
+        }
+    }
+
+    public void close() throws IOException {
+        synchronized (deltaLock) {
+            if (deltaChannel != null) {
+                deltaChannel.force(false);
+            }
+            closeDelta();
+        }
+    }
+
+    private void readManifest() throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(manifest));
+        if (buf.remaining() < 28 || buf.getInt() != MANIFEST_MAGIC || buf.getInt() != FORMAT_VERSION) {
+            throw new IOException("Unrecognised segment manifest");
+        }
+        checkCrc(buf, 0, buf.limit() - 8, buf.getLong(buf.limit() - 8), "manifest");
+        long next = buf.getLong();
+        int count = buf.getInt();
+        List<Segment> listed = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            listed.add(new Segment(buf.getLong(), buf.getInt()));
+        }
+        segments = listed;
+        nextSegmentId = next;
+    }
+
+    private void writeManifest() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MANIFEST_MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(nextSegmentId);
+        out.writeInt(segments.size());
+        for (Segment segment : segments) {
+            out.writeLong(segment.id());
+            out.writeInt(segment.ops());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        writeAtomically(manifest, bytes.toByteArray());
+    }
+
+    /**
+     * Writes {@code removed} and the live contents of {@code source} as a new segment.
+     */
+    private Segment writeSegment(long[] removed, InvertedIndex source) throws IOException {
+        return writeSegment(out -> {
+            writeRemoved(out, removed);
+            return removed.length + source.writeSegment(out);
+        });
+    }
+
+    /**
+     * Merges {@code merging}, oldest first, into one segment holding the latest change per resource.
+     * Documents keep their order; postings are merged term by term across the segments' sorted runs.
+     */
+    private Segment merge(List<Segment> merging, boolean dropRemovals) throws IOException {
+        // latest change per id: segment index in the high half, 1 + document position in the low half, 0 for a removal
+        Map<Long, Long> latest = new HashMap<>();
+        List<long[]> docIds = new ArrayList<>(merging.size());
+        for (int s = 0; s < merging.size(); s++) {
+            Segment segment = merging.get(s);
+            verifyChecksum(segmentPath(segment), "segment " + segment.id());
+            try (DataInputStream in = openSegment(segment)) {
+                for (long id : readRemoved(in)) {
+                    latest.put(id, (long) s << 32);
+                }
+                long[] ids = new long[in.readInt()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = SegmentCodec.readDocument(in).source().id();
+                    latest.put(ids[i], (long) s << 32 | (i + 1));
+                }
+                docIds.add(ids);
+            }
+        }
+        int[][] docMaps = new int[merging.size()][];
+        int kept = 0;
+        for (int s = 0; s < merging.size(); s++) {
+            long[] ids = docIds.get(s);
+            docMaps[s] = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                docMaps[s][i] = latest.get(ids[i]) == ((long) s << 32 | (i + 1)) ? kept++ : -1;
+            }
+        }
+        long[] removed = dropRemovals ? new long[0] : latest.entrySet().stream()
+                .filter(e -> (e.getValue() & 0xffffffffL) == 0).mapToLong(Map.Entry::getKey).sorted().toArray();
+        int documents = kept;
+
+        List<DataInputStream> inputs = new ArrayList<>(merging.size());
+        try {
+            for (Segment segment : merging) {
+                DataInputStream in = openSegment(segment);
+                inputs.add(in);
+                readRemoved(in);
+                in.readInt();
+            }
+            return writeSegment(out -> {
+                writeRemoved(out, removed);
+                out.writeInt(documents);
+                for (int s = 0; s < inputs.size(); s++) {
+                    for (int target : docMaps[s]) {
+                        SegmentCodec.Document document = SegmentCodec.readDocument(inputs.get(s));
+                        if (target >= 0) {
+                            SegmentCodec.writeDocument(out, document.source(), document.contentCount(),
+                                    document.storedContent());
+                        }
+                    }
+                }
+                // every input is now at its postings
+                for (InvertedIndex.Field field : InvertedIndex.Field.values()) {
+                    mergeField(inputs, docMaps, out, new PostingList(field == InvertedIndex.Field.TITLE
+                            || field == InvertedIndex.Field.CONTENT));
+                }
+                return removed.length + documents;
+            });
+        } finally {
+            for (DataInputStream in : inputs) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Merges one field's sorted term runs; {@code buffer} collects a term's postings from every input.
+     */
+    private static void mergeField(List<DataInputStream> inputs, int[][] docMaps, DataOutputStream out,
+                                   PostingList buffer) throws IOException {
+        String[] terms = new String[inputs.size()];
+        for (int s = 0; s < inputs.size(); s++) {
+            terms[s] = SegmentCodec.readString(inputs.get(s));
+        }
+        while (true) {
+            String term = null;
+            for (String candidate : terms) {
+                if (candidate != null && (term == null || candidate.compareTo(term) < 0)) {
+                    term = candidate;
+                }
+            }
+            if (term == null) {
+                break;
+            }
+            buffer.clear();
+            // in segment order, which is also the order of the renumbered documents
+            for (int s = 0; s < inputs.size(); s++) {
+                if (term.equals(terms[s])) {
+                    SegmentCodec.readPostings(inputs.get(s), docMaps[s], buffer);
+                    terms[s] = SegmentCodec.readString(inputs.get(s));
+                }
+            }
+            SegmentCodec.writePostings(out, term, buffer, null);
+        }
+        SegmentCodec.writeString(out, null);
+    }
+
+    private void readSegment(Segment segment) throws IOException {
+        verifyChecksum(segmentPath(segment), "segment " + segment.id());
+        try (DataInputStream in = openSegment(segment)) {
+            long[] removed = readRemoved(in);
+            int documents = index.readSegment(removed, in);
+            if (removed.length + documents != segment.ops()) {
+                throw new IOException("Segment " + segment.id() + " does not match the manifest");
+            }
+        }
+    }
+
+    /**
+     * Streams a new segment file: header, the body {@code body} writes, then the checksum of both.
+     */
+    private Segment writeSegment(SegmentBody body) throws IOException {
+        Segment pending = new Segment(nextSegmentId++, 0);
+        Path target = segmentPath(pending);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        int ops;
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Channels.newOutputStream(channel), crc), BUFFER_SIZE));
+            out.writeInt(SEGMENT_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            ops = body.write(out);
+            out.flush();
+            ByteBuffer trailer = ByteBuffer.allocate(8).putLong(crc.getValue()).flip();
+            while (trailer.hasRemaining()) {
+                channel.write(trailer);
+            }
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new Segment(pending.id(), ops);
+    }
+
+    private DataInputStream openSegment(Segment segment) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(segmentPath(segment)), BUFFER_SIZE));
+        try {
+            if (in.readInt() != SEGMENT_MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unrecognised segment " + segment.id());
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    /**
+     * Checks the trailing checksum of {@code file}, reading it in fixed-size chunks at long offsets.
+     */
+    private static void verifyChecksum(Path file, String what) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long end = channel.size() - 8;
+            if (end < 8) {
+                throw new IOException("Truncated " + what);
+            }
+            CRC32 crc = new CRC32();
+            ByteBuffer chunk = ByteBuffer.allocate(BUFFER_SIZE);
+            for (long position = 0; position < end; ) {
+                chunk.clear().limit((int) Math.min(chunk.capacity(), end - position));
+                int read = channel.read(chunk, position);
+                if (read < 0) {
+                    throw new EOFException("Truncated " + what);
+                }
+                chunk.flip();
+                crc.update(chunk);
+                position += read;
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(8);
+            while (trailer.hasRemaining()) {
+                if (channel.read(trailer, end + trailer.position()) < 0) {
+                    throw new EOFException("Truncated " + what);
+                }
+            }
+            if (trailer.getLong(0) != crc.getValue()) {
+                throw new IOException("Checksum mismatch in " + what);
+            }
+        }
+    }
+
+    private static void writeRemoved(DataOutputStream out, long[] removed) throws IOException {
+        out.writeInt(removed.length);
+        for (long id : removed) {
+            out.writeLong(id);
+        }
+    }
+
+    private static long[] readRemoved(DataInputStream in) throws IOException {
+        long[] removed = new long[in.readInt()];
+        for (int i = 0; i < removed.length; i++) {
+            removed[i] = in.readLong();
+        }
+        return removed;
+    }
+
+    /**
+     * Replays the delta log into {@code changes}, stopping at the first incomplete or corrupt frame
+     * (the tail of a write cut short by a crash).
+     *
+     * @return the position just past the last good frame
+     */
+    private long readDelta(Map<Long, IndexedResource> changes) throws IOException {
+        if (!Files.exists(delta)) {
+            writeEmptyDelta();
+            return DELTA_HEADER;
+        }
+        // read whole: the file is small, and is truncated while the process runs
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(delta));
+        if (buf.remaining() < DELTA_HEADER || buf.getInt() != DELTA_MAGIC || buf.getInt() != FORMAT_VERSION) {
+            throw new IOException("Unrecognised delta log");
+        }
+        int ops = 0;
+        while (buf.remaining() >= 8) {
+            int start = buf.position();
+            int length = buf.getInt();
+            long expected = buf.getInt() & 0xffffffffL;
+            if (length < 0 || length > buf.remaining()) {
+                buf.position(start);
+                break;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buf.slice(buf.position(), length));
+            if (crc.getValue() != expected) {
+                buf.position(start);
+                break;
+            }
+            readChange(buf, changes);
+            ops++;
+        }
+        if (buf.hasRemaining()) {
+            log.warn("Dropping {} bytes of incomplete changes at the end of {}", buf.remaining(), delta);
+        }
+        deltaOps = ops;
+        return buf.position();
+    }
+
+    private void openDelta(long end) throws IOException {
+        closeDelta();
+        deltaChannel = FileChannel.open(delta, StandardOpenOption.WRITE);
+        deltaChannel.truncate(end);
+        deltaChannel.position(end);
+    }
+
+    private void closeDelta() throws IOException {
+        if (deltaChannel != null) {
+            deltaChannel.close();
+            deltaChannel = null;
+        }
+        deltaOps = 0;
+    }
+
+    private void writeEmptyDelta() throws IOException {
+        writeAtomically(delta, ByteBuffer.allocate(DELTA_HEADER).putInt(DELTA_MAGIC).putInt(FORMAT_VERSION).array());
+    }
+
+    private static void writeChange(DataOutputStream out, long id, IndexedResource resource) throws IOException {
+        if (resource == null) {
+            out.writeByte(REMOVE);
+            out.writeLong(id);
+            return;
+        }
+        out.writeByte(ADD);
+        out.writeLong(id);
+        Instant createdAt = resource.createdAt();
+        out.writeLong(createdAt == null ? NO_TIME : createdAt.getEpochSecond());
+        out.writeInt(createdAt == null ? 0 : createdAt.getNano());
+        writeString(out, resource.title());
+        writeString(out, resource.college());
+        writeString(out, resource.uploader());
+        writeStrings(out, resource.attachmentNames());
+        writeStrings(out, resource.categories());
+        writeStrings(out, resource.contents());
+    }
+
+    private static void readChange(ByteBuffer buf, Map<Long, IndexedResource> changes) throws IOException {
+        byte type = buf.get();
+        long id = buf.getLong();
+        if (type == REMOVE) {
+            changes.remove(id);
+            changes.put(id, null);
+            return;
+        }
+        if (type != ADD) {
+            throw new IOException("Unknown change type " + type);
+        }
+        long seconds = buf.getLong();
+        int nanos = buf.getInt();
+        Instant createdAt = seconds == NO_TIME ? null : Instant.ofEpochSecond(seconds, nanos);
+        String title = readString(buf);
+        String college = readString(buf);
+        String uploader = readString(buf);
+        List<String> names = readStrings(buf);
+        List<String> categories = readStrings(buf);
+        List<String> contents = readStrings(buf);
+        // re-inserted so iteration order stays the order of the latest changes
+        changes.remove(id);
+        changes.put(id, new IndexedResource(id, title, college, createdAt, names, categories, uploader, contents));
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        List<String> list = strings != null ? strings : List.of();
+        out.writeInt(list.size());
+        for (String s : list) {
+            writeString(out, s);
+        }
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readStrings(ByteBuffer buf) {
+        int count = buf.getInt();
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(readString(buf));
+        }
+        return strings;
+    }
+
+    private static void checkCrc(ByteBuffer buf, int from, int length, long expected, String what) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(buf.slice(from, length));
+        if (crc.getValue() != expected) {
+            throw new IOException("Checksum mismatch in " + what);
+        }
+    }
+
+    private void writeAtomically(Path target, byte[] bytes) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path segmentPath(Segment segment) {
+        return dir.resolve("seg-" + segment.id() + ".dat");
+    }
+
+    private void delete(List<Segment> dropped) {
+        for (Segment segment : dropped) {
+            try {
+                Files.deleteIfExists(segmentPath(segment));
+            } catch (IOException e) {
+                // e.g. still held open by another process on Windows; load deletes files the manifest does not list
+                log.debug("Could not delete segment {}: {}", segment.id(), e.getMessage());
+            }
+        }
+    }
+
+    private void deleteUnlisted() {
+        Set<Path> listed = new HashSet<>();
+        for (Segment segment : segments) {
+            listed.add(segmentPath(segment));
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "seg-*")) {
+            for (Path file : files) {
+                if (!listed.contains(file)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Could not clean up {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private record Segment(long id, int ops) {}
+
+    @FunctionalInterface
+    private interface SegmentBody {
+        /**
+         * @return the number of changes written: removals plus documents
+         */
+        int write(DataOutputStream out) throws IOException;
+    }
+}
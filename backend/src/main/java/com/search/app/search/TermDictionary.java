@@ -0,0 +1,202 @@
+package com.search.app.search;
+
+import java.util.*;
+
+/**
+ * Every indexed term plus a bigram index over them, for finding terms within a few edits of a
+ * (possibly misspelled) query term without scanning the whole dictionary.
+ * <p>
+ * Terms are padded with boundary markers before being cut into bigrams, so a term of length
+ * {@code n} has {@code n + 1} of them and one edit destroys at most two. A term within {@code d}
+ * edits therefore shares at least {@code n + 1 - 2d} bigrams with the query term; only terms
+ * reaching that overlap, and close enough in length, get the Levenshtein check.
+ * <p>
+ * The terms are also kept sorted, so the ones a query word is a prefix of can be listed.
+ */
+final class TermDictionary {
+
+    private static final char BOUNDARY = '\u0000';
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> terms = new ArrayList<>();
+    private final NavigableSet<String> sorted = new TreeSet<>();
+    private final Map<String, PostingList> grams = new HashMap<>();
+
+    void add(String term) {
+        if (ids.containsKey(term)) {
+            return;
+        }
+        int id = terms.size();
+        ids.put(term, id);
+        terms.add(term);
+        sorted.add(term);
+        // ids only grow, so the gram lists stay sorted; a repeated gram bumps the frequency
+        for (String gram : grams(term)) {
+            grams.computeIfAbsent(gram, g -> new PostingList()).add(id);
+        }
+    }
+
+    boolean contains(String term) {
+        return ids.containsKey(term);
+    }
+
+    void clear() {
+        ids.clear();
+        terms.clear();
+        sorted.clear();
+        grams.clear();
+    }
+
+    /**
+     * Up to {@code limit} terms that start with {@code prefix} and are longer than it, in {@link String} order.
+     */
+    List<String> completions(String prefix, int limit) {
+        List<String> completions = new ArrayList<>();
+        for (String term : sorted.tailSet(prefix, false)) {
+            if (completions.size() == limit || !term.startsWith(prefix)) {
+                break;
+            }
+            completions.add(term);
+        }
+        return completions;
+    }
+
+    /**
+     * Terms other than {@code term} itself that are at most {@code maxEdits} edits away.
+     */
+    List<Match> similar(String term, int maxEdits) {
+        List<String> queryGrams = grams(term);
+        int required = queryGrams.size() - 2 * maxEdits;
+        if (maxEdits <= 0 || required <= 0) {
+            return List.of();
+        }
+        Map<String, Integer> queryCounts = new HashMap<>();
+        for (String gram : queryGrams) {
+            queryCounts.merge(gram, 1, Integer::sum);
+        }
+        // only the terms the query's bigrams reach get a counter, so a lookup never costs dictionary-sized memory
+        OverlapCounts shared = new OverlapCounts();
+        List<Match> matches = new ArrayList<>();
+        for (Map.Entry<String, Integer> gram : queryCounts.entrySet()) {
+            PostingList list = grams.get(gram.getKey());
+            if (list == null) {
+                continue;
+            }
+            for (int i = 0; i < list.size(); i++) {
+                int id = list.doc(i);
+                int added = Math.min(gram.getValue(), list.freq(i));
+                int overlap = shared.add(id, added);
+                // checked exactly once, when the overlap first reaches the bound
+                if (overlap >= required && overlap - added < required) {
+                    String candidate = terms.get(id);
+                    if (Math.abs(candidate.length() - term.length()) <= maxEdits && !candidate.equals(term)) {
+                        int edits = distance(term, candidate, maxEdits);
+                        if (edits <= maxEdits) {
+                            matches.add(new Match(candidate, edits));
+                        }
+                    }
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Levenshtein distance between {@code a} and {@code b}, or {@code max + 1} once it is known to exceed {@code max}.
+     */
+    static int distance(String a, String b, int max) {
+        int[] prev = new int[b.length() + 1];
+        int[] cur = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                rowMin = Math.min(rowMin, cur[j]);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] swap = prev;
+            prev = cur;
+            cur = swap;
+        }
+        return Math.min(prev[b.length()], max + 1);
+    }
+
+    private static List<String> grams(String term) {
+        List<String> grams = new ArrayList<>(term.length() + 1);
+        char previous = BOUNDARY;
+        for (int i = 0; i <= term.length(); i++) {
+            char c = i < term.length() ? term.charAt(i) : BOUNDARY;
+            grams.add(new String(new char[]{previous, c}));
+            previous = c;
+        }
+        return grams;
+    }
+
+    record Match(String term, int edits) {}
+
+    /**
+     * Open-addressing map from term id to bigram overlap, for one lookup.
+     */
+    private static final class OverlapCounts {
+
+        private static final int EMPTY = -1;
+
+        private int[] ids = newIds(64);
+        private int[] counts = new int[64];
+        private int size;
+
+        /**
+         * Adds {@code delta} to the overlap of {@code id} and returns the new overlap.
+         */
+        int add(int id, int delta) {
+            int slot = slot(ids, id);
+            if (ids[slot] == EMPTY) {
+                if (2 * (size + 1) > ids.length) {
+                    grow();
+                    slot = slot(ids, id);
+                }
+                ids[slot] = id;
+                size++;
+            }
+            counts[slot] += delta;
+            return counts[slot];
+        }
+
+        private void grow() {
+            int[] oldIds = ids;
+            int[] oldCounts = counts;
+            ids = newIds(oldIds.length * 2);
+            counts = new int[oldIds.length * 2];
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] != EMPTY) {
+                    int slot = slot(ids, oldIds[i]);
+                    ids[slot] = oldIds[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+
+        private static int slot(int[] ids, int id) {
+            int mask = ids.length - 1;
+            int hash = id * 0x9E3779B9;
+            int slot = (hash ^ hash >>> 16) & mask;
+            while (ids[slot] != EMPTY && ids[slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private static int[] newIds(int capacity) {
+            int[] ids = new int[capacity];
+            Arrays.fill(ids, EMPTY);
+            return ids;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.search.app.search;
+
+import java.util.Map;
+
+/**
+ * Live documents one query token matches on its own ({@code candidates}) and that each of its
+ * analyzed terms matches in any field, fuzzy variants included. Filters are not applied.
+ */
+public record TokenStats(String token, Map<String, Integer> terms, int candidates) {
+}
@@ -0,0 +1,144 @@
+package com.search.app.search;
+
+/**
+ * Bounded min-heap keeping the best {@code k} documents by {@code (key, tie)}, both descending.
+ * Backed by parallel primitive arrays so collecting never allocates. An optional upper bound
+ * drops every entry that does not sort strictly after it, which is how search-after pages work.
+ */
+final class TopKCollector {
+
+    private final long[] keys;
+    private final long[] ties;
+    private final int[] docs;
+    private int size;
+    private final boolean bounded;
+    private final long boundKey;
+    private final long boundTie;
+
+    TopKCollector(int k) {
+        this(k, false, 0, 0);
+    }
+
+    TopKCollector(int k, long boundKey, long boundTie) {
+        this(k, true, boundKey, boundTie);
+    }
+
+    private TopKCollector(int k, boolean bounded, long boundKey, long boundTie) {
+        keys = new long[k];
+        ties = new long[k];
+        docs = new int[k];
+        this.bounded = bounded;
+        this.boundKey = boundKey;
+        this.boundTie = boundTie;
+    }
+
+    int capacity() {
+        return docs.length;
+    }
+
+    boolean full() {
+        return size == docs.length;
+    }
+
+    /**
+     * Key of the weakest kept document; only meaningful once {@link #full()}.
+     */
+    long minKey() {
+        return keys[0];
+    }
+
+    void collect(int doc, long key, long tie) {
+        if (docs.length == 0 || (bounded && !less(key, tie, boundKey, boundTie))) {
+            return;
+        }
+        if (size < docs.length) {
+            int i = size++;
+            keys[i] = key;
+            ties[i] = tie;
+            docs[i] = doc;
+            siftUp(i);
+        } else if (less(keys[0], ties[0], key, tie)) {
+            keys[0] = key;
+            ties[0] = tie;
+            docs[0] = doc;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Empties the heap and returns the kept documents best-first. Afterwards {@link #key(int)}
+     * gives the key of the i-th returned document.
+     */
+    int[] drain() {
+        int[] out = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            out[i] = docs[0];
+            size--;
+            swap(0, size);
+            siftDown(0);
+        }
+        return out;
+    }
+
+    /**
+     * The documents {@link #drain()} would return, leaving the heap untouched.
+     */
+    int[] peek() {
+        TopKCollector copy = new TopKCollector(docs.length);
+        System.arraycopy(keys, 0, copy.keys, 0, size);
+        System.arraycopy(ties, 0, copy.ties, 0, size);
+        System.arraycopy(docs, 0, copy.docs, 0, size);
+        copy.size = size;
+        return copy.drain();
+    }
+
+    long key(int i) {
+        return keys[i];
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!less(keys[i], ties[i], keys[parent], ties[parent])) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                return;
+            }
+            int smallest = left;
+            int right = left + 1;
+            if (right < size && less(keys[right], ties[right], keys[left], ties[left])) {
+                smallest = right;
+            }
+            if (!less(keys[smallest], ties[smallest], keys[i], ties[i])) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private static boolean less(long keyA, long tieA, long keyB, long tieB) {
+        return keyA < keyB || (keyA == keyB && tieA < tieB);
+    }
+
+    private void swap(int a, int b) {
+        long k = keys[a];
+        keys[a] = keys[b];
+        keys[b] = k;
+        long t = ties[a];
+        ties[a] = ties[b];
+        ties[b] = t;
+        int d = docs[a];
+        docs[a] = docs[b];
+        docs[b] = d;
+    }
+}
@@ -0,0 +1,223 @@
+package com.search.app.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Pulls plain text out of uploaded attachments: text, Markdown and CSV files as they are, and the
+ * paragraphs of Word (docx) and PowerPoint (pptx) files from their OOXML parts, read with the
+ * JDK's zip and StAX support. Output is capped at {@code maxChars}.
+ */
+@Component
+public class AttachmentTextExtractor {
+
+    private static final Set<String> TEXT_EXTENSIONS = Set.of("txt", "md", "markdown", "csv");
+    private static final String WORD_NS = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+    private static final String DRAWING_NS = "http://schemas.openxmlformats.org/drawingml/2006/main";
+    private static final Pattern SLIDE = Pattern.compile("ppt/slides/slide(\\d+)\\.xml");
+    // what Chinese editors on Windows save plain text as when it is not UTF-8; a superset of GBK
+    private static final Charset GB18030 = Charset.forName("GB18030");
+    // per zip entry, so a small archive cannot inflate into an unbounded amount of XML
+    private static final long MAX_PART_BYTES = 64L * 1024 * 1024;
+
+    private final int maxChars;
+    private final long maxPartBytes;
+
+    public AttachmentTextExtractor(@Value("${app.search.extraction.max-chars:100000}") int maxChars) {
+        this(maxChars, MAX_PART_BYTES);
+    }
+
+    AttachmentTextExtractor(int maxChars, long maxPartBytes) {
+        this.maxChars = maxChars;
+        this.maxPartBytes = maxPartBytes;
+    }
+
+    /**
+     * @return the extracted text, or null if the format is not supported
+     * @throws IOException if the file cannot be read or is not valid for its format
+     */
+    public String extract(Path file, String originalName, String contentType) throws IOException {
+        String ext = extension(originalName);
+        if (TEXT_EXTENSIONS.contains(ext) || (ext.isEmpty() && contentType != null && contentType.startsWith("text/"))) {
+            return readText(file);
+        }
+        if (ext.equals("docx")) {
+            return readOoxml(file, List.of("word/document.xml"), WORD_NS);
+        }
+        if (ext.equals("pptx")) {
+            return readOoxml(file, null, DRAWING_NS);
+        }
+        return null;
+    }
+
+    private String readText(Path file) throws IOException {
+        // enough bytes for maxChars characters in any of the encodings tried
+        int limit = (int) Math.min((long) maxChars * 4, Integer.MAX_VALUE - 8);
+        byte[] bytes;
+        boolean truncated;
+        try (InputStream in = Files.newInputStream(file)) {
+            bytes = in.readNBytes(limit);
+            truncated = in.read() >= 0;
+        }
+        String text = decode(bytes, truncated);
+        if (!text.isEmpty() && text.charAt(0) == '\uFEFF') {
+            text = text.substring(1);
+        }
+        return cap(text);
+    }
+
+    private static String decode(byte[] bytes, boolean truncated) {
+        CharsetDecoder utf8 = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        CharBuffer out = CharBuffer.allocate(bytes.length);
+        // when the read was cut short a split character at the end is left undecoded rather than reported
+        CoderResult result = utf8.decode(ByteBuffer.wrap(bytes), out, !truncated);
+        if (!result.isError()) {
+            if (!truncated) {
+                utf8.flush(out);
+            }
+            return out.flip().toString();
+        }
+        return new String(bytes, GB18030);
+    }
+
+    /**
+     * Text of the given parts in order, or of every slide in slide order when {@code parts} is null.
+     */
+    private String readOoxml(Path file, List<String> parts, String namespace) throws IOException {
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            List<ZipEntry> entries = new ArrayList<>();
+            if (parts != null) {
+                for (String part : parts) {
+                    ZipEntry entry = zip.getEntry(part);
+                    if (entry == null) {
+                        throw new IOException("Missing part " + part);
+                    }
+                    entries.add(entry);
+                }
+            } else {
+                Map<Integer, ZipEntry> slides = new TreeMap<>();
+                zip.stream().forEach(entry -> {
+                    Matcher m = SLIDE.matcher(entry.getName());
+                    if (m.matches()) {
+                        slides.put(Integer.parseInt(m.group(1)), entry);
+                    }
+                });
+                entries.addAll(slides.values());
+            }
+            StringBuilder text = new StringBuilder();
+            for (ZipEntry entry : entries) {
+                try (InputStream in = new LimitedInputStream(zip.getInputStream(entry), maxPartBytes)) {
+                    readParagraphs(in, namespace, text);
+                }
+                if (text.length() >= maxChars) {
+                    break;
+                }
+            }
+            return cap(text.toString().strip());
+        }
+    }
+
+    /**
+     * Appends the text runs ({@code t}) of {@code namespace} to {@code text}, a newline per paragraph ({@code p}).
+     */
+    private void readParagraphs(InputStream in, String namespace, StringBuilder text) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try {
+            XMLStreamReader xml = factory.createXMLStreamReader(in);
+            boolean inRun = false;
+            while (xml.hasNext() && text.length() < maxChars) {
+                int event = xml.next();
+                if (event == XMLStreamReader.START_ELEMENT && namespace.equals(xml.getNamespaceURI())) {
+                    switch (xml.getLocalName()) {
+                        case "t" -> inRun = true;
+                        case "tab" -> text.append(' ');
+                        case "br" -> text.append('\n');
+                        default -> { }
+                    }
+                } else if (event == XMLStreamReader.END_ELEMENT && namespace.equals(xml.getNamespaceURI())) {
+                    if (xml.getLocalName().equals("t")) {
+                        inRun = false;
+                    } else if (xml.getLocalName().equals("p")) {
+                        text.append('\n');
+                    }
+                } else if (inRun && (event == XMLStreamReader.CHARACTERS || event == XMLStreamReader.CDATA)) {
+                    text.append(xml.getTextCharacters(), xml.getTextStart(), xml.getTextLength());
+                }
+            }
+            xml.close();
+        } catch (XMLStreamException e) {
+            // the parser wraps what reading the part throws, such as hitting the size limit
+            if (e.getNestedException() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException("Malformed document XML", e);
+        }
+    }
+
+    private String cap(String text) {
+        return text.length() > maxChars ? text.substring(0, maxChars) : text;
+    }
+
+    private static String extension(String name) {
+        if (name == null) {
+            return "";
+        }
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static final class LimitedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                throw new IOException("Document part too large");
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                throw new IOException("Document part too large");
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+}
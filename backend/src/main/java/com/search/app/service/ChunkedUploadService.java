@@ -0,0 +1,369 @@
+package com.search.app.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resumable uploads of large attachments, sent in chunks. A session creates a file of the
+ * announced size next to the blobs; every chunk is written at its offset with positional
+ * {@link FileChannel} writes, so chunks may arrive in any order and in parallel, and a chunk cut
+ * off midway still counts up to where it stopped. Once every byte has arrived the file is moved
+ * into its blob by {@link FileStorageService#adopt} without being copied.
+ * <p>
+ * The file is only extended to its size, not filled, so on most file systems it is sparse and
+ * takes disk space as chunks arrive. Instead, starting a session reserves its size: the number of
+ * open sessions and the bytes they reserve are capped per user and overall, and a session is
+ * refused when the volume cannot hold what open sessions still have to receive.
+ * <p>
+ * Sessions live in memory and expire after {@code session-ttl-minutes} without a chunk; a janitor
+ * deletes their files. Files of sessions lost in a restart are deleted at startup.
+ */
+@Service
+public class ChunkedUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChunkedUploadService.class);
+
+    private final FileStorageService storageService;
+    private final Path dir;
+    private final long maxBytes;
+    private final Duration ttl;
+    private final int maxSessionsPerUser;
+    private final int maxSessions;
+    private final long maxReservedBytesPerUser;
+    private final long maxReservedBytes;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    // serializes the limit checks in start() with adding the session they admit
+    private final Object admission = new Object();
+    private final ScheduledExecutorService janitor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "upload-janitor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ChunkedUploadService(FileStorageService storageService,
+                                @Value("${app.upload.chunked.max-bytes:2147483648}") long maxBytes,
+                                @Value("${app.upload.chunked.session-ttl-minutes:60}") long ttlMinutes,
+                                @Value("${app.upload.chunked.max-sessions-per-user:8}") int maxSessionsPerUser,
+                                @Value("${app.upload.chunked.max-sessions:256}") int maxSessions,
+                                @Value("${app.upload.chunked.max-reserved-bytes-per-user:8589934592}") long maxReservedBytesPerUser,
+                                @Value("${app.upload.chunked.max-reserved-bytes:68719476736}") long maxReservedBytes) throws IOException {
+        this.storageService = storageService;
+        // Same volume as the blobs, so completing is a rename
+        this.dir = storageService.storageDir().resolve("chunked");
+        this.maxBytes = maxBytes;
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+        this.maxSessionsPerUser = maxSessionsPerUser;
+        this.maxSessions = maxSessions;
+        this.maxReservedBytesPerUser = maxReservedBytesPerUser;
+        this.maxReservedBytes = maxReservedBytes;
+        Files.createDirectories(dir);
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(dir, "*.part")) {
+            for (Path leftover : leftovers) {
+                Files.deleteIfExists(leftover);
+            }
+        }
+        long period = Math.max(1, Math.min(ttlMinutes, 5));
+        janitor.scheduleWithFixedDelay(this::expire, period, period, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        janitor.shutdownNow();
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code size} is not positive or over the limit
+     * @throws LimitExceededException   if the user or everyone together has too many open sessions,
+     *                                  or they would reserve too many bytes
+     */
+    public Status start(String owner, String filename, long size, String contentType) throws IOException {
+        if (size <= 0 || size > maxBytes) {
+            throw new IllegalArgumentException("文件大小无效或超过限制");
+        }
+        String id = UUID.randomUUID().toString().replace("-", "");
+        Path file = dir.resolve(id + ".part");
+        Session session = new Session(id, owner, filename, contentType, size, file);
+        synchronized (admission) {
+            admit(owner, size);
+            sessions.put(id, session);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(size);
+        } catch (IOException e) {
+            sessions.remove(id);
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return session.status();
+    }
+
+    private void admit(String owner, long size) throws IOException {
+        int ownerSessions = 0;
+        long ownerReserved = 0;
+        long reserved = 0;
+        long outstanding = 0;
+        for (Session session : sessions.values()) {
+            if (session.owner.equals(owner)) {
+                ownerSessions++;
+                ownerReserved += session.size;
+            }
+            reserved += session.size;
+            outstanding += session.size - session.receivedBytes();
+        }
+        if (ownerSessions >= maxSessionsPerUser || sessions.size() >= maxSessions) {
+            throw new LimitExceededException(LimitExceededException.Limit.SESSIONS, "上传会话过多，请稍后再试");
+        }
+        if (ownerReserved + size > maxReservedBytesPerUser || reserved + size > maxReservedBytes) {
+            throw new LimitExceededException(LimitExceededException.Limit.BYTES, "进行中的上传总量超过限制");
+        }
+        // sparse files take their space as chunks arrive, so what is still to come must fit
+        if (Files.getFileStore(dir).getUsableSpace() < outstanding + size) {
+            throw new LimitExceededException(LimitExceededException.Limit.BYTES, "存储空间不足");
+        }
+    }
+
+    /**
+     * Writes a chunk read from {@code body} at {@code offset}. {@code length} is the announced chunk
+     * size, or -1 to read up to the end of the file; a body that ends early is kept up to where it
+     * stopped and reported as an error.
+     *
+     * @throws NoSuchElementException   if the session does not exist, expired or belongs to someone else
+     * @throws IllegalArgumentException if the chunk does not fit in the file
+     * @throws IOException              if the chunk could not be written or ended early
+     */
+    public Status write(String owner, String id, long offset, long length, InputStream body) throws IOException {
+        Session session = session(owner, id);
+        if (offset < 0 || offset >= session.size || length > session.size - offset) {
+            throw new IllegalArgumentException("分片超出文件范围");
+        }
+        long expected = length >= 0 ? length : session.size - offset;
+        session.begin();
+        long written = 0;
+        try (FileChannel channel = FileChannel.open(session.file, StandardOpenOption.WRITE)) {
+            ReadableByteChannel source = Channels.newChannel(body);
+            while (written < expected) {
+                long n = channel.transferFrom(source, offset + written, expected - written);
+                if (n <= 0) {
+                    break;
+                }
+                written += n;
+            }
+        } finally {
+            session.end(offset, written);
+        }
+        if (length >= 0 && written < length) {
+            throw new IOException("分片未传完整");
+        }
+        return session.status();
+    }
+
+    /**
+     * @throws NoSuchElementException if the session does not exist, expired or belongs to someone else
+     */
+    public Status status(String owner, String id) {
+        return session(owner, id).status();
+    }
+
+    public void abort(String owner, String id) throws IOException {
+        Session session = session(owner, id);
+        if (session.close(false)) {
+            sessions.remove(id);
+            Files.deleteIfExists(session.file);
+        }
+    }
+
+    /**
+     * Ends complete sessions and moves their files into blobs, pinned for
+     * {@link ResourceUploadService#create}. Either all sessions are taken or none is.
+     *
+     * @throws NoSuchElementException if a session does not exist, expired or belongs to someone else
+     * @throws IllegalStateException  if a session is still missing bytes or receiving a chunk
+     */
+    public List<FileStorageService.StoredFile> take(String owner, Collection<String> ids) throws IOException {
+        List<Session> taken = new ArrayList<>();
+        for (String id : new LinkedHashSet<>(ids)) {
+            Session session = session(owner, id);
+            if (!session.close(true)) {
+                taken.forEach(Session::reopen);
+                throw new IllegalStateException("文件尚未上传完整");
+            }
+            taken.add(session);
+        }
+        taken.forEach(session -> sessions.remove(session.id));
+
+        List<FileStorageService.StoredFile> stored = new ArrayList<>(taken.size());
+        try {
+            for (Session session : taken) {
+                stored.add(storageService.adopt(session.file, session.filename, session.contentType));
+            }
+        } catch (IOException | RuntimeException e) {
+            storageService.settle(stored, false);
+            for (Session session : taken) {
+                Files.deleteIfExists(session.file);
+            }
+            throw e;
+        }
+        return stored;
+    }
+
+    private Session session(String owner, String id) {
+        Session session = sessions.get(id);
+        if (session == null || !session.owner.equals(owner)) {
+            throw new NoSuchElementException("上传会话不存在或已过期");
+        }
+        return session;
+    }
+
+    void expire() {
+        Instant cutoff = Instant.now().minus(ttl);
+        for (Session session : sessions.values()) {
+            if (session.idleSince().isBefore(cutoff) && session.close(false)) {
+                sessions.remove(session.id);
+                try {
+                    Files.deleteIfExists(session.file);
+                } catch (IOException e) {
+                    log.warn("Could not delete expired upload {}", session.file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param received byte ranges written so far, as {@code [start, end)} pairs in order
+     */
+    public record Status(String id, String filename, long size, List<long[]> received, long receivedBytes,
+                         Instant expiresAt) {}
+
+    /**
+     * A session refused by the caps on open sessions ({@link Limit#SESSIONS}) or on the bytes they
+     * reserve, including the space left on the volume ({@link Limit#BYTES}).
+     */
+    public static class LimitExceededException extends IllegalStateException {
+
+        public enum Limit { SESSIONS, BYTES }
+
+        private final Limit limit;
+
+        public LimitExceededException(Limit limit, String message) {
+            super(message);
+            this.limit = limit;
+        }
+
+        public Limit limit() {
+            return limit;
+        }
+    }
+
+    private final class Session {
+
+        final String id;
+        final String owner;
+        final String filename;
+        final String contentType;
+        final long size;
+        final Path file;
+        // start -> end (exclusive) of disjoint, non-adjacent written ranges; guarded by this
+        private final TreeMap<Long, Long> received = new TreeMap<>();
+        private long receivedBytes;
+        private int writing;
+        private boolean closed;
+        private Instant touched = Instant.now();
+
+        Session(String id, String owner, String filename, String contentType, long size, Path file) {
+            this.id = id;
+            this.owner = owner;
+            this.filename = filename;
+            this.contentType = contentType;
+            this.size = size;
+            this.file = file;
+        }
+
+        synchronized void begin() {
+            if (closed) {
+                throw new NoSuchElementException("上传会话不存在或已过期");
+            }
+            writing++;
+            touched = Instant.now();
+        }
+
+        synchronized void end(long offset, long written) {
+            writing--;
+            touched = Instant.now();
+            if (written <= 0) {
+                return;
+            }
+            long start = offset;
+            long end = offset + written;
+            Map.Entry<Long, Long> before = received.floorEntry(start);
+            if (before != null && before.getValue() >= start) {
+                start = before.getKey();
+                end = Math.max(end, before.getValue());
+                receivedBytes -= before.getValue() - before.getKey();
+                received.remove(before.getKey());
+            }
+            for (Map.Entry<Long, Long> next = received.ceilingEntry(start);
+                 next != null && next.getKey() <= end; next = received.ceilingEntry(start)) {
+                end = Math.max(end, next.getValue());
+                receivedBytes -= next.getValue() - next.getKey();
+                received.remove(next.getKey());
+            }
+            received.put(start, end);
+            receivedBytes += end - start;
+        }
+
+        /**
+         * Stops accepting chunks, unless one is being written or (with {@code complete}) bytes are missing.
+         */
+        synchronized boolean close(boolean complete) {
+            if (closed || writing > 0 || (complete && receivedBytes < size)) {
+                return false;
+            }
+            closed = true;
+            return true;
+        }
+
+        synchronized void reopen() {
+            closed = false;
+        }
+
+        synchronized long receivedBytes() {
+            return receivedBytes;
+        }
+
+        synchronized Instant idleSince() {
+            return touched;
+        }
+
+        synchronized Status status() {
+            List<long[]> ranges = received.entrySet().stream()
+                    .map(e -> new long[]{e.getKey(), e.getValue()})
+                    .toList();
+            return new Status(id, filename, size, ranges, receivedBytes, touched.plus(ttl));
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.search.app.service;
+
+import com.search.app.model.AttachmentContent;
+import com.search.app.model.CourseResource;
+import com.search.app.repository.AttachmentContentRepository;
+import com.search.app.repository.ResourceAttachmentRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Extracts the text of uploaded attachments in the background, stores it as
+ * {@link AttachmentContent} and re-indexes the resource so the text becomes searchable.
+ * <p>
+ * Uploads hand their attachments to a fixed pool with a bounded queue once their transaction
+ * commits and never wait for it: when the queue is full the job is dropped and a sweep is
+ * requested instead. The sweep walks attachments that have no content row yet (also everything
+ * uploaded before extraction existed) and feeds them to the pool as fast as it drains, backing
+ * off while the queue is full. Every attempted attachment gets a row, with null text when the
+ * format is unsupported or unreadable, so nothing is retried forever.
+ */
+@Service
+public class ContentExtractionService {
+
+    private static final Logger log = LoggerFactory.getLogger(ContentExtractionService.class);
+
+    private static final int SWEEP_PAGE = 100;
+    private static final long SWEEP_BACKOFF_MS = 200;
+
+    @Autowired
+    private AttachmentTextExtractor extractor;
+
+    @Autowired
+    private FileStorageService storageService;
+
+    @Autowired
+    private AttachmentContentRepository contentRepository;
+
+    @Autowired
+    private ResourceAttachmentRepository attachmentRepository;
+
+    @Autowired
+    private SearchIndexService indexService;
+
+    private final boolean enabled;
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService sweeper = Executors.newSingleThreadExecutor(daemon("content-sweep"));
+    // attachments queued or being extracted, so a sweep does not queue them twice
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean sweepRequested = new AtomicBoolean();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    public ContentExtractionService(
+            @Value("${app.search.extraction.enabled:true}") boolean enabled,
+            @Value("${app.search.extraction.workers:2}") int workers,
+            @Value("${app.search.extraction.queue-capacity:256}") int queueCapacity) {
+        this.enabled = enabled;
+        this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), daemon("content-extract"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Queues the attachments of {@code resource} for extraction once the surrounding transaction commits.
+     */
+    public void extract(CourseResource resource) {
+        if (!enabled) {
+            return;
+        }
+        List<Job> jobs = resource.getAttachments().stream()
+                .map(a -> new Job(a.getId(), resource.getId(), a.getStoredName(), a.getOriginalName(), a.getContentType()))
+                .toList();
+        Runnable submit = () -> {
+            for (Job job : jobs) {
+                if (!offer(job)) {
+                    log.debug("Extraction queue full, attachment {} left for the sweep", job.attachmentId());
+                    requestSweep();
+                }
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit.run();
+                }
+            });
+        } else {
+            submit.run();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            requestSweep();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private boolean offer(Job job) {
+        if (!inFlight.add(job.attachmentId())) {
+            return true;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    run(job);
+                } finally {
+                    inFlight.remove(job.attachmentId());
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(job.attachmentId());
+            return false;
+        }
+    }
+
+    private void run(Job job) {
+        String text = null;
+        try {
+            text = extractor.extract(storageService.path(job.storedName()), job.originalName(), job.contentType());
+        } catch (IOException | RuntimeException e) {
+            log.info("Could not extract text from attachment {} ({}): {}", job.attachmentId(), job.originalName(), e.toString());
+        }
+        try {
+            contentRepository.save(new AttachmentContent(job.attachmentId(), text, Instant.now()));
+        } catch (DataAccessException e) {
+            // most likely the attachment was deleted meanwhile and the foreign key refused the row
+            log.debug("Could not store text of attachment {}: {}", job.attachmentId(), e.toString());
+            return;
+        }
+        if (text != null && !text.isBlank()) {
+            indexService.reindex(job.resourceId());
+        }
+    }
+
+    private void requestSweep() {
+        sweepRequested.set(true);
+        if (sweeping.compareAndSet(false, true)) {
+            try {
+                sweeper.execute(this::sweep);
+            } catch (RejectedExecutionException e) {
+                sweeping.set(false); // shutting down
+            }
+        }
+    }
+
+    private void sweep() {
+        try {
+            while (sweepRequested.getAndSet(false)) {
+                int queued = sweepOnce();
+                if (queued > 0) {
+                    log.info("Queued {} attachments for text extraction", queued);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (RuntimeException e) {
+            log.warn("Attachment text sweep failed", e);
+        } finally {
+            sweeping.set(false);
+        }
+        // a request that arrived after the last pass but before sweeping was cleared
+        if (sweepRequested.get()) {
+            requestSweep();
+        }
+    }
+
+    private int sweepOnce() throws InterruptedException {
+        int queued = 0;
+        long after = 0;
+        while (true) {
+            List<Object[]> rows = attachmentRepository.findUnextracted(after, PageRequest.of(0, SWEEP_PAGE));
+            for (Object[] row : rows) {
+                Job job = new Job((Long) row[0], (Long) row[1], (String) row[2], (String) row[3], (String) row[4]);
+                while (!offer(job)) {
+                    Thread.sleep(SWEEP_BACKOFF_MS);
+                }
+                queued++;
+                after = job.attachmentId();
+            }
+            if (rows.size() < SWEEP_PAGE) {
+                return queued;
+            }
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private record Job(Long attachmentId, Long resourceId, String storedName, String originalName, String contentType) {}
+}
@@ -0,0 +1,210 @@
+package com.search.app.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes stored files to the response, honouring {@code Range} requests with 206 (one range) or
+ * {@code multipart/byteranges} (several). Whole files and single ranges are handed to Tomcat's
+ * sendfile when the connector supports it, so the bytes never pass through the JVM; otherwise,
+ * and for multi-range responses, they are copied with {@link FileChannel#transferTo}.
+ */
+@Service
+public class FileDownloadService {
+
+    // Tomcat's request attributes for sendfile (org.apache.catalina.Globals)
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // Below this, setting up sendfile costs more than copying (Tomcat's own default)
+    private static final long SENDFILE_MIN_BYTES = 48 * 1024;
+
+    /**
+     * Validators are only compared against {@code If-Range}; callers answer other conditional
+     * requests before opening the file.
+     *
+     * @param headers      sent with every status except 416, e.g. {@code Content-Disposition}
+     * @param etag         strong ETag of the content, quoted, or null if unknown
+     * @param lastModified epoch millis, or -1 if unknown
+     */
+    public void send(HttpServletRequest request, HttpServletResponse response, Path file, String contentType,
+                     HttpHeaders headers, String etag, long lastModified) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+            List<Region> regions = null;
+            String range = request.getHeader(HttpHeaders.RANGE);
+            if (range != null && ifRangeMatches(request.getHeader(HttpHeaders.IF_RANGE), etag, lastModified)) {
+                List<HttpRange> ranges = null;
+                try {
+                    ranges = HttpRange.parseRanges(range);
+                } catch (IllegalArgumentException e) {
+                    // Malformed: ignore it and send the whole file, as RFC 9110 allows
+                }
+                if (ranges != null) {
+                    try {
+                        regions = regions(ranges, length);
+                    } catch (IllegalArgumentException e) {
+                        response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                        return;
+                    }
+                }
+            }
+
+            headers.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+            boolean body = !"HEAD".equals(request.getMethod());
+            if (regions == null) {
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.setContentType(contentType);
+                response.setContentLengthLong(length);
+                if (body) {
+                    write(request, response, file, channel, new Region(0, length));
+                }
+            } else if (regions.size() == 1) {
+                Region region = regions.get(0);
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setContentType(contentType);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, region.contentRange(length));
+                response.setContentLengthLong(region.count);
+                if (body) {
+                    write(request, response, file, channel, region);
+                }
+            } else {
+                writeMultipart(response, channel, regions, length, contentType, body);
+            }
+        }
+    }
+
+    /**
+     * Whether a {@code Range} request may be served partially: the client's copy must still be
+     * current, compared strongly as RFC 9110 requires. Without {@code If-Range} it always may.
+     */
+    private static boolean ifRangeMatches(String ifRange, String etag, long lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(etag);
+        }
+        if (lastModified < 0) {
+            return false;
+        }
+        try {
+            long date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            // Last-Modified only carries whole seconds
+            return date == lastModified / 1000 * 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    static List<Region> regions(List<HttpRange> ranges, long length) {
+        List<Region> regions = new ArrayList<>(ranges.size());
+        long total = 0;
+        for (HttpRange range : ranges) {
+            long start = range.getRangeStart(length);
+            long end = range.getRangeEnd(length);
+            // getRangeStart does not check the start against the length, so a range starting past the
+            // end comes back as is and is dropped here; the request fails only if none is left
+            if (start < length && start <= end) {
+                regions.add(new Region(start, end - start + 1));
+                total += end - start + 1;
+            }
+        }
+        if (regions.isEmpty()) {
+            throw new IllegalArgumentException("No satisfiable range");
+        }
+        // Same guard as Spring's ResourceRegion conversion: overlapping ranges must not multiply the transfer
+        if (regions.size() > 1 && total > length) {
+            throw new IllegalArgumentException("Total of ranges exceeds the file length");
+        }
+        return regions;
+    }
+
+    private static void write(HttpServletRequest request, HttpServletResponse response, Path file, FileChannel channel,
+                              Region region) throws IOException {
+        if (region.count >= SENDFILE_MIN_BYTES && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            // Tomcat sends the file itself after the servlet returns
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, region.start);
+            request.setAttribute(SENDFILE_END, region.start + region.count);
+            return;
+        }
+        OutputStream out = response.getOutputStream();
+        transfer(channel, region, Channels.newChannel(out));
+        out.flush();
+    }
+
+    private static void writeMultipart(HttpServletResponse response, FileChannel channel, List<Region> regions,
+                                       long length, String contentType, boolean body) throws IOException {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        List<byte[]> partHeaders = new ArrayList<>(regions.size());
+        byte[] end = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        long contentLength = end.length;
+        for (Region region : regions) {
+            byte[] header = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + region.contentRange(length) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(header);
+            contentLength += header.length + region.count;
+        }
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        if (!body) {
+            return;
+        }
+        OutputStream out = response.getOutputStream();
+        WritableByteChannel target = Channels.newChannel(out);
+        for (int i = 0; i < regions.size(); i++) {
+            out.write(partHeaders.get(i));
+            transfer(channel, regions.get(i), target);
+        }
+        out.write(end);
+        out.flush();
+    }
+
+    private static void transfer(FileChannel channel, Region region, WritableByteChannel target) throws IOException {
+        long position = region.start;
+        long remaining = region.count;
+        while (remaining > 0) {
+            long sent = channel.transferTo(position, remaining, target);
+            if (sent <= 0) {
+                throw new IOException("文件读取失败");
+            }
+            position += sent;
+            remaining -= sent;
+        }
+    }
+
+    record Region(long start, long count) {
+
+        String contentRange(long length) {
+            return "bytes " + start + "-" + (start + count - 1) + "/" + length;
+        }
+    }
+}
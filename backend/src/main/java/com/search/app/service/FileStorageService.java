@@ -1,26 +1,71 @@
 package com.search.app.service;
 
+import com.search.app.repository.ResourceAttachmentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.InputStreamResource;
-import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.*;
-import java.util.UUID;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
+/**
+ * Content-addressed attachment storage: every upload is hashed while it is written and kept once
+ * per content, named by its SHA-256, however many attachments refer to it.
+ * <p>
+ * A blob's references are the attachment rows whose {@code storedName} is its digest, plus uploads
+ * that have written it but not committed their row yet ("pins", held in memory). A blob is deleted
+ * only when a reference is released and neither is left; that check and the creation of blobs run
+ * under a lock per digest, so an upload never reuses a blob that is being deleted. Pins assume a
+ * single application instance, like the search index.
+ */
 @Service
 public class FileStorageService {
 
+    private static final Logger log = LoggerFactory.getLogger(FileStorageService.class);
+
     private final Path storageDir;
+    private final Object[] locks = new Object[64];
+    // guarded by the lock of the digest
+    private final Map<String, Integer> pins = new ConcurrentHashMap<>();
+
+    @Autowired
+    private ResourceAttachmentRepository attachmentRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
     public FileStorageService(@Value("${app.storage.dir:uploads}") String storageDir) throws IOException {
         this.storageDir = Paths.get(storageDir).toAbsolutePath().normalize();
         Files.createDirectories(this.storageDir);
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
     }
 
+    /**
+     * Writes the upload, or finds the blob already holding the same bytes. The blob stays pinned,
+     * so the caller can commit a row referring to it, until the caller {@link #settle settles} it.
+     * Safe to call from several threads at once.
+     */
     public StoredFile store(MultipartFile file, long maxBytes) throws IOException {
         if (file.isEmpty()) {
             throw new IOException("文件为空");
@@ -29,30 +74,95 @@ public class FileStorageService {
             throw new IOException("文件超过大小限制");
         }
         String original = StringUtils.cleanPath(file.getOriginalFilename() == null ? "file" : file.getOriginalFilename());
-        String ext = "";
-        int idx = original.lastIndexOf('.');
-        if (idx > 0 && idx < original.length() - 1) {
-            ext = original.substring(idx);
-        }
-        String stored = UUID.randomUUID().toString().replace("-", "") + ext;
 
-        Path target = storageDir.resolve(stored);
-        try {
-            Files.copy(file.getInputStream(), target, StandardCopyOption.REPLACE_EXISTING);
+        Path temp = Files.createTempFile(storageDir, "upload-", ".tmp");
+        // Hash in the same pass as the copy; the digest names the blob and is the download's ETag
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+            Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
         } catch (IOException e) {
+            Files.deleteIfExists(temp);
             throw new IOException("保存文件失败", e);
         }
-        return new StoredFile(original, stored, file.getContentType(), file.getSize());
+        String hash = HexFormat.of().formatHex(digest.digest());
+        place(temp, hash);
+        return new StoredFile(original, hash, file.getContentType(), file.getSize(), hash);
+    }
+
+    /**
+     * Like {@link #store}, for a complete file already written elsewhere on the storage volume:
+     * hashes it and moves it into its blob, or deletes it if the blob already exists.
+     */
+    public StoredFile adopt(Path file, String originalName, String contentType) throws IOException {
+        String original = StringUtils.cleanPath(originalName == null ? "file" : originalName);
+        long size = Files.size(file);
+        String hash = hash(file);
+        place(file, hash);
+        return new StoredFile(original, hash, contentType, size, hash);
+    }
+
+    /**
+     * Moves {@code temp} to the blob {@code hash} unless it exists already, and pins the blob.
+     */
+    private void place(Path temp, String hash) throws IOException {
+        synchronized (lock(hash)) {
+            try {
+                Path blob = storageDir.resolve(hash);
+                if (Files.exists(blob)) {
+                    Files.delete(temp);
+                } else {
+                    Files.move(temp, blob, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(temp);
+                throw new IOException("保存文件失败", e);
+            }
+            pin(hash);
+        }
     }
 
-    public Resource loadAsResource(String storedName) throws IOException {
+    /**
+     * Unpins blobs returned by {@link #store} once the rows referring to them have been committed or
+     * rolled back; after a rollback they are deleted again unless something else refers to them.
+     */
+    public void settle(Collection<StoredFile> files, boolean committed) {
+        for (StoredFile file : files) {
+            unpin(file.storedName());
+            if (!committed) {
+                deleteIfUnreferenced(file.storedName());
+            }
+        }
+    }
+
+    /**
+     * Drops a reference to a blob, e.g. because its attachment row is being deleted. Once the
+     * surrounding transaction commits, the blob is deleted if nothing refers to it any more.
+     */
+    public void release(String storedName) {
+        if (!StringUtils.hasText(storedName)) {
+            return;
+        }
+        afterCompletion(committed -> {
+            if (committed) {
+                deleteIfUnreferenced(storedName);
+            }
+        });
+    }
+
+    /**
+     * Location of a stored file, for readers that need random access or send it with a file channel.
+     */
+    public Path path(String storedName) throws IOException {
         Path file = storageDir.resolve(storedName).normalize();
         if (!file.startsWith(storageDir) || !Files.exists(file)) {
             throw new NoSuchFileException(storedName);
         }
-        return new InputStreamResource(Files.newInputStream(file, StandardOpenOption.READ));
+        return file;
     }
 
+    /**
+     * Removes the file regardless of references; {@link #release} is the safe way for attachments.
+     */
     public void delete(String storedName) throws IOException {
         if (!StringUtils.hasText(storedName)) {
             return;
@@ -64,5 +174,83 @@ public class FileStorageService {
         Files.deleteIfExists(file);
     }
 
-    public record StoredFile(String originalName, String storedName, String contentType, long size) {}
+    /**
+     * Deletes the blob if no attachment row and no pending upload refers to it.
+     *
+     * @return whether it was deleted
+     */
+    boolean deleteIfUnreferenced(String storedName) {
+        synchronized (lock(storedName)) {
+            if (pins.containsKey(storedName)) {
+                return false;
+            }
+            TransactionTemplate tx = new TransactionTemplate(transactionManager);
+            tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            tx.setReadOnly(true);
+            if (Boolean.TRUE.equals(tx.execute(status -> attachmentRepository.existsByStoredName(storedName)))) {
+                return false;
+            }
+            try {
+                delete(storedName);
+                return true;
+            } catch (IOException e) {
+                log.warn("Could not delete unreferenced file {}", storedName, e);
+                return false;
+            }
+        }
+    }
+
+    Object lock(String storedName) {
+        return locks[Math.floorMod(storedName.hashCode(), locks.length)];
+    }
+
+    // Callers hold lock(hash)
+    void pin(String hash) {
+        pins.merge(hash, 1, Integer::sum);
+    }
+
+    void unpin(String hash) {
+        synchronized (lock(hash)) {
+            pins.computeIfPresent(hash, (k, n) -> n > 1 ? n - 1 : null);
+        }
+    }
+
+    Path storageDir() {
+        return storageDir;
+    }
+
+    private static void afterCompletion(Consumer<Boolean> action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    action.accept(status == STATUS_COMMITTED);
+                }
+            });
+        } else {
+            action.accept(true);
+        }
+    }
+
+    static String hash(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param storedName  the blob holding the content, named by {@code contentHash}
+     * @param contentHash lowercase hex SHA-256 of the content
+     */
+    public record StoredFile(String originalName, String storedName, String contentType, long size, String contentHash) {}
 }
@@ -0,0 +1,70 @@
+package com.search.app.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.search.app.dto.ResourceResponse;
+import com.search.app.repository.CourseResourceRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Writes the whole catalogue as newline-delimited JSON, one {@link ResourceResponse} per line.
+ * Rows come from a forward-only cursor with a bounded fetch size and each resource is written as
+ * soon as its last attachment row has been read, so memory use does not grow with the catalogue.
+ */
+@Service
+public class ResourceExportService {
+
+    @Autowired
+    private CourseResourceRepository resourceRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * @return how many resources were written
+     */
+    @Transactional(readOnly = true)
+    public long writeNdjson(OutputStream out) throws IOException {
+        ObjectWriter writer = objectMapper.writerFor(ResourceResponse.class);
+        long written = 0;
+        try (Stream<Object[]> rows = resourceRepository.streamExportRows()) {
+            ResourceResponse current = null;
+            Iterator<Object[]> it = rows.iterator();
+            while (it.hasNext()) {
+                Object[] row = it.next();
+                Long id = (Long) row[0];
+                if (current == null || !current.getId().equals(id)) {
+                    if (current != null) {
+                        writeLine(writer, current, out);
+                        written++;
+                    }
+                    current = new ResourceResponse(id, (String) row[1], (String) row[2], (String) row[3], (Instant) row[4],
+                            new ArrayList<>());
+                }
+                if (row[5] != null) {
+                    current.getAttachments().add(ResourceHydrator.toAttachment(row, 5));
+                }
+            }
+            if (current != null) {
+                writeLine(writer, current, out);
+                written++;
+            }
+        }
+        return written;
+    }
+
+    private static void writeLine(ObjectWriter writer, ResourceResponse response, OutputStream out) throws IOException {
+        // writeValue(OutputStream) would close the response stream after the first line
+        out.write(writer.writeValueAsBytes(response));
+        out.write('\n');
+    }
+}
@@ -0,0 +1,98 @@
+package com.search.app.service;
+
+import com.search.app.dto.AttachmentResponse;
+import com.search.app.dto.ResourceResponse;
+import com.search.app.model.enums.AttachmentCategory;
+import com.search.app.repository.CourseResourceRepository;
+import com.search.app.repository.ResourceAttachmentRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Read path for {@link ResourceResponse}s. Resources with their uploader names and their
+ * attachments are loaded as two projection queries, however many resources are requested,
+ * instead of walking lazy associations entity by entity.
+ */
+@Service
+public class ResourceHydrator {
+
+    @Autowired
+    private CourseResourceRepository resourceRepository;
+
+    @Autowired
+    private ResourceAttachmentRepository attachmentRepository;
+
+    /**
+     * Responses for {@code ids} in the same order; ids that no longer exist are skipped.
+     */
+    @Transactional(readOnly = true)
+    public List<ResourceResponse> hydrate(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, List<AttachmentResponse>> attachments = groupAttachments(attachmentRepository.findResponseRows(ids));
+        Map<Long, ResourceResponse> byId = new HashMap<>();
+        for (Object[] row : resourceRepository.findSummaryRows(ids)) {
+            ResourceResponse response = toResponse(row, attachments);
+            byId.put(response.getId(), response);
+        }
+        List<ResourceResponse> ordered = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            ResourceResponse response = byId.get(id);
+            if (response != null) {
+                ordered.add(response);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Up to {@code limit} responses for the resources whose ids follow {@code afterId}, in id order.
+     */
+    @Transactional(readOnly = true)
+    public List<ResourceResponse> hydrateAfter(long afterId, int limit) {
+        List<Object[]> rows = resourceRepository.findSummaryRowsAfter(afterId, PageRequest.of(0, limit));
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+        List<Long> ids = rows.stream().map(row -> (Long) row[0]).toList();
+        Map<Long, List<AttachmentResponse>> attachments = groupAttachments(attachmentRepository.findResponseRows(ids));
+        List<ResourceResponse> responses = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            responses.add(toResponse(row, attachments));
+        }
+        return responses;
+    }
+
+    static ResourceResponse toResponse(Object[] row, Map<Long, List<AttachmentResponse>> attachments) {
+        Long id = (Long) row[0];
+        return new ResourceResponse(id, (String) row[1], (String) row[2], (String) row[3], (Instant) row[4],
+                attachments.getOrDefault(id, new ArrayList<>()));
+    }
+
+    static Map<Long, List<AttachmentResponse>> groupAttachments(List<Object[]> rows) {
+        Map<Long, List<AttachmentResponse>> byResource = new HashMap<>();
+        for (Object[] row : rows) {
+            byResource.computeIfAbsent((Long) row[0], k -> new ArrayList<>()).add(toAttachment(row, 1));
+        }
+        return byResource;
+    }
+
+    /**
+     * Attachment id, originalName, contentType, size and category read from {@code row} starting at {@code offset}.
+     */
+    static AttachmentResponse toAttachment(Object[] row, int offset) {
+        AttachmentCategory category = (AttachmentCategory) row[offset + 4];
+        return new AttachmentResponse(
+                (Long) row[offset],
+                (String) row[offset + 1],
+                (String) row[offset + 2],
+                (Long) row[offset + 3],
+                (category != null ? category : AttachmentCategory.NOTE).name());
+    }
+}
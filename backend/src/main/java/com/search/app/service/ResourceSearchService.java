@@ -1,20 +1,34 @@
 package com.search.app.service;
 
+import com.search.app.metrics.SearchTrace;
 import com.search.app.model.CourseResource;
 import com.search.app.model.ResourceAttachment;
+import com.search.app.search.FacetCount;
+import com.search.app.search.Highlight;
+import com.search.app.search.HighlightParams;
+import com.search.app.search.IndexQuery;
+import com.search.app.search.InvalidCursorException;
+import com.search.app.model.enums.AttachmentCategory;
+import com.search.app.model.User;
+import com.search.app.search.SearchCursor;
+import com.search.app.search.SearchFilter;
+import com.search.app.search.SearchHits;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.*;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class ResourceSearchService {
@@ -22,9 +36,115 @@ public class ResourceSearchService {
     @PersistenceContext
     private EntityManager em;
 
-    public Page<CourseResource> search(String q, String mode, String sort, Pageable pageable) {
+    @Autowired
+    private SearchIndexService indexService;
+
+    @Autowired
+    private SearchResultCache cache;
+
+    @Value("${app.search.exact-total-threshold:10000}")
+    private int exactTotalThreshold;
+
+    @Value("${app.search.fuzzy.max-edits:2}")
+    private int fuzzyMaxEdits;
+
+    @Value("${app.search.highlight.snippet-chars:120}")
+    private int snippetChars;
+
+    @Value("${app.search.highlight.max-bytes:16384}")
+    private int highlightMaxBytes;
+
+    @Value("${app.search.sql.name-collation:}")
+    private String nameCollation;
+
+    /**
+     * @param cursor {@code nextCursor} from a previous page; when given, the page number in {@code pageable} is ignored
+     * @param fuzzy  also match indexed terms a few edits away from the query terms; ignored until the index is built
+     * @param facets count colleges and attachment categories over all matches; null in the result until the index is built
+     * @param filter restricts results by college, attachment category and uploader; with a blank {@code q} it alone decides the results
+     * @param highlight highlight titles and pick snippets of attachment text; null in the result until the index is built
+     * @throws InvalidCursorException if {@code cursor} is malformed or belongs to another sort
+     * @throws IllegalArgumentException if the page starts too far in for the index to count up to it
+     */
+    public SearchResult search(String q, String mode, String sort, Pageable pageable, String cursor, boolean fuzzy,
+                               boolean facets, SearchFilter filter, boolean highlight) {
+        if (pageable.getOffset() > Integer.MAX_VALUE - pageable.getPageSize() - 1) {
+            throw new IllegalArgumentException("page offset out of range: " + pageable.getOffset());
+        }
+        long start = System.nanoTime();
         List<String> tokens = tokenize(q);
+        String sortKey = SearchCursor.sortKey(sort);
+        SearchCursor after = StringUtils.hasText(cursor) ? SearchCursor.decode(cursor, sortKey) : null;
+        SearchTrace.record(SearchTrace.Stage.TOKENIZE, start);
+        SearchTrace.tokens(tokens);
+        int maxEdits = fuzzy ? fuzzyMaxEdits : 0;
+        SearchTrace profiling = SearchTrace.profiling();
+        if (profiling != null && indexService.isReady()) {
+            // Outside every stage: only the total elapsed time includes it
+            profiling.candidates(indexService.explain(tokens, maxEdits));
+        }
+        HighlightParams highlightParams = highlight ? new HighlightParams(snippetChars, highlightMaxBytes) : null;
+        if (!cache.caches(sortKey)) {
+            return execute(tokens, mode, sort, pageable, after, maxEdits, facets, filter, highlightParams);
+        }
+
+        // Read the generation first: a result computed from older data must not be stored under a newer one
+        long generation = indexService.generation();
+        // The index only sees analyzed terms, so queries differing in case, width or punctuation share an entry
+        List<List<String>> clauses = indexService.isReady()
+                ? indexService.clauses(tokens) : tokens.stream().map(List::of).toList();
+        SearchResultCache.Key key = new SearchResultCache.Key(clauses, !"or".equalsIgnoreCase(mode), sortKey,
+                after != null ? 0 : pageable.getOffset(), pageable.getPageSize(), after != null ? cursor : null, maxEdits, facets, filter,
+                highlight);
+        long lookup = System.nanoTime();
+        SearchResult result = cache.get(key, generation);
+        SearchTrace.record(SearchTrace.Stage.CACHE, lookup);
+        if (result == null) {
+            result = execute(tokens, mode, sort, pageable, after, maxEdits, facets, filter, highlightParams);
+            long store = System.nanoTime();
+            cache.put(key, generation, result);
+            SearchTrace.record(SearchTrace.Stage.CACHE, store);
+        } else {
+            SearchTrace.plan(SearchTrace.Plan.CACHE);
+        }
+        return result;
+    }
+
+    private SearchResult execute(List<String> tokens, String mode, String sort, Pageable pageable, SearchCursor after,
+                                 int maxEdits, boolean facets, SearchFilter filter, HighlightParams highlight) {
+        long start = System.nanoTime();
+        if (indexService.isReady()) {
+            SearchTrace.plan(SearchTrace.Plan.INDEX);
+            SearchResult result = searchIndex(tokens, mode, sort, pageable, after, maxEdits, facets, filter, highlight);
+            SearchTrace.record(SearchTrace.Stage.INDEX, start);
+            return result;
+        }
+        SearchTrace.plan(SearchTrace.Plan.SQL);
+        SearchResult result = searchSql(tokens, mode, sort, pageable, after, filter);
+        SearchTrace.record(SearchTrace.Stage.SQL, start);
+        return result;
+    }
+
+    private SearchResult searchIndex(List<String> tokens, String mode, String sort, Pageable pageable, SearchCursor after,
+                                     int maxEdits, boolean facets, SearchFilter filter, HighlightParams highlight) {
+        boolean and = !"or".equalsIgnoreCase(mode);
+        SearchHits hits = indexService.search(new IndexQuery(tokens, and, sort,
+                (int) pageable.getOffset(), pageable.getPageSize(), exactTotalThreshold, after, maxEdits, facets, filter, highlight));
+        String next = hits.next() != null ? hits.next().encode() : null;
+        return new SearchResult(hits.ids(), hits.total(), hits.totalExact(), next, hits.facets(), hits.highlights());
+    }
 
+    /**
+     * Fallback used until the index is built. Fetches one row past the page instead of running a
+     * second COUNT query, so the total is only exact once the last page has been reached.
+     * Cursors seek on {@code (createdAt, id)} or {@code (title, id)}; relevance cursors are only
+     * issued by the index.
+     * <p>
+     * Tokens match anywhere in a title or attachment name, so this finds whatever the index finds for
+     * them (Latin words and the words they start, CJK runs) plus mid-word fragments such as "ulus".
+     */
+    private SearchResult searchSql(List<String> tokens, String mode, String sort, Pageable pageable, SearchCursor after,
+                                   SearchFilter filter) {
         CriteriaBuilder cb = em.getCriteriaBuilder();
 
         // Main query
@@ -34,14 +154,22 @@ public class ResourceSearchService {
         cq.distinct(true);
 
         Predicate where = buildPredicate(cb, root, tokens, mode);
+        if (filter != null && !filter.isEmpty()) {
+            where = cb.and(where, filterPredicate(cb, root, filter));
+        }
+        if (after != null) {
+            where = cb.and(where, keysetPredicate(cb, root, after));
+        }
         cq.where(where);
 
         // Order by
         List<Order> orders = new ArrayList<>();
         if ("name".equalsIgnoreCase(sort)) {
-            orders.add(cb.asc(root.get("title")));
+            orders.add(cb.asc(titleForSort(cb, root)));
+            orders.add(cb.asc(root.get("id")));
         } else if ("date".equalsIgnoreCase(sort)) {
             orders.add(cb.desc(root.get("createdAt")));
+            orders.add(cb.desc(root.get("id")));
         } else { // relevance
             // CASE WHEN title matches any token THEN 0 ELSE 1 END, createdAt DESC
             Expression<Integer> caseExpr = cb.<Integer>selectCase()
@@ -52,23 +180,59 @@ public class ResourceSearchService {
         }
         cq.orderBy(orders);
 
+        long offset = after != null ? 0 : pageable.getOffset();
         TypedQuery<CourseResource> query = em.createQuery(cq);
-        query.setFirstResult((int) pageable.getOffset());
-        query.setMaxResults(pageable.getPageSize());
+        query.setFirstResult((int) offset);
+        query.setMaxResults(pageable.getPageSize() + 1);
         List<CourseResource> content = query.getResultList();
 
-        // Count query
-        CriteriaQuery<Long> ccq = cb.createQuery(Long.class);
-        Root<CourseResource> countRoot = ccq.from(CourseResource.class);
-        countRoot.join("attachments", JoinType.LEFT);
-        ccq.select(cb.countDistinct(countRoot));
-        ccq.where(buildPredicate(cb, countRoot, tokens, mode));
-        Long total = em.createQuery(ccq).getSingleResult();
+        boolean hasMore = content.size() > pageable.getPageSize();
+        if (hasMore) {
+            content = content.subList(0, pageable.getPageSize());
+        }
+        String next = null;
+        String sortKey = SearchCursor.sortKey(sort);
+        if (hasMore && !content.isEmpty() && !sortKey.equals("relevance")) {
+            CourseResource last = content.get(content.size() - 1);
+            next = (sortKey.equals("date")
+                    ? new SearchCursor(sortKey, epochMicros(last.getCreatedAt()), null, last.getId())
+                    : new SearchCursor(sortKey, 0, last.getTitle(), last.getId())).encode();
+        }
+        long seen = offset + content.size();
+        List<Long> ids = content.stream().map(CourseResource::getId).toList();
+        return new SearchResult(ids, hasMore ? seen + 1 : seen, !hasMore && after == null, next, null, null);
+    }
+
+    private Predicate keysetPredicate(CriteriaBuilder cb, Root<CourseResource> root, SearchCursor after) {
+        Path<Long> id = root.get("id");
+        if (after.sort().equals("date")) {
+            Path<Instant> createdAt = root.get("createdAt");
+            Instant last = Instant.ofEpochSecond(Math.floorDiv(after.key(), 1_000_000L), Math.floorMod(after.key(), 1_000_000L) * 1_000L);
+            return cb.or(cb.lessThan(createdAt, last),
+                    cb.and(cb.equal(createdAt, last), cb.lessThan(id, after.id())));
+        }
+        if (after.sort().equals("name")) {
+            Expression<String> title = titleForSort(cb, root);
+            return cb.or(cb.greaterThan(title, after.text()),
+                    cb.and(cb.equal(title, after.text()), cb.greaterThan(id, after.id())));
+        }
+        throw new InvalidCursorException("Relevance cursors are not available until the search index is ready");
+    }
 
-        return new PageImpl<>(content, pageable, total);
+    /**
+     * The title under {@code app.search.sql.name-collation}, so the database orders names as
+     * {@link SearchCursor#compareByName} does and a name cursor means the same on both paths.
+     */
+    private Expression<String> titleForSort(CriteriaBuilder cb, Root<CourseResource> root) {
+        Path<String> title = root.get("title");
+        return StringUtils.hasText(nameCollation) ? ((HibernateCriteriaBuilder) cb).collate(title, nameCollation) : title;
     }
 
-    private List<String> tokenize(String q) {
+    private static long epochMicros(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000;
+    }
+
+    static List<String> tokenize(String q) {
         if (!StringUtils.hasText(q)) return List.of();
         return Arrays.stream(q.trim().split("\\s+"))
                 .filter(StringUtils::hasText)
@@ -96,6 +260,34 @@ public class ResourceSearchService {
         return and ? cb.and(tokenPreds.toArray(new Predicate[0])) : cb.or(tokenPreds.toArray(new Predicate[0]));
     }
 
+    private Predicate filterPredicate(CriteriaBuilder cb, Root<CourseResource> root, SearchFilter filter) {
+        List<Predicate> preds = new ArrayList<>();
+        if (!filter.colleges().isEmpty()) {
+            preds.add(root.get("college").in(filter.colleges()));
+        }
+        if (!filter.uploaders().isEmpty()) {
+            Join<CourseResource, User> uploader = root.join("uploader", JoinType.LEFT);
+            preds.add(uploader.get("username").in(filter.uploaders()));
+        }
+        if (!filter.categories().isEmpty()) {
+            List<AttachmentCategory> categories = new ArrayList<>();
+            for (String name : filter.categories()) {
+                try {
+                    categories.add(AttachmentCategory.valueOf(name));
+                } catch (IllegalArgumentException ignored) {
+                    // unknown categories match nothing, as in the index
+                }
+            }
+            if (categories.isEmpty()) {
+                preds.add(cb.disjunction());
+            } else {
+                Join<CourseResource, ResourceAttachment> att = root.join("attachments", JoinType.LEFT);
+                preds.add(att.get("category").in(categories));
+            }
+        }
+        return cb.and(preds.toArray(new Predicate[0]));
+    }
+
     private Expression<Boolean> titleAnyMatch(CriteriaBuilder cb, Root<CourseResource> root, List<String> tokens) {
         if (tokens.isEmpty()) return cb.literal(false);
         Path<String> title = root.get("title");
@@ -105,5 +297,12 @@ public class ResourceSearchService {
         }
         return cb.or(likes.toArray(new Predicate[0]));
     }
-}
 
+    /**
+     * A page of resource ids in display order. When {@code totalExact} is false, {@code total} is a lower bound;
+     * {@code nextCursor} is null on the last page; {@code facets} and {@code highlights} are null unless requested
+     * from the index.
+     */
+    public record SearchResult(List<Long> ids, long total, boolean totalExact, String nextCursor,
+                               Map<String, List<FacetCount>> facets, Map<Long, Highlight> highlights) {}
+}
@@ -0,0 +1,163 @@
+package com.search.app.service;
+
+import com.search.app.model.CourseResource;
+import com.search.app.model.ResourceAttachment;
+import com.search.app.model.enums.AttachmentCategory;
+import com.search.app.repository.CourseResourceRepository;
+import com.search.app.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Creates a resource with its attachments. The files are written first, in parallel and outside
+ * any transaction, so no database connection is held during disk I/O; the rows then go in with one
+ * short transaction. Files written for an upload that fails, before or at commit, are released
+ * again, so they do not linger as orphans.
+ * <p>
+ * Writes run on a fixed pool of platform threads rather than virtual threads: file I/O blocks the
+ * carrier thread either way, and the pool caps concurrent writes across all requests.
+ */
+@Service
+public class ResourceUploadService {
+
+    @Autowired
+    private FileStorageService storageService;
+
+    @Autowired
+    private CourseResourceRepository resourceRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private SearchIndexService indexService;
+
+    @Autowired
+    private ContentExtractionService extractionService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ExecutorService writers;
+
+    public ResourceUploadService(@Value("${app.upload.workers:4}") int workers) {
+        this.writers = Executors.newFixedThreadPool(Math.max(1, workers), r -> {
+            Thread thread = new Thread(r, "upload-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writers.shutdownNow();
+    }
+
+    /**
+     * @param resource   title and college of the new resource
+     * @param uploader   username to record as the uploader, or null
+     * @param categories category of each file, in the same order
+     * @return the saved resource with its attachments
+     */
+    public CourseResource upload(CourseResource resource, String uploader, List<MultipartFile> files,
+                                 List<AttachmentCategory> categories, long maxFileSize) throws IOException {
+        return create(resource, uploader, storeAll(files, maxFileSize), categories);
+    }
+
+    /**
+     * Saves the resource with an attachment for each of {@code stored}, which must come pinned from
+     * {@link FileStorageService}; settles them whether or not the save succeeds.
+     */
+    public CourseResource create(CourseResource resource, String uploader, List<FileStorageService.StoredFile> stored,
+                                 List<AttachmentCategory> categories) {
+        CourseResource saved;
+        try {
+            saved = new TransactionTemplate(transactionManager).execute(status -> {
+                if (uploader != null) {
+                    userRepository.findByUsername(uploader).ifPresent(resource::setUploader);
+                }
+                for (int i = 0; i < stored.size(); i++) {
+                    FileStorageService.StoredFile file = stored.get(i);
+                    ResourceAttachment att = new ResourceAttachment();
+                    att.setResource(resource);
+                    att.setOriginalName(file.originalName());
+                    att.setStoredName(file.storedName());
+                    att.setContentType(file.contentType());
+                    att.setSize(file.size());
+                    att.setContentHash(file.contentHash());
+                    att.setCategory(categories.get(i));
+                    resource.getAttachments().add(att);
+                }
+                // Attachments are cascaded; IDENTITY keys rule out JDBC batching, but the inserts are all there is
+                CourseResource result = resourceRepository.save(resource);
+                indexService.index(result);
+                extractionService.extract(result);
+                return result;
+            });
+        } catch (RuntimeException | Error e) {
+            storageService.settle(stored, false);
+            throw e;
+        }
+        storageService.settle(stored, true);
+        return saved;
+    }
+
+    /**
+     * Writes every file, one on each writer; a single file is written on the calling thread. If any
+     * write fails, waits for the others and releases what they wrote before rethrowing.
+     */
+    private List<FileStorageService.StoredFile> storeAll(List<MultipartFile> files, long maxFileSize) throws IOException {
+        if (files.size() == 1) {
+            return List.of(storageService.store(files.get(0), maxFileSize));
+        }
+        List<Future<FileStorageService.StoredFile>> pending = new ArrayList<>(files.size());
+        for (MultipartFile file : files) {
+            pending.add(writers.submit(() -> storageService.store(file, maxFileSize)));
+        }
+        List<FileStorageService.StoredFile> stored = new ArrayList<>(files.size());
+        IOException failure = null;
+        boolean interrupted = false;
+        for (Future<FileStorageService.StoredFile> future : pending) {
+            try {
+                while (true) {
+                    try {
+                        stored.add(future.get());
+                        break;
+                    } catch (InterruptedException e) {
+                        // The writers keep going; their blobs must be known before giving up
+                        interrupted = true;
+                    }
+                }
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof IOException io ? io : new IOException("保存文件失败", e.getCause());
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            if (failure == null) {
+                failure = new InterruptedIOException("上传被中断");
+            }
+        }
+        if (failure != null) {
+            storageService.settle(stored, false);
+            throw failure;
+        }
+        return stored;
+    }
+}
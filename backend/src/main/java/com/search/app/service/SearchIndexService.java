@@ -0,0 +1,376 @@
+package com.search.app.service;
+
+import com.search.app.model.CourseResource;
+import com.search.app.model.ResourceAttachment;
+import com.search.app.model.enums.AttachmentCategory;
+import com.search.app.repository.AttachmentContentRepository;
+import com.search.app.repository.CourseResourceRepository;
+import com.search.app.repository.ResourceAttachmentRepository;
+import com.search.app.search.Analyzer;
+import com.search.app.search.IndexQuery;
+import com.search.app.search.IndexedResource;
+import com.search.app.search.InvertedIndex;
+import com.search.app.search.PrefixSuggester;
+import com.search.app.search.RankingParams;
+import com.search.app.search.SearchHits;
+import com.search.app.search.SegmentStore;
+import com.search.app.search.TokenStats;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Owns the in-process {@link InvertedIndex} and {@link PrefixSuggester}: builds them once the
+ * application is up and keeps them in step with uploads and deletes. Until the first build completes, {@link #isReady()} is false
+ * and callers are expected to fall back to SQL.
+ * <p>
+ * Unless disabled, the index is also kept in a {@link SegmentStore} next to the upload directory.
+ * A restart loads it from there, postings and all, when the catalogue still has the same number of
+ * resources, the same highest id and the same number of extracted attachments; otherwise it
+ * rebuilds from the tables and writes the store anew.
+ */
+@Service
+public class SearchIndexService {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchIndexService.class);
+    private static final int LOAD_PAGE = 500;
+
+    @Autowired
+    private CourseResourceRepository resourceRepository;
+
+    @Autowired
+    private ResourceAttachmentRepository attachmentRepository;
+
+    @Autowired
+    private AttachmentContentRepository contentRepository;
+
+    private final InvertedIndex index;
+    private final PrefixSuggester suggester = new PrefixSuggester();
+    private final List<Runnable> pendingDuringBuild = new ArrayList<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final SegmentStore store;
+    private final ExecutorService segmentWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "search-segments");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean ready;
+    // true until the first build has started too, so changes made before it are replayed after it
+    private boolean building = true;
+    // guarded by pendingDuringBuild, like building
+    private boolean persisting;
+
+    public SearchIndexService(Analyzer analyzer, RankingParams ranking,
+                              @Value("${app.search.segments.enabled:true}") boolean segmentsEnabled,
+                              @Value("${app.search.segments.dir:}") String segmentsDir,
+                              @Value("${app.storage.dir:uploads}") String storageDir,
+                              @Value("${app.search.segments.flush-ops:1000}") int flushOps,
+                              @Value("${app.search.segments.max-segments:8}") int maxSegments,
+                              @Value("${app.search.highlight.stored-chars:8192}") int storedContentChars) {
+        this.index = new InvertedIndex(analyzer, ranking, storedContentChars);
+        Path dir = StringUtils.hasText(segmentsDir)
+                ? Paths.get(segmentsDir).toAbsolutePath().normalize()
+                : Paths.get(storageDir).toAbsolutePath().normalize().resolveSibling("search-index");
+        this.store = segmentsEnabled ? new SegmentStore(index, dir, flushOps, maxSegments) : null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        synchronized (pendingDuringBuild) {
+            building = true;
+        }
+        long start = System.currentTimeMillis();
+        boolean stored = false;
+        boolean built = false;
+        try {
+            stored = loadStored();
+            if (!stored) {
+                loadFromDatabase();
+            }
+            suggester.load(index.resources());
+            built = true;
+        } finally {
+            synchronized (pendingDuringBuild) {
+                if (store != null && built) {
+                    persisting = stored || resetStore();
+                }
+                // Replay changes that committed while the bulk load was running so they win over stale rows
+                pendingDuringBuild.forEach(Runnable::run);
+                pendingDuringBuild.clear();
+                building = false;
+            }
+        }
+        ready = true;
+        generation.incrementAndGet();
+        log.info("Search index {}: {} resources in {} ms", stored ? "loaded from segments" : "built from the database",
+                index.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Loads the index from the segment store. Returns false, leaving the index empty, if the store
+     * is disabled, unreadable or behind the catalogue.
+     */
+    private boolean loadStored() {
+        if (store == null) {
+            return false;
+        }
+        try {
+            store.load();
+        } catch (IOException e) {
+            log.info("Search index segments not usable, rebuilding from the database: {}", e.toString());
+            index.clear();
+            return false;
+        }
+        Object[] fingerprint = resourceRepository.findIndexFingerprint().get(0);
+        long count = ((Number) fingerprint[0]).longValue();
+        Long maxId = (Long) fingerprint[1];
+        long extracted = contentRepository.countExtracted();
+        if (count != index.size() || !Objects.equals(maxId, index.maxResourceId()) || extracted != index.extractedCount()) {
+            log.info("Search index segments are stale ({} resources up to id {} with {} extracted attachments, "
+                            + "database has {} up to id {} with {}), rebuilding",
+                    index.size(), index.maxResourceId(), index.extractedCount(), count, maxId, extracted);
+            index.clear();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Indexes the catalogue in pages of resources by id, so only one page of extracted text is in memory at a time.
+     */
+    private void loadFromDatabase() {
+        long after = 0;
+        while (true) {
+            List<Object[]> rows = resourceRepository.findIndexRowsAfter(after, PageRequest.of(0, LOAD_PAGE));
+            if (rows.isEmpty()) {
+                return;
+            }
+            List<Long> ids = rows.stream().map(row -> (Long) row[0]).toList();
+            for (IndexedResource resource : assemble(rows, attachmentRepository.findIndexRows(ids),
+                    contentRepository.findIndexRows(ids))) {
+                index.add(resource);
+            }
+            if (rows.size() < LOAD_PAGE) {
+                return;
+            }
+            after = ids.get(ids.size() - 1);
+        }
+    }
+
+    private static List<IndexedResource> assemble(List<Object[]> resourceRows, List<Object[]> attachmentRows,
+                                                  List<Object[]> contentRows) {
+        Map<Long, List<String>> names = new HashMap<>();
+        Map<Long, List<String>> categories = new HashMap<>();
+        Map<Long, List<String>> contents = new HashMap<>();
+        for (Object[] row : attachmentRows) {
+            names.computeIfAbsent((Long) row[0], k -> new ArrayList<>()).add((String) row[1]);
+            categories.computeIfAbsent((Long) row[0], k -> new ArrayList<>()).add(categoryName((AttachmentCategory) row[2]));
+        }
+        for (Object[] row : contentRows) {
+            contents.computeIfAbsent((Long) row[0], k -> new ArrayList<>()).add((String) row[1]);
+        }
+        List<IndexedResource> resources = new ArrayList<>();
+        for (Object[] row : resourceRows) {
+            Long id = (Long) row[0];
+            resources.add(new IndexedResource(id, (String) row[1], (String) row[2], (Instant) row[3],
+                    names.getOrDefault(id, List.of()), categories.getOrDefault(id, List.of()), (String) row[4],
+                    contents.getOrDefault(id, List.of())));
+        }
+        return resources;
+    }
+
+    private boolean resetStore() {
+        try {
+            store.reset();
+            return true;
+        } catch (IOException e) {
+            log.warn("Could not write search index segments, restarts will rebuild from the database", e);
+            store.invalidate();
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        segmentWriter.shutdown();
+        try {
+            segmentWriter.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (pendingDuringBuild) {
+            if (!persisting) {
+                return;
+            }
+            persisting = false;
+            try {
+                store.flush();
+                store.close();
+            } catch (IOException e) {
+                log.warn("Could not flush search index segments", e);
+            }
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Bumped after every applied upload or delete and when the first build completes; anything
+     * derived from the catalogue at an older generation may be stale.
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public SearchHits search(IndexQuery query) {
+        return index.search(query);
+    }
+
+    /**
+     * @see InvertedIndex#clauses
+     */
+    public List<List<String>> clauses(List<String> tokens) {
+        return index.clauses(tokens);
+    }
+
+    public List<TokenStats> explain(List<String> tokens, int maxEdits) {
+        return index.explain(tokens, maxEdits);
+    }
+
+    public List<String> suggest(String prefix, int limit) {
+        return suggester.suggest(prefix, limit);
+    }
+
+    /**
+     * Indexes {@code resource} once the surrounding transaction commits.
+     */
+    public void index(CourseResource resource) {
+        IndexedResource snapshot = new IndexedResource(
+                resource.getId(),
+                resource.getTitle(),
+                resource.getCollege(),
+                resource.getCreatedAt(),
+                resource.getAttachments().stream().map(ResourceAttachment::getOriginalName).toList(),
+                resource.getAttachments().stream().map(a -> categoryName(a.getCategory())).toList(),
+                resource.getUploader() != null ? resource.getUploader().getUsername() : null,
+                List.of());
+        afterCommit(() -> {
+            index.add(snapshot);
+            suggester.add(snapshot);
+            persist(snapshot, null);
+        });
+    }
+
+    /**
+     * Reloads the resource from the database and indexes it again, e.g. once attachment text has
+     * been extracted. Does nothing if it has been removed from the index meanwhile. Synchronized so
+     * that concurrent reloads of one resource are applied in the order they read the database.
+     */
+    public synchronized void reindex(Long resourceId) {
+        List<Long> ids = List.of(resourceId);
+        List<IndexedResource> loaded = assemble(resourceRepository.findIndexRows(ids),
+                attachmentRepository.findIndexRows(ids), contentRepository.findIndexRows(ids));
+        if (loaded.isEmpty()) {
+            return;
+        }
+        IndexedResource resource = loaded.get(0);
+        afterCommit(() -> {
+            if (index.contains(resourceId)) {
+                index.add(resource);
+                persist(resource, null);
+            }
+        });
+    }
+
+    /**
+     * Drops the resource from the index once the surrounding transaction commits.
+     */
+    public void remove(Long resourceId) {
+        afterCommit(() -> {
+            index.remove(resourceId);
+            suggester.remove(resourceId);
+            persist(null, resourceId);
+        });
+    }
+
+    /**
+     * Appends a change to the segment store. Called under {@code pendingDuringBuild}; changes applied
+     * during a build are skipped here and appended when they are replayed after it.
+     */
+    private void persist(IndexedResource added, Long removedId) {
+        if (!persisting) {
+            return;
+        }
+        try {
+            boolean flush = added != null ? store.append(added) : store.appendRemove(removedId);
+            if (flush) {
+                segmentWriter.execute(this::flushSegments);
+            }
+        } catch (IOException e) {
+            log.warn("Could not append to the search index delta log, restarts will rebuild from the database", e);
+            persisting = false;
+            store.invalidate();
+        }
+    }
+
+    private void flushSegments() {
+        try {
+            store.flush();
+            store.mergeIfNeeded();
+        } catch (IOException e) {
+            // the changes are still in the delta log and the next flush retries them
+            log.warn("Could not flush search index segments", e);
+        }
+    }
+
+    private static String categoryName(AttachmentCategory category) {
+        return (category != null ? category : AttachmentCategory.NOTE).name();
+    }
+
+    private void afterCommit(Runnable action) {
+        Runnable apply = () -> {
+            synchronized (pendingDuringBuild) {
+                action.run();
+                if (building) {
+                    pendingDuringBuild.add(action);
+                }
+                generation.incrementAndGet();
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply.run();
+                }
+            });
+        } else {
+            apply.run();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.search.app.service;
+
+import com.search.app.search.FacetCount;
+import com.search.app.search.Highlight;
+import com.search.app.search.SearchFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Bounded LRU cache of search result pages. Every entry is tagged with the catalogue generation
+ * it was computed at (see {@link SearchIndexService#generation()}); the first lookup or store at a
+ * newer generation drops everything, so results from before an upload or delete are never served.
+ * <p>
+ * Entries are evicted least recently used first once either the entry count or the total weight
+ * (one unit per cached id or facet count, one per 64 bytes of highlights, plus one per entry) exceeds its limit.
+ */
+@Component
+public class SearchResultCache {
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final Set<String> sorts;
+
+    private final LinkedHashMap<Key, ResourceSearchService.SearchResult> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long generation;
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public SearchResultCache(
+            @Value("${app.search.cache.max-entries:2000}") int maxEntries,
+            @Value("${app.search.cache.max-weight:100000}") long maxWeight,
+            @Value("${app.search.cache.sorts:relevance,date,name}") List<String> sorts) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        Set<String> enabled = new HashSet<>();
+        for (String sort : sorts) {
+            if (!sort.isBlank()) {
+                enabled.add(sort.trim().toLowerCase());
+            }
+        }
+        this.sorts = enabled;
+    }
+
+    /**
+     * Whether results for {@code sortKey} ("relevance", "date" or "name") are cached at all.
+     */
+    public boolean caches(String sortKey) {
+        return maxEntries > 0 && sorts.contains(sortKey);
+    }
+
+    public synchronized ResourceSearchService.SearchResult get(Key key, long generation) {
+        advance(generation);
+        ResourceSearchService.SearchResult result = generation == this.generation ? entries.get(key) : null;
+        if (result != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return result;
+    }
+
+    /**
+     * Stores {@code result} unless the catalogue has moved past {@code generation} while it was computed.
+     */
+    public synchronized void put(Key key, long generation, ResourceSearchService.SearchResult result) {
+        advance(generation);
+        if (generation != this.generation) {
+            return;
+        }
+        ResourceSearchService.SearchResult previous = entries.put(key, result);
+        if (previous != null) {
+            weight -= weigh(previous);
+        }
+        weight += weigh(result);
+        Iterator<ResourceSearchService.SearchResult> eldest = entries.values().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && eldest.hasNext()) {
+            weight -= weigh(eldest.next());
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, entries.size(), weight, generation);
+    }
+
+    private void advance(long generation) {
+        if (generation > this.generation) {
+            entries.clear();
+            weight = 0;
+            this.generation = generation;
+        }
+    }
+
+    private static long weigh(ResourceSearchService.SearchResult result) {
+        long weight = 1 + result.ids().size();
+        if (result.facets() != null) {
+            for (List<FacetCount> counts : result.facets().values()) {
+                weight += counts.size();
+            }
+        }
+        if (result.highlights() != null) {
+            long chars = 0;
+            for (Highlight highlight : result.highlights().values()) {
+                chars += (highlight.title() != null ? highlight.title().length() : 0)
+                        + (highlight.snippet() != null ? highlight.snippet().length() : 0);
+            }
+            // two bytes a char in memory
+            weight += chars * 2 / 64;
+        }
+        return weight;
+    }
+
+    /**
+     * A normalized query: its clauses, AND/OR, sort key, page position, page size, fuzziness,
+     * whether facets were asked for, the filter and whether to highlight.
+     *
+     * @param clauses the analyzed terms of each query token once the index is built (see
+     *                {@link SearchIndexService#clauses}); before that, each raw token on its own
+     */
+    public record Key(List<List<String>> clauses, boolean and, String sort, long offset, int size, String cursor, int maxEdits,
+                      boolean facets, SearchFilter filter, boolean highlight) {}
+
+    public record Stats(long hits, long misses, long evictions, int entries, long weight, long generation) {}
+}
@@ -0,0 +1,181 @@
+package com.search.app.service;
+
+import com.search.app.repository.ResourceAttachmentRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * Moves files stored before uploads were content-addressed into blobs named by their hash, once
+ * after startup and in the background. Attachments keep working throughout: each legacy file is
+ * copied (or linked) to its blob first, its rows are pointed at the blob, and only then is the
+ * old file released. Files with the same content end up as one blob.
+ * <p>
+ * Also cleans up after crashes: temporary upload files, and blobs no attachment refers to because
+ * the process died between writing an upload's files and committing its rows.
+ */
+@Service
+public class StorageDeduplicator {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageDeduplicator.class);
+
+    // An upload still writing its temporary file is never this old
+    private static final Duration STALE_UPLOAD = Duration.ofHours(1);
+    private static final Pattern BLOB_NAME = Pattern.compile("[0-9a-f]{64}");
+
+    @Autowired
+    private FileStorageService storageService;
+
+    @Autowired
+    private ResourceAttachmentRepository attachmentRepository;
+
+    private final boolean enabled;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "storage-dedupe");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public StorageDeduplicator(@Value("${app.storage.dedupe.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            worker.execute(this::run);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    void run() {
+        removeStaleUploads();
+        migrateLegacy();
+        removeOrphanBlobs();
+    }
+
+    private void migrateLegacy() {
+        long start = System.currentTimeMillis();
+        List<String> legacy = attachmentRepository.findLegacyStoredNames();
+        if (legacy.isEmpty()) {
+            return;
+        }
+        log.info("Moving {} stored files to content-addressed blobs", legacy.size());
+        int moved = 0;
+        int merged = 0;
+        long reclaimed = 0;
+        for (String storedName : legacy) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            try {
+                Path file = storageService.path(storedName);
+                long size = Files.size(file);
+                if (migrate(storedName, file)) {
+                    merged++;
+                    reclaimed += size;
+                }
+                moved++;
+            } catch (NoSuchFileException e) {
+                log.warn("Stored file {} is missing, leaving its attachments as they are", storedName);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not move stored file {} to a blob", storedName, e);
+            }
+        }
+        log.info("Moved {} stored files to blobs in {} ms; {} duplicates merged, {} bytes reclaimed",
+                moved, System.currentTimeMillis() - start, merged, reclaimed);
+    }
+
+    /**
+     * @return whether a blob with the same content already existed
+     */
+    private boolean migrate(String storedName, Path file) throws IOException {
+        String hash = FileStorageService.hash(file);
+        if (hash.equals(storedName)) {
+            // Already a blob (e.g. seeded by name); only the hash column was missing
+            attachmentRepository.relink(storedName, hash);
+            return false;
+        }
+        Path blob = storageService.storageDir().resolve(hash);
+        boolean existed;
+        synchronized (storageService.lock(hash)) {
+            existed = Files.exists(blob);
+            if (!existed) {
+                Path temp = Files.createTempFile(storageService.storageDir(), "upload-", ".tmp");
+                Files.delete(temp);
+                try {
+                    Files.createLink(temp, file);
+                } catch (IOException | UnsupportedOperationException e) {
+                    Files.copy(file, temp);
+                }
+                Files.move(temp, blob, StandardCopyOption.ATOMIC_MOVE);
+            }
+            // Keep the blob until the rows point at it
+            storageService.pin(hash);
+        }
+        try {
+            attachmentRepository.relink(storedName, hash);
+        } finally {
+            storageService.unpin(hash);
+        }
+        storageService.deleteIfUnreferenced(storedName);
+        // In case every row was deleted meanwhile
+        storageService.deleteIfUnreferenced(hash);
+        return existed;
+    }
+
+    private void removeOrphanBlobs() {
+        FileTime cutoff = FileTime.from(Instant.now().minus(STALE_UPLOAD));
+        int removed = 0;
+        try (DirectoryStream<Path> blobs = Files.newDirectoryStream(storageService.storageDir(),
+                entry -> BLOB_NAME.matcher(entry.getFileName().toString()).matches())) {
+            for (Path blob : blobs) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                // Younger blobs may belong to an upload that is about to commit
+                if (Files.getLastModifiedTime(blob).compareTo(cutoff) < 0
+                        && storageService.deleteIfUnreferenced(blob.getFileName().toString())) {
+                    removed++;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not remove orphaned blobs", e);
+        }
+        if (removed > 0) {
+            log.info("Removed {} blobs no attachment refers to", removed);
+        }
+    }
+
+    private void removeStaleUploads() {
+        FileTime cutoff = FileTime.from(Instant.now().minus(STALE_UPLOAD));
+        try (DirectoryStream<Path> temps = Files.newDirectoryStream(storageService.storageDir(), "upload-*.tmp")) {
+            for (Path temp : temps) {
+                if (Files.getLastModifiedTime(temp).compareTo(cutoff) < 0) {
+                    Files.deleteIfExists(temp);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not remove stale temporary uploads", e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.search.app.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.search.app.dto.PageResponse;
+import com.search.app.dto.ResourceResponse;
+import com.search.app.repository.CourseResourceRepository;
+import com.search.app.service.ResourceHydrator;
+import com.search.app.service.ResourceSearchService;
+import com.search.app.service.SearchIndexService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ResourceControllerTest {
+
+    private static final long MORNING = Instant.parse("2024-06-01T08:00:00Z").toEpochMilli();
+    private static final long EVENING = Instant.parse("2024-06-01T20:00:00Z").toEpochMilli();
+    private static final long NEXT_DAY = Instant.parse("2024-06-02T08:00:00Z").toEpochMilli();
+
+    private final ResourceController controller = new ResourceController();
+    private final ResourceHydrator hydrator = mock(ResourceHydrator.class);
+    private final ResourceSearchService searchService = mock(ResourceSearchService.class);
+
+    @BeforeEach
+    void setUp() {
+        SearchIndexService indexService = mock(SearchIndexService.class);
+        when(indexService.isReady()).thenReturn(true);
+        when(indexService.size()).thenReturn(5);
+        ReflectionTestUtils.setField(controller, "indexService", indexService);
+        ReflectionTestUtils.setField(controller, "resourceRepository", mock(CourseResourceRepository.class));
+        ReflectionTestUtils.setField(controller, "hydrator", hydrator);
+        ReflectionTestUtils.setField(controller, "searchService", searchService);
+    }
+
+    @Test
+    void catalogueTagsFollowTheGenerationOnly() {
+        assertThat(ResourceController.catalogueTag(7, false, MORNING))
+                .isEqualTo(ResourceController.catalogueTag(7, false, NEXT_DAY))
+                .isNotEqualTo(ResourceController.catalogueTag(8, false, MORNING))
+                .startsWith("W/\"");
+    }
+
+    @Test
+    void relevanceTagsAlsoChangeWithTheDay() {
+        assertThat(ResourceController.catalogueTag(7, true, MORNING))
+                .isEqualTo(ResourceController.catalogueTag(7, true, EVENING))
+                .isNotEqualTo(ResourceController.catalogueTag(7, true, NEXT_DAY))
+                .isNotEqualTo(ResourceController.catalogueTag(8, true, MORNING))
+                .isNotEqualTo(ResourceController.catalogueTag(7, false, MORNING));
+    }
+
+    @Test
+    void cursorPagesHaveNoPageNumber() {
+        when(hydrator.hydrateAfter(0, 3)).thenReturn(responses(1, 2, 3));
+        when(hydrator.hydrateAfter(2, 3)).thenReturn(responses(3, 4, 5));
+
+        PageResponse<ResourceResponse> first = controller.list(2, null, webRequest());
+        PageResponse<ResourceResponse> second = controller.list(2, first.getNextCursor(), webRequest());
+
+        assertThat(first.getContent()).extracting(ResourceResponse::getId).containsExactly(1L, 2L);
+        assertThat(second.getContent()).extracting(ResourceResponse::getId).containsExactly(3L, 4L);
+        assertThat(second.getTotalElements()).isEqualTo(5);
+        JsonNode json = new ObjectMapper().valueToTree(second);
+        assertThat(json.has("page")).isFalse();
+        assertThat(json.has("totalPages")).isFalse();
+        assertThat(json.get("nextCursor").asText()).isEqualTo("4");
+    }
+
+    @Test
+    void searchPagesAreNumberedFromOneUnlessReachedByCursor() {
+        when(searchService.search(anyString(), anyString(), anyString(), any(), any(), anyBoolean(), anyBoolean(), any(),
+                anyBoolean())).thenReturn(new ResourceSearchService.SearchResult(List.of(3L, 4L), 5, true, "next", null, null));
+        when(hydrator.hydrate(anyList())).thenReturn(responses(3, 4));
+
+        PageResponse<ResourceResponse> byNumber = search(2, null);
+        PageResponse<ResourceResponse> byCursor = search(1, "next");
+
+        assertThat(byNumber.getPage()).isEqualTo(2);
+        assertThat(byNumber.getTotalPages()).isEqualTo(3);
+        assertThat(byCursor.getPage()).isNull();
+        assertThat(byCursor.getTotalPages()).isNull();
+    }
+
+    private PageResponse<ResourceResponse> search(int page, String cursor) {
+        return controller.search("数学", page, 2, "date", "and", cursor, false, false, null, null, null, false, false,
+                webRequest());
+    }
+
+    private static ServletWebRequest webRequest() {
+        return new ServletWebRequest(new MockHttpServletRequest(), new MockHttpServletResponse());
+    }
+
+    private static List<ResourceResponse> responses(long... ids) {
+        return LongStream.of(ids)
+                .mapToObj(id -> new ResourceResponse(id, "讲义 " + id, "数学学院", "user", null, List.of()))
+                .toList();
+    }
+}
@@ -0,0 +1,150 @@
+package com.search.app.loadtest;
+
+import com.search.app.search.IndexedResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.util.*;
+
+/**
+ * Fills an empty database with a {@link SyntheticCorpus} of {@code app.loadtest.resources} resources
+ * with {@code app.loadtest.attachments} attachments each, plus a login for the load driver. Runs
+ * before the application reports ready, so the search index is built over the seeded catalogue.
+ * <p>
+ * Rows go in as JDBC batches. Attachments share a small pool of files in the storage directory,
+ * so a large corpus does not need as many files on disk.
+ */
+@Component
+@Profile("loadtest")
+public class LoadTestSeeder implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadTestSeeder.class);
+
+    private static final int BATCH = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Value("${app.storage.dir:uploads}")
+    private String storageDir;
+
+    @Value("${app.loadtest.resources:10000}")
+    private int resources;
+
+    @Value("${app.loadtest.attachments:2}")
+    private int attachments;
+
+    @Value("${app.loadtest.seed:1}")
+    private long seed;
+
+    @Value("${app.loadtest.files:32}")
+    private int files;
+
+    @Value("${app.loadtest.file-bytes:262144}")
+    private int fileBytes;
+
+    @Value("${app.loadtest.username:loadtest}")
+    private String username;
+
+    @Value("${app.loadtest.password:loadtest123}")
+    private String password;
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException, NoSuchAlgorithmException {
+        Long existing = jdbc.queryForObject("select count(*) from course_resources", Long.class);
+        if (existing != null && existing > 0) {
+            log.info("Database already holds {} resources, not seeding", existing);
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<SeedFile> seedFiles = writeFiles();
+        Map<String, Long> users = insertUsers();
+        List<IndexedResource> corpus = SyntheticCorpus.generate(resources, attachments, seed);
+
+        List<Object[]> rows = new ArrayList<>(corpus.size());
+        for (IndexedResource resource : corpus) {
+            rows.add(new Object[]{resource.title(), resource.college(), Timestamp.from(resource.createdAt()),
+                    users.get(resource.uploader())});
+        }
+        batch("insert into course_resources (title, college, created_at, uploader_id) values (?, ?, ?, ?)", rows);
+        // identity values follow insertion order in a fresh table
+        List<Long> ids = jdbc.queryForList("select id from course_resources order by id", Long.class);
+
+        rows = new ArrayList<>(corpus.size() * attachments);
+        int file = 0;
+        for (int i = 0; i < corpus.size(); i++) {
+            IndexedResource resource = corpus.get(i);
+            for (int a = 0; a < resource.attachmentNames().size(); a++) {
+                SeedFile stored = seedFiles.get(file++ % seedFiles.size());
+                rows.add(new Object[]{ids.get(i), resource.attachmentNames().get(a),
+                        stored.name(), "application/octet-stream", (long) fileBytes, stored.contentHash(),
+                        resource.categories().get(a)});
+            }
+        }
+        batch("insert into resource_attachments (resource_id, original_name, stored_name, content_type, size, content_hash, category) " +
+                "values (?, ?, ?, ?, ?, ?, ?)", rows);
+        log.info("Seeded {} resources with {} attachments each in {} ms", corpus.size(), attachments,
+                System.currentTimeMillis() - start);
+    }
+
+    private List<SeedFile> writeFiles() throws IOException, NoSuchAlgorithmException {
+        Path dir = Paths.get(storageDir).toAbsolutePath().normalize();
+        Files.createDirectories(dir);
+        List<SeedFile> seeded = new ArrayList<>(files);
+        for (int i = 0; i < Math.max(1, files); i++) {
+            byte[] bytes = new byte[fileBytes];
+            new Random(seed + i).nextBytes(bytes);
+            // Named by content, as FileStorageService stores uploads
+            String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+            Files.write(dir.resolve(hash), bytes);
+            seeded.add(new SeedFile(hash, hash));
+        }
+        return seeded;
+    }
+
+    private record SeedFile(String name, String contentHash) {}
+
+    /**
+     * The driver's login and every uploader of the corpus, by username.
+     */
+    private Map<String, Long> insertUsers() {
+        // one hash for all uploaders; nobody logs in as them
+        String hash = passwordEncoder.encode(UUID.randomUUID().toString());
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[]{username, passwordEncoder.encode(password), username + "@loadtest.local"});
+        for (int i = 0; i < SyntheticCorpus.uploaders(resources); i++) {
+            String name = SyntheticCorpus.uploader(i);
+            rows.add(new Object[]{name, hash, name + "@loadtest.local"});
+        }
+        batch("insert into users (username, password, email) values (?, ?, ?)", rows);
+        Map<String, Long> ids = new HashMap<>();
+        jdbc.query("select id, username from users", rs -> {
+            ids.put(rs.getString(2), rs.getLong(1));
+        });
+        return ids;
+    }
+
+    private void batch(String sql, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += BATCH) {
+            jdbc.batchUpdate(sql, rows.subList(from, Math.min(from + BATCH, rows.size())));
+        }
+    }
+}
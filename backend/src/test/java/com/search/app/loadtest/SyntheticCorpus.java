@@ -0,0 +1,117 @@
+package com.search.app.loadtest;
+
+import com.search.app.model.enums.AttachmentCategory;
+import com.search.app.search.IndexedResource;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic course-resource corpus for benchmarks and load tests: Chinese, Latin and mixed titles
+ * built from a course vocabulary, a fixed number of attachments each, and extracted text on about a
+ * quarter of them.
+ * Word choice is skewed towards the start of each list, so some terms are common and most are rare,
+ * as in real titles. The same arguments always give the same corpus; resource ids run from 1.
+ */
+public final class SyntheticCorpus {
+
+    private static final String[] COURSES = {
+            "高等数学", "线性代数", "概率论与数理统计", "大学物理", "数据结构", "操作系统", "计算机网络",
+            "离散数学", "有机化学", "微观经济学", "马克思主义基本原理", "大学英语", "复变函数", "数字电路",
+            "信号与系统", "编译原理", "数据库系统", "机器学习", "模拟电子技术", "工程制图"
+    };
+    private static final String[] LATIN = {
+            "calculus", "linear algebra", "probability", "physics", "data structures", "operating systems",
+            "networks", "discrete math", "organic chemistry", "microeconomics", "english", "complex analysis",
+            "digital logic", "signals", "compilers", "databases", "machine learning", "analog circuits"
+    };
+    private static final String[] KINDS = {
+            "期末复习", "期中考试", "回忆卷", "课堂笔记", "习题答案", "重点总结", "实验报告", "知识点整理",
+            "final", "midterm", "notes", "cheat sheet", "homework", "lab report"
+    };
+    private static final String[] COLLEGES = {
+            "计算机学院", "数学学院", "物理学院", "化学学院", "经济学院", "外国语学院", "电子信息学院", "机械学院"
+    };
+    private static final String[] PHRASES = {
+            "拉格朗日中值定理", "特征值与特征向量", "傅里叶变换", "极限与连续", "泰勒展开", "矩阵的秩",
+            "条件概率", "大数定律", "二叉树遍历", "进程调度", "TCP three-way handshake", "gradient descent",
+            "eigenvalue decomposition", "dynamic programming", "hash table", "B+ tree index", "牛顿第二定律",
+            "麦克斯韦方程组", "供给与需求", "边际效用", "证明：由定义可知", "例题 3.2", "see chapter 4"
+    };
+    private static final String[] EXTENSIONS = {".pdf", ".docx", ".pptx", ".txt", ".md", ".zip"};
+
+    private SyntheticCorpus() {
+    }
+
+    public static List<IndexedResource> generate(int size, int attachments, long seed) {
+        Random random = new Random(seed);
+        Instant now = Instant.parse("2024-06-01T00:00:00Z");
+        List<IndexedResource> corpus = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            List<String> names = new ArrayList<>(attachments);
+            List<String> categories = new ArrayList<>(attachments);
+            for (int a = 0; a < attachments; a++) {
+                names.add(pick(random, KINDS) + "_" + (2015 + random.nextInt(10)) + pick(random, EXTENSIONS));
+                categories.add(random.nextInt(3) == 0 ? AttachmentCategory.EXAM.name() : AttachmentCategory.NOTE.name());
+            }
+            List<String> contents = random.nextInt(4) == 0 ? List.of(text(random, 400)) : List.of();
+            corpus.add(new IndexedResource((long) i + 1, title(random), pick(random, COLLEGES),
+                    now.minus(random.nextInt(3 * 365 * 24), ChronoUnit.HOURS), names, categories,
+                    uploader(random.nextInt(uploaders(size))), contents));
+        }
+        return corpus;
+    }
+
+    /**
+     * How many distinct uploaders a corpus of {@code size} resources has, named by {@link #uploader(int)}.
+     */
+    public static int uploaders(int size) {
+        return Math.max(1, size / 20);
+    }
+
+    public static String uploader(int n) {
+        return "user" + n;
+    }
+
+    /**
+     * {@code count} query strings drawn from the same vocabulary as the titles, some of them two words.
+     */
+    public static List<String> queries(int count, long seed) {
+        Random random = new Random(seed);
+        List<String> queries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String first = switch (random.nextInt(3)) {
+                case 0 -> pick(random, COURSES);
+                case 1 -> pick(random, LATIN);
+                default -> pick(random, PHRASES);
+            };
+            queries.add(random.nextBoolean() ? first : first + " " + pick(random, KINDS));
+        }
+        return queries;
+    }
+
+    public static String title(Random random) {
+        return switch (random.nextInt(4)) {
+            case 0 -> pick(random, COURSES) + pick(random, KINDS);
+            case 1 -> pick(random, LATIN) + " " + pick(random, KINDS) + " " + (2015 + random.nextInt(10));
+            case 2 -> (2015 + random.nextInt(10)) + "年" + pick(random, COURSES) + pick(random, KINDS) + "（含答案）";
+            default -> pick(random, COURSES) + " " + pick(random, LATIN) + " " + pick(random, KINDS);
+        };
+    }
+
+    public static String text(Random random, int chars) {
+        StringBuilder text = new StringBuilder(chars + 32);
+        while (text.length() < chars) {
+            text.append(pick(random, PHRASES)).append(random.nextInt(5) == 0 ? "。\n" : "，");
+        }
+        return text.toString();
+    }
+
+    private static String pick(Random random, String[] words) {
+        double r = random.nextDouble();
+        return words[(int) (r * r * words.length)];
+    }
+}
@@ -0,0 +1,53 @@
+package com.search.app.loadtest;
+
+import com.search.app.search.IndexedResource;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Load-test runs are only comparable if every run seeds the same catalogue and asks the same queries.
+ */
+class SyntheticCorpusTest {
+
+    @Test
+    void theSameArgumentsGiveTheSameCorpus() {
+        List<IndexedResource> corpus = SyntheticCorpus.generate(2000, 3, 1);
+
+        assertThat(SyntheticCorpus.generate(2000, 3, 1)).isEqualTo(corpus);
+        assertThat(SyntheticCorpus.generate(2000, 3, 2)).isNotEqualTo(corpus);
+        assertThat(SyntheticCorpus.queries(100, 7)).isEqualTo(SyntheticCorpus.queries(100, 7));
+    }
+
+    @Test
+    void resourcesAreNumberedFromOneWithTheRequestedAttachments() {
+        List<IndexedResource> corpus = SyntheticCorpus.generate(2000, 3, 1);
+
+        assertThat(corpus).extracting(IndexedResource::id)
+                .containsExactlyElementsOf(LongStream.rangeClosed(1, 2000).boxed().toList());
+        assertThat(corpus).allSatisfy(r -> {
+            assertThat(r.attachmentNames()).hasSize(3);
+            assertThat(r.categories()).hasSize(3);
+            assertThat(r.uploader()).startsWith("user");
+        });
+        long withContents = corpus.stream().filter(r -> !r.contents().isEmpty()).count();
+        assertThat(withContents).isBetween(400L, 600L);
+    }
+
+    @Test
+    void everyQueryStartsWithAWordOfTheCorpus() {
+        List<IndexedResource> corpus = SyntheticCorpus.generate(2000, 3, 1);
+        String text = corpus.stream()
+                .map(r -> r.title() + "\n" + String.join("\n", r.contents()))
+                .collect(Collectors.joining("\n"))
+                .toLowerCase(Locale.ROOT);
+
+        assertThat(SyntheticCorpus.queries(256, 7))
+                .allSatisfy(q -> assertThat(text).contains(q.split(" ")[0].toLowerCase(Locale.ROOT)));
+    }
+}
@@ -0,0 +1,73 @@
+package com.search.app.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchTraceInterceptorTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @AfterEach
+    void clearTrace() {
+        SearchTrace.end();
+    }
+
+    @Test
+    void sampledRequestsPublishTheirStagesAndCounts() {
+        SearchTraceInterceptor interceptor = interceptor(1.0);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/resources/search");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        interceptor.preHandle(request, response, null);
+        SearchTrace.plan(SearchTrace.Plan.INDEX);
+        SearchTrace.record(SearchTrace.Stage.INDEX, System.nanoTime() - 2_000_000);
+        new SqlStatementCounter().inspect("select 1");
+        SearchTrace.handlerDone(10, 42);
+        interceptor.postHandle(request, response, null, null);
+        interceptor.afterCompletion(request, response, null, null);
+
+        assertThat(SearchTrace.current()).isNull();
+        assertThat(registry.get("search.request").tag("plan", "index").tag("outcome", "success").timer().count())
+                .isEqualTo(1);
+        assertThat(registry.get("search.stage").tag("stage", "index").timer().totalTime(TimeUnit.MILLISECONDS))
+                .isGreaterThanOrEqualTo(2);
+        // stages the request did not go through are not recorded at all
+        assertThat(registry.get("search.stage").tag("stage", "sql").timer().count()).isZero();
+        assertThat(registry.get("search.sql.statements").summary().totalAmount()).isEqualTo(1);
+        assertThat(registry.get("search.results").summary().totalAmount()).isEqualTo(10);
+        assertThat(registry.get("search.hits").summary().totalAmount()).isEqualTo(42);
+    }
+
+    @Test
+    void unsampledRequestsAreNotTraced() {
+        SearchTraceInterceptor interceptor = interceptor(0.0);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/resources/search");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        interceptor.preHandle(request, response, null);
+        assertThat(SearchTrace.current()).isNull();
+        // recording outside a trace does nothing
+        SearchTrace.record(SearchTrace.Stage.INDEX, System.nanoTime());
+        SearchTrace.handlerDone(10, 42);
+        interceptor.afterCompletion(request, response, null, null);
+
+        assertThat(registry.find("search.request").timer()).isNull();
+        assertThat(registry.get("search.results").summary().count()).isZero();
+    }
+
+    private SearchTraceInterceptor interceptor(double sampleRate) {
+        SearchTraceInterceptor interceptor = new SearchTraceInterceptor();
+        ReflectionTestUtils.setField(interceptor, "metrics", new SearchMetrics(registry, sampleRate, List.of(0.5), false));
+        ReflectionTestUtils.setField(interceptor, "slowQueryLog", new SlowQueryLog(500, 10));
+        return interceptor;
+    }
+}
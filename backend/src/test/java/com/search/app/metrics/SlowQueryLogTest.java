@@ -0,0 +1,67 @@
+package com.search.app.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlowQueryLogTest {
+
+    @AfterEach
+    void clearTrace() {
+        SearchTrace.end();
+    }
+
+    @Test
+    void keepsTheNewestEntriesUpToItsCapacity() {
+        SlowQueryLog log = new SlowQueryLog(500, 3);
+        for (int i = 1; i <= 5; i++) {
+            log.add(new SlowQueryLog.Entry(Instant.EPOCH, "q=" + i, 200, 600, null));
+        }
+
+        assertThat(log.entries()).extracting(SlowQueryLog.Entry::query).containsExactly("q=5", "q=4", "q=3");
+        assertThat(log.isSlow(499_000_000L)).isFalse();
+        assertThat(log.isSlow(500_000_000L)).isTrue();
+        assertThat(new SlowQueryLog(0, 0).isSlow(Long.MAX_VALUE)).isFalse();
+    }
+
+    @Test
+    void profiledRequestsAreTracedAndLoggedWithoutBeingSampled() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SlowQueryLog log = new SlowQueryLog(0, 10);
+        SearchTraceInterceptor interceptor = new SearchTraceInterceptor();
+        ReflectionTestUtils.setField(interceptor, "metrics", new SearchMetrics(registry, 0.0, List.of(0.5), false));
+        ReflectionTestUtils.setField(interceptor, "slowQueryLog", log);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/resources/search");
+        request.setQueryString("q=%E6%95%B0%E5%AD%A6&profile=true");
+        request.setParameter("q", "数学");
+        request.setParameter("profile", "true");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        interceptor.preHandle(request, response, null);
+        assertThat(SearchTrace.profiling()).isNotNull();
+        SearchTrace.tokens(List.of("数学"));
+        SearchTrace.plan(SearchTrace.Plan.CACHE);
+        SearchTrace.record(SearchTrace.Stage.CACHE, System.nanoTime() - 1_000_000);
+        SearchProfile inline = SearchTrace.current().profile();
+        interceptor.afterCompletion(request, response, null, null);
+
+        assertThat(inline.tokens()).containsExactly("数学");
+        assertThat(inline.plan()).isEqualTo("cache");
+        assertThat(inline.stageMillis()).containsOnlyKeys("cache");
+        assertThat(log.entries()).singleElement().satisfies(entry -> {
+            assertThat(entry.query()).isEqualTo("q=数学&profile=true");
+            assertThat(entry.status()).isEqualTo(200);
+            assertThat(entry.profile().plan()).isEqualTo("cache");
+        });
+        // profiling alone does not publish metrics
+        assertThat(registry.find("search.request").timer()).isNull();
+    }
+}
@@ -0,0 +1,55 @@
+package com.search.app.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CjkBigramAnalyzerTest {
+
+    private final CjkBigramAnalyzer analyzer = new CjkBigramAnalyzer();
+
+    @Test
+    void cjkRunsBecomeBigramsPlusUnigramsForDocuments() {
+        assertThat(terms("高等数学", false)).containsExactly("高", "高等", "等", "等数", "数", "数学", "学");
+    }
+
+    @Test
+    void queriesSkipUnigramsUnlessTheRunIsOneCharacter() {
+        assertThat(terms("高等数学", true)).containsExactly("高等", "等数", "数学");
+        assertThat(terms("数", true)).containsExactly("数");
+        assertThat(terms("数 abc", true)).containsExactly("数", "abc");
+    }
+
+    @Test
+    void latinWordsAreLowercasedAndSplitFromCjk() {
+        assertThat(terms("Linear代数Exam 2023", true)).containsExactly("linear", "代数", "exam", "2023");
+    }
+
+    @Test
+    void fullWidthFormsFoldToHalfWidth() {
+        assertThat(terms("ＡＢＣ１２３", true)).isEqualTo(terms("abc123", true));
+        assertThat(terms("数学　期末", true)).isEqualTo(terms("数学 期末", true));
+    }
+
+    @Test
+    void offsetsPointIntoTheOriginalText() {
+        List<int[]> offsets = new ArrayList<>();
+        analyzer.analyze("ab 数学", true, (buf, len, start, end) -> offsets.add(new int[]{start, end}));
+        assertThat(offsets).containsExactly(new int[]{0, 2}, new int[]{3, 5});
+    }
+
+    @Test
+    void nullAndPunctuationProduceNoTerms() {
+        assertThat(terms(null, false)).isEmpty();
+        assertThat(terms(" ,.!  ", false)).isEmpty();
+    }
+
+    private List<String> terms(String text, boolean query) {
+        List<String> terms = new ArrayList<>();
+        analyzer.analyze(text, query, (buf, len, start, end) -> terms.add(new String(buf, 0, len)));
+        return terms;
+    }
+}
@@ -0,0 +1,138 @@
+package com.search.app.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Highlights are rendered as HTML by the search page, so everything outside the {@code <em>} tags
+ * must come out escaped.
+ */
+class HighlighterTest {
+
+    private static final RankingParams RANKING = new RankingParams(1.2f, 0.75f, 3f, 1f, 0.5f, 0.4f, 365, 0.2f,
+            RankingParams.Strategy.TOPK);
+    private static final Instant NOW = Instant.parse("2024-06-01T00:00:00Z");
+
+    private final InvertedIndex index = new InvertedIndex(new CjkBigramAnalyzer(), RANKING);
+
+    @Test
+    void markupInTitlesAndTextIsEscaped() {
+        add(1, "<script>alert(\"数学\")</script> & 'notes'", "a<b && c>d \"数学\" <img src=x onerror='y'>");
+
+        Highlight highlight = highlight("数学", 120, 16384).get(1L);
+
+        assertThat(highlight.title())
+                .isEqualTo("&lt;script&gt;alert(&quot;<em>数学</em>&quot;)&lt;/script&gt; &amp; &#39;notes&#39;");
+        assertThat(highlight.snippet())
+                .isEqualTo("a&lt;b &amp;&amp; c&gt;d &quot;<em>数学</em>&quot; &lt;img src=x onerror=&#39;y&#39;&gt;");
+    }
+
+    @Test
+    void matchesInsideMarkupAreEscapedToo() {
+        add(1, "<em>script</em>", "</em><script>x</script>");
+
+        Highlight highlight = highlight("script", 120, 16384).get(1L);
+
+        assertThat(highlight.title()).isEqualTo("&lt;em&gt;<em>script</em>&lt;/em&gt;");
+        assertThat(highlight.snippet()).isEqualTo("&lt;/em&gt;&lt;<em>script</em>&gt;x&lt;/<em>script</em>&gt;");
+    }
+
+    @Test
+    void overlappingAndAdjacentMatchesShareOneTag() {
+        add(1, "高等数学数学", "linear algebra, linear-algebra");
+
+        Map<Long, Highlight> byCjk = highlight("高等数学", 120, 16384);
+        Map<Long, Highlight> byWords = highlight("linear algebra", 120, 16384);
+
+        // the query's overlapping bigrams, then a repeat of the last one right after it
+        assertThat(byCjk.get(1L).title()).isEqualTo("<em>高等数学数学</em>");
+        // separate words stay separate, whatever is between them
+        assertThat(byWords.get(1L).snippet())
+                .isEqualTo("<em>linear</em> <em>algebra</em>, <em>linear</em>-<em>algebra</em>");
+    }
+
+    @Test
+    void snippetsNeverSplitASurrogatePair() {
+        Random random = new Random(5);
+        String[] pieces = {"😀", "𠀀", "矩阵", "a", " ", "🎓🎓"};
+        for (int doc = 1; doc <= 200; doc++) {
+            StringBuilder content = new StringBuilder();
+            int matchAt = random.nextInt(60);
+            for (int i = 0; i < 80; i++) {
+                content.append(i == matchAt ? "特征值" : pieces[random.nextInt(pieces.length)]);
+            }
+            add(doc, "讲义", content.toString());
+        }
+
+        for (int width = 16; width <= 40; width++) {
+            for (Highlight highlight : highlight("特征值", width, 1 << 20).values()) {
+                String text = highlight.snippet().replace("<em>", "").replace("</em>", "").replace("…", "");
+                assertThat(text).contains("特征值");
+                for (int i = 0; i < text.length(); i++) {
+                    char c = text.charAt(i);
+                    if (Character.isHighSurrogate(c)) {
+                        assertThat(i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))).as(text).isTrue();
+                    } else if (Character.isLowSurrogate(c)) {
+                        assertThat(i > 0 && Character.isHighSurrogate(text.charAt(i - 1))).as(text).isTrue();
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void aPageOfHighlightsSharesTheByteBudget() {
+        String text = "前言。" + "矩阵的秩与线性方程组的解，".repeat(20);
+        for (int doc = 1; doc <= 10; doc++) {
+            add(doc, "矩阵 讲义 " + doc, text);
+        }
+
+        Map<Long, Highlight> generous = highlight("矩阵", 120, 1 << 20);
+        Map<Long, Highlight> tight = highlight("矩阵", 120, 2000);
+        Map<Long, Highlight> starved = highlight("矩阵", 120, 300);
+
+        String full = generous.get(1L).snippet();
+        assertThat(generous.values()).extracting(Highlight::snippet).containsOnly(full);
+        assertThat(bytes(tight)).isLessThanOrEqualTo(2000);
+        assertThat(bytes(starved)).isLessThanOrEqualTo(300);
+        // every hit gets a shorter snippet rather than the first few taking it all
+        assertThat(tight).hasSize(10);
+        assertThat(tight.values()).allSatisfy(h -> assertThat(h.snippet()).isNotNull().contains("<em>矩阵</em>"));
+        assertThat(tight.values()).allSatisfy(h -> assertThat(h.snippet().length()).isLessThan(full.length()));
+        // too little for any snippet, but the short titles still fit
+        assertThat(starved).hasSize(10);
+        assertThat(starved.values()).allSatisfy(h -> {
+            assertThat(h.title()).startsWith("<em>矩阵</em> 讲义");
+            assertThat(h.snippet()).isNull();
+        });
+    }
+
+    private Map<Long, Highlight> highlight(String q, int snippetChars, int maxBytes) {
+        SearchHits hits = index.search(new IndexQuery(List.of(q.split(" ")), true, "date", 0, 1000, -1, null, 0,
+                false, null, new HighlightParams(snippetChars, maxBytes)));
+        return hits.highlights();
+    }
+
+    private void add(long id, String title, String content) {
+        index.add(new IndexedResource(id, title, "数学学院", NOW, List.of(), List.of(), null, List.of(content)));
+    }
+
+    private static int bytes(Map<Long, Highlight> highlights) {
+        int bytes = 0;
+        for (Highlight highlight : highlights.values()) {
+            bytes += bytes(highlight.title()) + bytes(highlight.snippet());
+        }
+        return bytes;
+    }
+
+    private static int bytes(String s) {
+        return s == null ? 0 : s.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
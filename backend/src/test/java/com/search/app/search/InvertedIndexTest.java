@@ -0,0 +1,349 @@
+package com.search.app.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InvertedIndexTest {
+
+    private static final RankingParams RANKING = new RankingParams(1.2f, 0.75f, 3f, 1f, 0.5f, 0.4f, 365, 0.2f,
+            RankingParams.Strategy.TOPK);
+    private static final Instant NOW = Instant.parse("2024-06-01T00:00:00Z");
+
+    private final InvertedIndex index = new InvertedIndex(new CjkBigramAnalyzer(), RANKING);
+
+    @Test
+    void namePagesFollowCodePointOrderWithoutGapsOrRepeats() {
+        String[] titles = {"数学 b", "Math a", "math a", "数学 a", "📚 数学", "（数学）", "Math a"};
+        for (int i = 0; i < titles.length; i++) {
+            index.add(resource(i + 1, titles[i], NOW));
+        }
+        List<Long> expected = new ArrayList<>(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L));
+        expected.sort((a, b) -> SearchCursor.compareByName(titles[(int) (a - 1)], a, titles[(int) (b - 1)], b));
+
+        assertThat(pageThrough("", "name", 2)).isEqualTo(expected);
+    }
+
+    @Test
+    void namePagesSkipResourcesAddedBeforeTheCursor() {
+        index.add(resource(1, "b", NOW));
+        index.add(resource(2, "d", NOW));
+        index.add(resource(3, "f", NOW));
+        SearchHits first = index.search(query("", "name", 2, null));
+        assertThat(first.ids()).containsExactly(1L, 2L);
+
+        index.add(resource(4, "a", NOW));
+        index.add(resource(5, "e", NOW));
+        SearchHits second = index.search(query("", "name", 2, first.next()));
+        assertThat(second.ids()).containsExactly(5L, 3L);
+    }
+
+    @Test
+    void relevancePagesScoreAtTheFirstPagesClock() {
+        for (int i = 0; i < 30; i++) {
+            index.add(resource(i + 1, "高等数学 期末 " + i, NOW.minus(i * 37L, ChronoUnit.DAYS)));
+        }
+        SearchHits first = index.search(query("数学", "relevance", 10, null));
+        assertThat(first.next().now()).isPositive();
+
+        long pinned = first.next().now();
+        List<Long> all = new ArrayList<>(first.ids());
+        SearchHits page = index.search(query("数学", "relevance", 10, first.next()));
+        while (true) {
+            all.addAll(page.ids());
+            if (page.next() == null) {
+                break;
+            }
+            assertThat(page.next().now()).isEqualTo(pinned);
+            page = index.search(query("数学", "relevance", 10, page.next()));
+        }
+        assertThat(all).hasSize(30).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void reindexingTheSameResourcesCompactsTombstones() {
+        for (int i = 0; i < 100; i++) {
+            index.add(resource(i + 1, "高等数学 " + i, NOW));
+        }
+        for (int round = 0; round < 30; round++) {
+            for (int i = 0; i < 100; i++) {
+                index.add(resource(i + 1, "线性代数 " + i, NOW));
+            }
+        }
+
+        assertThat(index.size()).isEqualTo(100);
+        assertThat(index.maxDoc()).isLessThan(2 * 1024 + 100);
+        assertThat(index.search(query("线性代数", "date", 200, null)).ids()).hasSize(100);
+        assertThat(index.search(query("高等数学", "date", 200, null)).ids()).isEmpty();
+    }
+
+    @Test
+    void snippetsOnlyComeFromTheStoredPrefix() {
+        InvertedIndex bounded = new InvertedIndex(new CjkBigramAnalyzer(), RANKING, 100);
+        String filler = "x".repeat(200);
+        bounded.add(new IndexedResource(1L, "讲义", "数学学院", NOW, List.of("a.pdf"), List.of("NOTE"), "alice",
+                List.of("矩阵 开头 " + filler)));
+        bounded.add(new IndexedResource(2L, "讲义", "数学学院", NOW, List.of("b.pdf"), List.of("NOTE"), "alice",
+                List.of(filler + " 矩阵 结尾")));
+
+        SearchHits hits = bounded.search(new IndexQuery(List.of("矩阵"), true, "date", 0, 10, -1, null, 0, false, null,
+                new HighlightParams(40, 16384)));
+
+        assertThat(hits.ids()).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(hits.highlights().get(1L).snippet()).contains("<em>矩阵</em>");
+        assertThat(hits.highlights()).doesNotContainKey(2L);
+    }
+
+    @Test
+    void latinWordsAlsoMatchTheWordsTheyStart() {
+        index.add(resource(1, "Calculus notes", NOW));
+        index.add(resource(2, "calc 习题", NOW));
+        index.add(resource(3, "Calculator manual", NOW));
+        index.add(resource(4, "Linear algebra", NOW));
+
+        // the exact word outranks its completions
+        assertThat(index.search(query("calc", "relevance", 10, null)).ids()).startsWith(2L)
+                .containsExactlyInAnyOrder(1L, 2L, 3L);
+        assertThat(index.search(query("CALCU", "date", 10, null)).ids()).containsExactlyInAnyOrder(1L, 3L);
+        assertThat(index.search(query("calc manual", "date", 10, null)).ids()).containsExactly(3L);
+        // only whole-word prefixes, and only from three characters
+        assertThat(index.search(query("ulus", "date", 10, null)).ids()).isEmpty();
+        assertThat(index.search(query("ca", "date", 10, null)).ids()).isEmpty();
+
+        SearchHits highlighted = index.search(new IndexQuery(List.of("calc"), true, "date", 0, 10, -1, null, 0,
+                false, null, new HighlightParams(40, 16384)));
+        assertThat(highlighted.highlights().get(1L).title()).isEqualTo("<em>Calculus</em> notes");
+    }
+
+    @Test
+    void fieldBoostsStillRankAfterReaddsLeaveTombstones() {
+        index.add(new IndexedResource(1L, "数学", "物理学院", NOW, List.of(), List.of(), null, List.of()));
+        index.add(new IndexedResource(2L, "讲义", "数学学院", NOW, List.of(), List.of(), null, List.of()));
+        // each re-add leaves the old ordinal in the title's posting list until compaction
+        for (int i = 0; i < 20; i++) {
+            index.add(new IndexedResource(1L, "数学", "物理学院", NOW, List.of(), List.of(), null, List.of()));
+        }
+        assertThat(index.maxDoc()).isGreaterThan(20);
+
+        // a title match outweighs a college match only while every weight stays positive
+        assertThat(index.search(query("数学", "relevance", 10, null)).ids()).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void conjunctionsAndUnionsMatchABruteForceScan() {
+        String[] words = {"alpha", "beta", "gamma", "delta", "omega"};
+        // "sigma" is in no document; a conjunction must not ignore a term that has no postings
+        String[] queryWords = {"alpha", "beta", "gamma", "delta", "omega", "sigma"};
+        Random random = new Random(5);
+        Map<Long, Set<String>> wordsById = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            long id = 1 + random.nextInt(600);
+            if (random.nextInt(10) == 0) {
+                index.remove(id);
+                wordsById.remove(id);
+                continue;
+            }
+            String title = randomText(random, words);
+            String attachment = randomText(random, words);
+            String content = randomText(random, words);
+            index.add(new IndexedResource(id, title, "college", NOW, List.of(attachment + ".pdf"), List.of("NOTE"),
+                    "alice", List.of(content)));
+            wordsById.put(id, new HashSet<>(List.of((title + " " + attachment + " " + content).split(" "))));
+        }
+
+        for (int q = 0; q < 200; q++) {
+            List<String> tokens = new ArrayList<>();
+            for (int t = 1 + random.nextInt(3); t > 0; t--) {
+                // a hyphenated token is one clause of two terms that must both match
+                tokens.add(random.nextInt(4) == 0
+                        ? queryWords[random.nextInt(queryWords.length)] + "-" + queryWords[random.nextInt(queryWords.length)]
+                        : queryWords[random.nextInt(queryWords.length)]);
+            }
+            boolean and = random.nextBoolean();
+            Set<Long> expected = new HashSet<>();
+            wordsById.forEach((id, present) -> {
+                boolean all = true;
+                boolean any = false;
+                for (String token : tokens) {
+                    boolean match = present.containsAll(List.of(token.split("-")));
+                    all &= match;
+                    any |= match;
+                }
+                if (and ? all : any) {
+                    expected.add(id);
+                }
+            });
+
+            SearchHits hits = index.search(new IndexQuery(tokens, and, "date", 0, 10_000, -1, null, 0, false, null, null));
+
+            assertThat(hits.ids()).as("%s and=%s", tokens, and).containsExactlyInAnyOrderElementsOf(expected);
+            assertThat(hits.total()).isEqualTo(expected.size());
+        }
+    }
+
+    @Test
+    void broadUnionsRankTheSamePageWithoutCountingEveryMatch() {
+        String[] filler = {"beta", "gamma", "delta"};
+        Random random = new Random(11);
+        for (int i = 1; i <= 2000; i++) {
+            // every title matches "alpha", one in forty also matches the rarer "omega"
+            String title = i % 40 == 0 ? "alpha omega" : "alpha " + filler[random.nextInt(filler.length)];
+            index.add(resource(i, title, NOW.minus(random.nextInt(900), ChronoUnit.DAYS)));
+        }
+
+        SearchHits exact = index.search(new IndexQuery(List.of("alpha", "omega"), false, "relevance", 0, 10, -1, null,
+                0, false, null, null));
+        SearchHits bounded = index.search(new IndexQuery(List.of("alpha", "omega"), false, "relevance", 0, 10, 100, null,
+                0, false, null, null));
+
+        assertThat(exact.total()).isEqualTo(2000);
+        assertThat(exact.totalExact()).isTrue();
+        assertThat(bounded.ids()).isEqualTo(exact.ids());
+        // pruning skips "alpha"-only titles once they cannot reach the page, so the total is a lower bound
+        assertThat(bounded.totalExact()).isFalse();
+        assertThat(bounded.total()).isBetween(10L, 1999L);
+    }
+
+    @Test
+    void pageSizesBeyondTheIndexOnlyCollectWhatCanMatch() {
+        for (int i = 1; i <= 200; i++) {
+            index.add(resource(i, i % 2 == 0 ? "alpha omega" : "alpha beta", NOW));
+        }
+
+        for (String sort : List.of("relevance", "date", "name")) {
+            // the pruned union, the ranked scan and the sorted scans alike
+            for (int threshold : new int[]{0, -1}) {
+                SearchHits all = index.search(new IndexQuery(List.of("alpha", "omega"), false, sort, 0,
+                        Integer.MAX_VALUE - 1, threshold, null, 0, false, null, null));
+                SearchHits beyond = index.search(new IndexQuery(List.of("alpha", "omega"), false, sort,
+                        Integer.MAX_VALUE - 5, 10, threshold, null, 0, false, null, null));
+
+                assertThat(all.ids()).as(sort).hasSize(200).doesNotHaveDuplicates();
+                assertThat(all.next()).isNull();
+                assertThat(beyond.ids()).as(sort).isEmpty();
+                assertThat(beyond.next()).isNull();
+            }
+        }
+    }
+
+    @Test
+    void facetsCountEveryMatchOnce() {
+        String[] colleges = {"数学学院", "物理学院", "计算机学院"};
+        String[] categories = {"NOTE", "EXAM", "SLIDES"};
+        Random random = new Random(13);
+        Map<Long, IndexedResource> model = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            long id = 1 + random.nextInt(300);
+            if (random.nextInt(5) == 0) {
+                index.remove(id);
+                model.remove(id);
+                continue;
+            }
+            List<String> resourceCategories = new ArrayList<>();
+            for (int n = random.nextInt(3); n >= 0; n--) {
+                // repeats count once per resource
+                resourceCategories.add(categories[random.nextInt(categories.length)]);
+            }
+            IndexedResource resource = new IndexedResource(id, random.nextBoolean() ? "高等数学" : "线性代数",
+                    colleges[random.nextInt(colleges.length)], NOW, List.of(), resourceCategories, "alice", List.of());
+            index.add(resource);
+            model.put(id, resource);
+        }
+
+        for (String q : List.of("", "数学")) {
+            SearchHits hits = index.search(new IndexQuery(q.isEmpty() ? List.of() : List.of(q), true, "date", 0, 10, -1,
+                    null, 0, true, null, null));
+
+            Map<String, Long> collegeCounts = new HashMap<>();
+            Map<String, Long> categoryCounts = new HashMap<>();
+            // the query matches colleges as well as titles
+            model.values().stream().filter(r -> r.title().contains(q) || r.college().contains(q)).forEach(r -> {
+                collegeCounts.merge(r.college(), 1L, Long::sum);
+                new HashSet<>(r.categories()).forEach(c -> categoryCounts.merge(c, 1L, Long::sum));
+            });
+            assertThat(toMap(hits.facets().get(InvertedIndex.COLLEGE_FACET))).as(q).isEqualTo(collegeCounts);
+            assertThat(toMap(hits.facets().get(InvertedIndex.CATEGORY_FACET))).as(q).isEqualTo(categoryCounts);
+            assertThat(hits.facets().get(InvertedIndex.COLLEGE_FACET))
+                    .isSortedAccordingTo((a, b) -> Long.compare(b.count(), a.count()));
+        }
+    }
+
+    @Test
+    void filtersStayCorrectAsResourcesChangeAfterTheirBitsetsAreBuilt() {
+        String[] colleges = {"数学学院", "物理学院", "计算机学院"};
+        String[] uploaders = {"alice", "bob"};
+        SearchFilter filter = new SearchFilter(List.of("数学学院", "物理学院"), List.of("EXAM"), List.of("alice"));
+        Random random = new Random(17);
+        Map<Long, IndexedResource> model = new HashMap<>();
+        for (int round = 0; round < 4; round++) {
+            // enough re-adds per round to compact, which renumbers documents under the cached bitsets
+            for (int i = 0; i < 1500; i++) {
+                long id = 1 + random.nextInt(400);
+                if (random.nextInt(6) == 0) {
+                    index.remove(id);
+                    model.remove(id);
+                    continue;
+                }
+                IndexedResource resource = new IndexedResource(id, "高等数学", colleges[random.nextInt(colleges.length)],
+                        NOW, List.of(), List.of(random.nextBoolean() ? "EXAM" : "NOTE"),
+                        uploaders[random.nextInt(uploaders.length)], List.of());
+                index.add(resource);
+                model.put(id, resource);
+            }
+
+            SearchHits hits = index.search(new IndexQuery(List.of("数学"), true, "date", 0, 1000, -1, null, 0, false,
+                    filter, null));
+
+            List<Long> expected = model.values().stream()
+                    .filter(r -> filter.colleges().contains(r.college()) && r.categories().contains("EXAM")
+                            && r.uploader().equals("alice"))
+                    .map(IndexedResource::id)
+                    .toList();
+            assertThat(hits.ids()).as("round %d", round).containsExactlyInAnyOrderElementsOf(expected);
+        }
+    }
+
+    private static Map<String, Long> toMap(List<FacetCount> counts) {
+        Map<String, Long> map = new HashMap<>();
+        counts.forEach(c -> map.put(c.value(), c.count()));
+        return map;
+    }
+
+    private List<Long> pageThrough(String q, String sort, int size) {
+        List<Long> ids = new ArrayList<>();
+        SearchCursor after = null;
+        do {
+            SearchHits hits = index.search(query(q, sort, size, after));
+            ids.addAll(hits.ids());
+            after = hits.next();
+        } while (after != null);
+        return ids;
+    }
+
+    private static IndexQuery query(String q, String sort, int size, SearchCursor after) {
+        List<String> tokens = q.isBlank() ? List.of() : List.of(q.split("\\s+"));
+        return new IndexQuery(tokens, true, sort, 0, size, -1, after, 0, false, null, null);
+    }
+
+    private static String randomText(Random random, String[] words) {
+        StringBuilder text = new StringBuilder(words[random.nextInt(words.length)]);
+        for (int n = random.nextInt(3); n > 0; n--) {
+            text.append(' ').append(words[random.nextInt(words.length)]);
+        }
+        return text.toString();
+    }
+
+    static IndexedResource resource(long id, String title, Instant createdAt) {
+        return new IndexedResource(id, title, "数学学院", createdAt, List.of("notes.pdf"), List.of("NOTE"), "alice", List.of());
+    }
+}
@@ -0,0 +1,95 @@
+package com.search.app.search;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PostingListTest {
+
+    @Test
+    void repeatedDocumentsCountAsFrequency() {
+        PostingList list = new PostingList();
+        list.add(1);
+        list.add(1);
+        list.add(4);
+        assertThat(list.size()).isEqualTo(2);
+        assertThat(list.freq(0)).isEqualTo(2);
+        assertThat(list.doc(1)).isEqualTo(4);
+    }
+
+    @Test
+    void seekFindsTheFirstEntryAtOrAfterTheTarget() {
+        PostingList list = listOf(2, 5, 9, 14, 20, 33, 41);
+        assertThat(list.seek(0, 0)).isEqualTo(0);
+        assertThat(list.seek(0, 2)).isEqualTo(0);
+        assertThat(list.seek(0, 3)).isEqualTo(1);
+        assertThat(list.seek(0, 14)).isEqualTo(3);
+        assertThat(list.seek(0, 34)).isEqualTo(6);
+        assertThat(list.seek(0, 41)).isEqualTo(6);
+        assertThat(list.seek(0, 42)).isEqualTo(7);
+    }
+
+    @Test
+    void seekNeverMovesBackBehindFrom() {
+        PostingList list = listOf(2, 5, 9, 14, 20);
+        assertThat(list.seek(3, 5)).isEqualTo(3);
+        assertThat(list.seek(5, 1)).isEqualTo(5);
+    }
+
+    @Test
+    void seekAgreesWithALinearScanAcrossGallopSteps() {
+        PostingList list = new PostingList();
+        for (int doc = 0; doc < 3000; doc += 3) {
+            list.add(doc);
+        }
+        for (int from = 0; from < list.size(); from += 97) {
+            for (int target = 0; target < 3100; target += 7) {
+                int expected = from;
+                while (expected < list.size() && list.doc(expected) < target) {
+                    expected++;
+                }
+                assertThat(list.seek(from, target)).as("seek(%d, %d)", from, target).isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    void seekOnAnEmptyListReturnsZero() {
+        assertThat(new PostingList().seek(0, 7)).isEqualTo(0);
+    }
+
+    @Test
+    void offsetsFollowTheirEntries() {
+        PostingList list = new PostingList(true);
+        list.add(0, 3);
+        list.add(0, 10);
+        list.add(2, 1);
+        assertThat(list.offset(0, 0)).isEqualTo(3);
+        assertThat(list.offset(0, 1)).isEqualTo(10);
+        assertThat(list.offset(1, 0)).isEqualTo(1);
+    }
+
+    @Test
+    void remapDropsRemovedDocumentsAndKeepsOffsetsAligned() {
+        PostingList list = new PostingList(true);
+        list.add(0, 5);
+        list.add(1, 7);
+        list.add(1, 8);
+        list.add(3, 2);
+        list.remap(new int[]{-1, 0, -1, 1});
+        assertThat(list.size()).isEqualTo(2);
+        assertThat(list.doc(0)).isEqualTo(0);
+        assertThat(list.freq(0)).isEqualTo(2);
+        assertThat(list.offset(0, 1)).isEqualTo(8);
+        assertThat(list.doc(1)).isEqualTo(1);
+        assertThat(list.offset(1, 0)).isEqualTo(2);
+    }
+
+    private static PostingList listOf(int... docs) {
+        PostingList list = new PostingList();
+        for (int doc : docs) {
+            list.add(doc);
+        }
+        return list;
+    }
+}
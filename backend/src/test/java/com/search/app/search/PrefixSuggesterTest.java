@@ -0,0 +1,103 @@
+package com.search.app.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PrefixSuggesterTest {
+
+    private static final Instant NOW = Instant.parse("2024-06-01T00:00:00Z");
+    private static final String[] WORDS = {"高等数学", "线性代数", "数值分析", "linear", "algebra", "line", "notes", "期末"};
+
+    private final PrefixSuggester suggester = new PrefixSuggester();
+
+    @Test
+    void suggestsWordsInsidePhrasesMostUsedFirst() {
+        suggester.load(List.of(
+                resource(1, "高等数学 期末", "数学学院"),
+                resource(2, "高等数学 期末", "数学学院"),
+                resource(3, "Linear Algebra", "数学学院"),
+                resource(4, "数学分析", "计算机学院")));
+
+        assertThat(suggester.suggest("数学", 10)).containsExactly("数学学院", "高等数学 期末", "数学分析");
+        assertThat(suggester.suggest("ALG", 10)).containsExactly("Linear Algebra");
+        // "ear" starts no word of "linear algebra"
+        assertThat(suggester.suggest("ear", 10)).isEmpty();
+        assertThat(suggester.suggest("数学", 1)).containsExactly("数学学院");
+    }
+
+    @Test
+    void incrementalChangesMatchABruteForceRanking() {
+        Random random = new Random(7);
+        Map<Long, IndexedResource> resources = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            long id = 1 + random.nextInt(200);
+            if (random.nextInt(4) == 0) {
+                suggester.remove(id);
+                resources.remove(id);
+            } else {
+                IndexedResource resource = resource(id, phrase(random), phrase(random));
+                suggester.add(resource);
+                resources.put(id, resource);
+            }
+        }
+        PrefixSuggester loaded = new PrefixSuggester();
+        loaded.load(resources.values());
+
+        Map<String, Integer> weights = new HashMap<>();
+        for (IndexedResource resource : resources.values()) {
+            for (String phrase : List.of(resource.title(), resource.college()).stream().distinct().toList()) {
+                weights.merge(phrase, 1, Integer::sum);
+            }
+        }
+        List<String> prefixes = new ArrayList<>(List.of("l", "li", "lin", "line", "linear a", "数", "数学", "代数", "期", "n"));
+        for (String word : WORDS) {
+            prefixes.add(word);
+        }
+        for (String prefix : prefixes) {
+            List<String> expected = weights.keySet().stream()
+                    .filter(phrase -> matches(phrase, prefix))
+                    .sorted(Comparator.<String>comparingInt(weights::get).reversed()
+                            .thenComparingInt(String::length)
+                            .thenComparing(Comparator.naturalOrder()))
+                    .limit(PrefixSuggester.TOP_N)
+                    .toList();
+
+            assertThat(suggester.suggest(prefix, PrefixSuggester.TOP_N)).as(prefix).isEqualTo(expected);
+            assertThat(loaded.suggest(prefix, PrefixSuggester.TOP_N)).as(prefix).isEqualTo(expected);
+        }
+    }
+
+    private static boolean matches(String phrase, String prefix) {
+        for (int i = 0; i < phrase.length(); i++) {
+            char c = phrase.charAt(i);
+            boolean start = i == 0 || CjkBigramAnalyzer.isCjk(c)
+                    || Character.isLetterOrDigit(c) && !Character.isLetterOrDigit(phrase.charAt(i - 1));
+            if (start && phrase.startsWith(prefix, i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String phrase(Random random) {
+        // already normalized, so a phrase is its own key
+        StringBuilder phrase = new StringBuilder(WORDS[random.nextInt(WORDS.length)]);
+        if (random.nextBoolean()) {
+            phrase.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return phrase.toString();
+    }
+
+    private static IndexedResource resource(long id, String title, String college) {
+        return new IndexedResource(id, title, college, NOW, List.of(), List.of(), null, List.of());
+    }
+}
@@ -0,0 +1,60 @@
+package com.search.app.search;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SearchCursorTest {
+
+    @Test
+    void roundTripsEverySort() {
+        SearchCursor relevance = new SearchCursor("relevance", Float.floatToIntBits(3.25f), null, 42, 1_700_000_000_000L);
+        SearchCursor date = new SearchCursor("date", 1_700_000_000_123_456L, null, 7);
+        SearchCursor name = new SearchCursor("name", 0, "高等数学: 期末 ab:c", 9);
+
+        assertThat(SearchCursor.decode(relevance.encode(), "relevance"))
+                .usingRecursiveComparison().ignoringFields("text").isEqualTo(relevance);
+        assertThat(SearchCursor.decode(date.encode(), "date"))
+                .usingRecursiveComparison().ignoringFields("text").isEqualTo(date);
+        assertThat(SearchCursor.decode(name.encode(), "name")).isEqualTo(name);
+    }
+
+    @Test
+    void encodedCursorsAreUrlSafe() {
+        String encoded = new SearchCursor("name", 0, "???>>>", 1).encode();
+        assertThat(encoded).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void rejectsCursorsOfAnotherSort() {
+        String encoded = new SearchCursor("date", 1, null, 1).encode();
+        assertThatThrownBy(() -> SearchCursor.decode(encoded, "name")).isInstanceOf(InvalidCursorException.class);
+    }
+
+    @Test
+    void rejectsMalformedCursors() {
+        assertThatThrownBy(() -> SearchCursor.decode("not base64!", "date")).isInstanceOf(InvalidCursorException.class);
+        String garbage = java.util.Base64.getUrlEncoder().encodeToString("date:x:1:0:".getBytes());
+        assertThatThrownBy(() -> SearchCursor.decode(garbage, "date")).isInstanceOf(InvalidCursorException.class);
+    }
+
+    @Test
+    void sortKeyFallsBackToRelevance() {
+        assertThat(SearchCursor.sortKey("DATE")).isEqualTo("date");
+        assertThat(SearchCursor.sortKey("name")).isEqualTo("name");
+        assertThat(SearchCursor.sortKey("whatever")).isEqualTo("relevance");
+        assertThat(SearchCursor.sortKey(null)).isEqualTo("relevance");
+    }
+
+    @Test
+    void namesCompareByCodePointThenId() {
+        assertThat(SearchCursor.compareByName("a", 2, "b", 1)).isNegative();
+        assertThat(SearchCursor.compareByName("B", 1, "a", 1)).isNegative();
+        assertThat(SearchCursor.compareByName("ab", 1, "abc", 1)).isNegative();
+        assertThat(SearchCursor.compareByName("同", 1, "同", 2)).isNegative();
+        // U+1F4DA sorts after U+FF08 by code point, although its UTF-16 surrogates come first
+        assertThat(SearchCursor.compareByName("📚", 1, "（", 1)).isPositive();
+        assertThat("📚".compareTo("（")).isNegative();
+    }
+}
@@ -0,0 +1,73 @@
+package com.search.app.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TermDictionaryTest {
+
+    @Test
+    void findsTermsWithinTheEditDistance() {
+        TermDictionary dictionary = new TermDictionary();
+        for (String term : List.of("algebra", "algebre", "algbra", "geometry", "alge", "algebraic")) {
+            dictionary.add(term);
+        }
+
+        assertThat(dictionary.similar("algebra", 1)).extracting(TermDictionary.Match::term)
+                .containsExactlyInAnyOrder("algebre", "algbra");
+        assertThat(dictionary.similar("algebra", 0)).isEmpty();
+    }
+
+    @Test
+    void completionsAreTheLongerTermsStartingWithThePrefix() {
+        TermDictionary dictionary = new TermDictionary();
+        for (String term : List.of("calculus", "calc", "calculator", "cab", "calcium", "linear")) {
+            dictionary.add(term);
+        }
+
+        assertThat(dictionary.completions("calc", 10)).containsExactly("calcium", "calculator", "calculus");
+        assertThat(dictionary.completions("calc", 2)).containsExactly("calcium", "calculator");
+        assertThat(dictionary.completions("calculus", 10)).isEmpty();
+        dictionary.clear();
+        assertThat(dictionary.completions("calc", 10)).isEmpty();
+    }
+
+    @Test
+    void repeatedLookupsMatchABruteForceScan() {
+        Random random = new Random(11);
+        TermDictionary dictionary = new TermDictionary();
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String term = randomTerm(random);
+            terms.add(term);
+            dictionary.add(term);
+            if (i % 100 == 0) {
+                // lookups interleaved with growth see the terms added so far
+                assertSameAsScan(dictionary, terms, randomTerm(random), 1 + i % 2);
+            }
+        }
+        for (int i = 0; i < 200; i++) {
+            assertSameAsScan(dictionary, terms, randomTerm(random), 1 + i % 2);
+        }
+    }
+
+    private static void assertSameAsScan(TermDictionary dictionary, List<String> terms, String query, int maxEdits) {
+        List<String> expected = terms.stream().distinct()
+                .filter(t -> !t.equals(query) && TermDictionary.distance(query, t, maxEdits) <= maxEdits)
+                .toList();
+        assertThat(dictionary.similar(query, maxEdits)).extracting(TermDictionary.Match::term)
+                .containsExactlyInAnyOrderElementsOf(expected);
+    }
+
+    private static String randomTerm(Random random) {
+        char[] chars = new char[4 + random.nextInt(4)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(4));
+        }
+        return new String(chars);
+    }
+}
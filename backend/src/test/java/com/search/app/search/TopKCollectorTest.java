@@ -0,0 +1,93 @@
+package com.search.app.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TopKCollectorTest {
+
+    @Test
+    void keepsTheBestByKeyThenTieDescending() {
+        TopKCollector top = new TopKCollector(3);
+        top.collect(0, 5, 10);
+        top.collect(1, 9, 11);
+        top.collect(2, 5, 12);
+        top.collect(3, 1, 13);
+        top.collect(4, 9, 14);
+
+        assertThat(top.full()).isTrue();
+        assertThat(top.drain()).containsExactly(4, 1, 2);
+    }
+
+    @Test
+    void minKeyIsTheWeakestKept() {
+        TopKCollector top = new TopKCollector(2);
+        top.collect(0, 3, 0);
+        top.collect(1, 7, 0);
+        top.collect(2, 5, 0);
+        assertThat(top.minKey()).isEqualTo(5);
+    }
+
+    @Test
+    void boundDropsEverythingNotStrictlyAfterIt() {
+        TopKCollector top = new TopKCollector(10, 5, 12);
+        top.collect(0, 6, 1);   // before the bound
+        top.collect(1, 5, 13);  // same key, tie not below
+        top.collect(2, 5, 12);  // the bound itself
+        top.collect(3, 5, 11);
+        top.collect(4, 4, 99);
+        assertThat(top.drain()).containsExactly(3, 4);
+    }
+
+    @Test
+    void drainLeavesKeysInReturnedOrder() {
+        TopKCollector top = new TopKCollector(3);
+        top.collect(0, 2, 0);
+        top.collect(1, 8, 0);
+        top.collect(2, 4, 0);
+        int[] docs = top.drain();
+        assertThat(docs).containsExactly(1, 2, 0);
+        assertThat(new long[]{top.key(0), top.key(1), top.key(2)}).containsExactly(8, 4, 2);
+    }
+
+    @Test
+    void peekMatchesDrainWithoutConsumingTheHeap() {
+        TopKCollector top = new TopKCollector(4);
+        for (int doc = 0; doc < 10; doc++) {
+            top.collect(doc, doc % 4, doc);
+        }
+        int[] peeked = top.peek();
+        assertThat(top.full()).isTrue();
+        assertThat(top.drain()).containsExactly(peeked);
+    }
+
+    @Test
+    void zeroCapacityCollectsNothing() {
+        TopKCollector top = new TopKCollector(0);
+        top.collect(0, 1, 1);
+        assertThat(top.drain()).isEmpty();
+    }
+
+    @Test
+    void agreesWithAFullSortOnRandomInput() {
+        Random random = new Random(42);
+        int n = 1000;
+        long[] keys = new long[n];
+        TopKCollector top = new TopKCollector(25);
+        for (int doc = 0; doc < n; doc++) {
+            keys[doc] = random.nextInt(50);
+            top.collect(doc, keys[doc], doc);
+        }
+        int[] expected = IntStream.range(0, n).boxed()
+                .sorted(Comparator.<Integer>comparingLong(doc -> keys[doc]).thenComparingInt(doc -> doc).reversed())
+                .limit(25)
+                .mapToInt(Integer::intValue)
+                .toArray();
+        assertThat(top.drain()).isEqualTo(expected);
+    }
+}
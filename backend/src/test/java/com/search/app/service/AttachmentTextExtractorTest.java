@@ -0,0 +1,127 @@
+package com.search.app.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AttachmentTextExtractorTest {
+
+    private static final String WORD = "xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\"";
+    private static final String DRAWING = "xmlns:a=\"http://schemas.openxmlformats.org/drawingml/2006/main\"";
+
+    @TempDir
+    Path dir;
+
+    private final AttachmentTextExtractor extractor = new AttachmentTextExtractor(1000);
+
+    @Test
+    void docxParagraphsBecomeLines() throws IOException {
+        Path file = zip("notes.docx", Map.of("word/document.xml", document(
+                "<w:p><w:r><w:t>高等数学</w:t></w:r><w:r><w:tab/><w:t xml:space=\"preserve\">期末 </w:t></w:r></w:p>"
+                        + "<w:p><w:r><w:t>第一行</w:t><w:br/><w:t>第二行 &amp; more</w:t></w:r></w:p>")));
+
+        assertThat(extractor.extract(file, "notes.docx", null)).isEqualTo("高等数学 期末 \n第一行\n第二行 & more");
+    }
+
+    @Test
+    void pptxSlidesAreReadInSlideOrder() throws IOException {
+        Map<String, String> parts = new LinkedHashMap<>();
+        for (int slide : new int[]{10, 2, 1}) {
+            parts.put("ppt/slides/slide" + slide + ".xml", "<p:sld xmlns:p=\"p\" " + DRAWING + "><a:p><a:r><a:t>slide "
+                    + slide + "</a:t></a:r></a:p></p:sld>");
+        }
+        parts.put("ppt/notesSlides/notesSlide1.xml", "<p:notes xmlns:p=\"p\" " + DRAWING
+                + "><a:p><a:r><a:t>speaker notes</a:t></a:r></a:p></p:notes>");
+
+        assertThat(extractor.extract(zip("deck.pptx", parts), "Deck.PPTX", null)).isEqualTo("slide 1\nslide 2\nslide 10");
+    }
+
+    @Test
+    void documentTypeDeclarationsAreNotProcessed() throws IOException {
+        Path secret = Files.writeString(dir.resolve("secret.txt"), "TOP SECRET");
+        Path entity = zip("evil.docx", Map.of("word/document.xml", document(
+                "<!DOCTYPE w:document [<!ENTITY xxe SYSTEM \"" + secret.toUri() + "\">]>",
+                "<w:p><w:r><w:t>before &xxe; after</w:t></w:r></w:p>")));
+        Path plain = zip("plain.docx", Map.of("word/document.xml", document(
+                "<!DOCTYPE w:document SYSTEM \"" + secret.toUri() + "\">",
+                "<w:p><w:r><w:t>just text</w:t></w:r></w:p>")));
+
+        // the entity is never declared, so referring to it fails the document instead of reading the file
+        assertThatThrownBy(() -> extractor.extract(entity, "evil.docx", null)).isInstanceOf(IOException.class)
+                .hasMessageContaining("Malformed");
+        assertThat(extractor.extract(plain, "plain.docx", null)).isEqualTo("just text");
+    }
+
+    @Test
+    void oversizedPartsAreRejected() throws IOException {
+        // markup outside any text run never reaches maxChars, so only the part limit stops it
+        Path file = zip("big.docx", Map.of("word/document.xml", document("<w:p/>".repeat(10_000))));
+
+        assertThat(new AttachmentTextExtractor(1000, 1 << 20).extract(file, "big.docx", null)).isEmpty();
+        assertThatThrownBy(() -> new AttachmentTextExtractor(1000, 4096).extract(file, "big.docx", null))
+                .isInstanceOf(IOException.class).hasMessageContaining("too large");
+    }
+
+    @Test
+    void textIsCappedAtMaxChars() throws IOException {
+        Path docx = zip("long.docx", Map.of("word/document.xml",
+                document("<w:p><w:r><w:t>" + "数".repeat(5000) + "</w:t></w:r></w:p>")));
+        Path txt = Files.writeString(dir.resolve("long.txt"), "学".repeat(5000));
+
+        assertThat(extractor.extract(docx, "long.docx", null)).isEqualTo("数".repeat(1000));
+        assertThat(extractor.extract(txt, "long.txt", null)).isEqualTo("学".repeat(1000));
+    }
+
+    @Test
+    void plainTextFallsBackToGb18030WhenItIsNotUtf8() throws IOException {
+        Path gb = Files.write(dir.resolve("gb.txt"), "线性代数 复习提纲".getBytes(Charset.forName("GB18030")));
+        Path utf8 = Files.write(dir.resolve("utf8.md"), "\uFEFF线性代数 复习提纲".getBytes(StandardCharsets.UTF_8));
+        // cut in the middle of a three-byte character: still UTF-8, not a reason to switch
+        Path cut = Files.write(dir.resolve("cut"), "线".repeat(1500).getBytes(StandardCharsets.UTF_8));
+
+        assertThat(extractor.extract(gb, "gb.txt", null)).isEqualTo("线性代数 复习提纲");
+        assertThat(extractor.extract(utf8, "utf8.md", null)).isEqualTo("线性代数 复习提纲");
+        assertThat(extractor.extract(cut, "cut", "text/plain")).isEqualTo("线".repeat(1000));
+    }
+
+    @Test
+    void unsupportedFormatsGiveNull() throws IOException {
+        Path file = Files.write(dir.resolve("scan.pdf"), new byte[]{'%', 'P', 'D', 'F'});
+
+        assertThat(extractor.extract(file, "scan.pdf", "application/pdf")).isNull();
+        assertThatThrownBy(() -> extractor.extract(file, "scan.docx", null)).isInstanceOf(IOException.class);
+    }
+
+    private static String document(String body) {
+        return document("", body);
+    }
+
+    private static String document(String doctype, String body) {
+        return "<?xml version=\"1.0\"?>" + doctype + "<w:document " + WORD + "><w:body>" + body + "</w:body></w:document>";
+    }
+
+    private Path zip(String name, Map<String, String> parts) throws IOException {
+        Path file = dir.resolve(name);
+        try (OutputStream out = Files.newOutputStream(file); ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (Map.Entry<String, String> part : parts.entrySet()) {
+                zip.putNextEntry(new ZipEntry(part.getKey()));
+                zip.write(part.getValue().getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return file;
+    }
+}
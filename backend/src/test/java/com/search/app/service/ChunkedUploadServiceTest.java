@@ -0,0 +1,120 @@
+package com.search.app.service;
+
+import org.assertj.core.api.ThrowableAssert.ThrowingCallable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChunkedUploadServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private ChunkedUploadService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        service = service(8, 256, 1000, 10_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void mergesChunksArrivingOutOfOrder() throws IOException {
+        String id = service.start("alice", "a.bin", 100, null).id();
+
+        write(id, 50, 10);
+        write(id, 10, 10);
+        assertThat(ranges(id)).containsExactly(List.of(10L, 20L), List.of(50L, 60L));
+
+        // adjacent on the left, then bridging the gap to the next range
+        write(id, 20, 5);
+        write(id, 25, 25);
+        assertThat(ranges(id)).containsExactly(List.of(10L, 60L));
+        assertThat(service.status("alice", id).receivedBytes()).isEqualTo(50);
+    }
+
+    @Test
+    void overlappingChunksCountEachByteOnce() throws IOException {
+        String id = service.start("alice", "a.bin", 100, null).id();
+
+        write(id, 30, 10);
+        write(id, 60, 10);
+        write(id, 80, 10);
+        // covers the first two ranges entirely and runs into the third
+        write(id, 20, 65);
+        assertThat(ranges(id)).containsExactly(List.of(20L, 90L));
+        assertThat(service.status("alice", id).receivedBytes()).isEqualTo(70);
+
+        write(id, 0, 100);
+        assertThat(ranges(id)).containsExactly(List.of(0L, 100L));
+        assertThat(service.status("alice", id).receivedBytes()).isEqualTo(100);
+    }
+
+    @Test
+    void keepsWhatArrivedOfATruncatedChunk() throws IOException {
+        String id = service.start("alice", "a.bin", 100, null).id();
+        InputStream body = new ByteArrayInputStream(new byte[15]);
+
+        assertThatThrownBy(() -> service.write("alice", id, 40, 30, body)).isInstanceOf(IOException.class);
+        assertThat(ranges(id)).containsExactly(List.of(40L, 55L));
+    }
+
+    @Test
+    void capsSessionsPerUserAndOverall() throws IOException {
+        service.shutdown();
+        service = service(2, 3, 1000, 10_000);
+        service.start("alice", "a.bin", 10, null);
+        String second = service.start("alice", "b.bin", 10, null).id();
+
+        assertLimit(() -> service.start("alice", "c.bin", 10, null), ChunkedUploadService.LimitExceededException.Limit.SESSIONS);
+        service.start("bob", "a.bin", 10, null);
+        assertLimit(() -> service.start("carol", "a.bin", 10, null), ChunkedUploadService.LimitExceededException.Limit.SESSIONS);
+
+        service.abort("alice", second);
+        service.start("carol", "a.bin", 10, null);
+    }
+
+    @Test
+    void capsReservedBytesPerUserAndOverall() throws IOException {
+        service.shutdown();
+        service = service(8, 256, 100, 150);
+        service.start("alice", "a.bin", 60, null);
+
+        assertLimit(() -> service.start("alice", "b.bin", 50, null), ChunkedUploadService.LimitExceededException.Limit.BYTES);
+        service.start("alice", "b.bin", 40, null);
+        assertLimit(() -> service.start("bob", "a.bin", 60, null), ChunkedUploadService.LimitExceededException.Limit.BYTES);
+        service.start("bob", "a.bin", 50, null);
+    }
+
+    private ChunkedUploadService service(int perUser, int sessions, long bytesPerUser, long bytes) throws IOException {
+        return new ChunkedUploadService(new FileStorageService(dir.toString()), 1_000_000, 60,
+                perUser, sessions, bytesPerUser, bytes);
+    }
+
+    private void write(String id, long offset, int length) throws IOException {
+        service.write("alice", id, offset, length, new ByteArrayInputStream(new byte[length]));
+    }
+
+    private List<List<Long>> ranges(String id) {
+        return service.status("alice", id).received().stream().map(r -> List.of(r[0], r[1])).toList();
+    }
+
+    private static void assertLimit(ThrowingCallable start, ChunkedUploadService.LimitExceededException.Limit limit) {
+        assertThatThrownBy(start).isInstanceOfSatisfying(ChunkedUploadService.LimitExceededException.class,
+                e -> assertThat(e.limit()).isEqualTo(limit));
+    }
+}
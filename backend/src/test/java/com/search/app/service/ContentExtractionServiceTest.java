@@ -0,0 +1,135 @@
+package com.search.app.service;
+
+import com.search.app.model.AttachmentContent;
+import com.search.app.model.CourseResource;
+import com.search.app.model.ResourceAttachment;
+import com.search.app.repository.AttachmentContentRepository;
+import com.search.app.repository.ResourceAttachmentRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ContentExtractionServiceTest {
+
+    private static final Long RESOURCE = 7L;
+    private static final int ATTACHMENTS = 4;
+
+    private final AttachmentTextExtractor extractor = mock(AttachmentTextExtractor.class);
+    private final AttachmentContentRepository contents = mock(AttachmentContentRepository.class);
+    private final ResourceAttachmentRepository attachments = mock(ResourceAttachmentRepository.class);
+    private final SearchIndexService indexService = mock(SearchIndexService.class);
+    // one worker with room for one queued job, so a resource with four attachments overflows the queue
+    private final ContentExtractionService service = new ContentExtractionService(true, 1, 1);
+    // attachment id -> extracted text, as the attachment_contents table would hold them
+    private final Map<Long, String> stored = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        FileStorageService storage = mock(FileStorageService.class);
+        when(storage.path(anyString())).thenAnswer(invocation -> Path.of(invocation.getArgument(0, String.class)));
+        when(contents.save(any())).thenAnswer(invocation -> {
+            AttachmentContent content = invocation.getArgument(0);
+            stored.put(content.getAttachmentId(), content.getText() != null ? content.getText() : "");
+            return content;
+        });
+        // the attachments after the given id that have no content row yet
+        when(attachments.findUnextracted(anyLong(), any())).thenAnswer(invocation -> {
+            long after = invocation.getArgument(0);
+            List<Object[]> rows = new ArrayList<>();
+            for (long id = after + 1; id <= ATTACHMENTS; id++) {
+                if (!stored.containsKey(id)) {
+                    rows.add(new Object[]{id, RESOURCE, "blob-" + id, "notes-" + id + ".txt", "text/plain"});
+                }
+            }
+            return rows;
+        });
+
+        ReflectionTestUtils.setField(service, "extractor", extractor);
+        ReflectionTestUtils.setField(service, "storageService", storage);
+        ReflectionTestUtils.setField(service, "contentRepository", contents);
+        ReflectionTestUtils.setField(service, "attachmentRepository", attachments);
+        ReflectionTestUtils.setField(service, "indexService", indexService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void jobsDroppedByAFullQueueAreExtractedByTheSweep() throws IOException {
+        CountDownLatch release = new CountDownLatch(1);
+        when(extractor.extract(any(), anyString(), any())).thenAnswer(invocation -> {
+            // holds the only worker until the queue has overflowed
+            release.await(10, TimeUnit.SECONDS);
+            return "text of " + invocation.getArgument(1);
+        });
+
+        service.extract(resource());
+        release.countDown();
+
+        // attachments 3 and 4 did not fit in the queue, so only the sweep can have queued them
+        verify(attachments, timeout(5000).atLeastOnce()).findUnextracted(eq(0L), any());
+        awaitRows();
+        assertThat(stored).containsOnlyKeys(1L, 2L, 3L, 4L);
+        assertThat(stored.get(3L)).isEqualTo("text of notes-3.txt");
+        verify(indexService, timeout(5000).atLeastOnce()).reindex(RESOURCE);
+    }
+
+    @Test
+    void unreadableAttachmentsGetAnEmptyRowAndNoReindex() throws IOException {
+        when(extractor.extract(any(), anyString(), any())).thenThrow(new IOException("Malformed document XML"));
+
+        service.extract(resource());
+
+        awaitRows();
+        assertThat(stored).containsOnlyKeys(1L, 2L, 3L, 4L);
+        assertThat(stored.values()).containsOnly("");
+        verify(indexService, never()).reindex(any());
+    }
+
+    private void awaitRows() {
+        for (long id = 1; id <= ATTACHMENTS; id++) {
+            Long attachmentId = id;
+            verify(contents, timeout(5000).atLeastOnce())
+                    .save(argThat((AttachmentContent c) -> c.getAttachmentId().equals(attachmentId)));
+        }
+    }
+
+    private static CourseResource resource() {
+        CourseResource resource = new CourseResource();
+        resource.setId(RESOURCE);
+        for (long id = 1; id <= ATTACHMENTS; id++) {
+            ResourceAttachment attachment = new ResourceAttachment();
+            attachment.setId(id);
+            attachment.setResource(resource);
+            attachment.setStoredName("blob-" + id);
+            attachment.setOriginalName("notes-" + id + ".txt");
+            attachment.setContentType("text/plain");
+            resource.getAttachments().add(attachment);
+        }
+        return resource;
+    }
+}
@@ -0,0 +1,48 @@
+package com.search.app.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpRange;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FileDownloadServiceTest {
+
+    private static List<FileDownloadService.Region> regions(String header, long length) {
+        return FileDownloadService.regions(HttpRange.parseRanges(header), length);
+    }
+
+    @Test
+    void resolvesClosedOpenAndSuffixRanges() {
+        assertThat(regions("bytes=0-9", 100)).containsExactly(new FileDownloadService.Region(0, 10));
+        assertThat(regions("bytes=90-", 100)).containsExactly(new FileDownloadService.Region(90, 10));
+        assertThat(regions("bytes=-10", 100)).containsExactly(new FileDownloadService.Region(90, 10));
+    }
+
+    @Test
+    void clampsRangesRunningPastTheEnd() {
+        assertThat(regions("bytes=95-200", 100)).containsExactly(new FileDownloadService.Region(95, 5));
+        assertThat(regions("bytes=-500", 100)).containsExactly(new FileDownloadService.Region(0, 100));
+    }
+
+    @Test
+    void dropsUnsatisfiableRangesFromAMultiRangeRequest() {
+        assertThat(regions("bytes=0-9, 100-109, 500-", 100)).containsExactly(new FileDownloadService.Region(0, 10));
+        assertThat(regions("bytes=0-9, 20-29", 100))
+                .containsExactly(new FileDownloadService.Region(0, 10), new FileDownloadService.Region(20, 10));
+    }
+
+    @Test
+    void rejectsRequestsWithNothingSatisfiable() {
+        assertThatThrownBy(() -> regions("bytes=100-", 100)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> regions("bytes=100-200, 300-400", 100)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> regions("bytes=-10", 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsOverlappingRangesAddingUpToMoreThanTheFile() {
+        assertThatThrownBy(() -> regions("bytes=0-99, 0-99", 100)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
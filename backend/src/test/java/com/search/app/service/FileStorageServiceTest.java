@@ -0,0 +1,95 @@
+package com.search.app.service;
+
+import com.search.app.repository.ResourceAttachmentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FileStorageServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private final ResourceAttachmentRepository attachments = mock(ResourceAttachmentRepository.class);
+    private FileStorageService storage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storage = new FileStorageService(dir.toString());
+        ReflectionTestUtils.setField(storage, "attachmentRepository", attachments);
+        ReflectionTestUtils.setField(storage, "transactionManager", mock(PlatformTransactionManager.class));
+        when(attachments.existsByStoredName(anyString())).thenReturn(false);
+    }
+
+    @Test
+    void identicalUploadsShareOneBlobNamedByTheirHash() throws IOException {
+        FileStorageService.StoredFile first = storage.store(file("a.pdf", "same bytes"), 1024);
+        FileStorageService.StoredFile second = storage.store(file("b.pdf", "same bytes"), 1024);
+        FileStorageService.StoredFile other = storage.store(file("c.pdf", "other bytes"), 1024);
+
+        assertThat(first.storedName()).isEqualTo(second.storedName()).isEqualTo(sha256("same bytes"));
+        assertThat(first.contentHash()).isEqualTo(first.storedName());
+        assertThat(second.originalName()).isEqualTo("b.pdf");
+        assertThat(other.storedName()).isNotEqualTo(first.storedName());
+        // no temporary upload files are left behind
+        assertThat(files()).containsExactlyInAnyOrder(first.storedName(), other.storedName());
+    }
+
+    @Test
+    void aRolledBackUploadOnlyDeletesItsBlobOnceNothingElseHoldsIt() throws IOException {
+        FileStorageService.StoredFile first = storage.store(file("a.pdf", "same bytes"), 1024);
+        FileStorageService.StoredFile second = storage.store(file("b.pdf", "same bytes"), 1024);
+
+        storage.settle(List.of(first), false);
+        assertThat(files()).containsExactly(first.storedName());
+
+        storage.settle(List.of(second), false);
+        assertThat(files()).isEmpty();
+    }
+
+    @Test
+    void committedBlobsStayWhileAnAttachmentRefersToThem() throws IOException {
+        FileStorageService.StoredFile stored = storage.store(file("a.pdf", "bytes"), 1024);
+        // pinned until settled, whatever the rows say
+        assertThat(storage.deleteIfUnreferenced(stored.storedName())).isFalse();
+        storage.settle(List.of(stored), true);
+
+        when(attachments.existsByStoredName(stored.storedName())).thenReturn(true);
+        storage.release(stored.storedName());
+        assertThat(files()).containsExactly(stored.storedName());
+
+        when(attachments.existsByStoredName(stored.storedName())).thenReturn(false);
+        storage.release(stored.storedName());
+        assertThat(files()).isEmpty();
+    }
+
+    private List<String> files() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(f -> f.getFileName().toString()).toList();
+        }
+    }
+
+    private static MockMultipartFile file(String name, String content) {
+        return new MockMultipartFile("files", name, "application/pdf", content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String sha256(String content) {
+        return HexFormat.of().formatHex(FileStorageService.sha256().digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,108 @@
+package com.search.app.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.search.app.dto.ResourceResponse;
+import com.search.app.model.CourseResource;
+import com.search.app.model.ResourceAttachment;
+import com.search.app.model.User;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The export and the list pages must both cover the catalogue exactly once, in id order.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({ResourceExportService.class, ResourceHydrator.class})
+class ResourceExportServiceTest {
+
+    private static final int RESOURCES = 30;
+
+    @Autowired
+    private ResourceExportService exportService;
+
+    @Autowired
+    private ResourceHydrator hydrator;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final List<Long> ids = new ArrayList<>();
+
+    @BeforeEach
+    void seed() {
+        User uploader = new User(null, "alice", "secret", "alice@example.com");
+        entityManager.persist(uploader);
+        for (int i = 0; i < RESOURCES; i++) {
+            CourseResource resource = new CourseResource();
+            resource.setTitle("高等数学 " + i);
+            resource.setCollege("数学学院");
+            resource.setUploader(i % 2 == 0 ? uploader : null);
+            // every third resource has no attachments, which the export's outer join must still emit
+            for (int j = 0; j < i % 3; j++) {
+                ResourceAttachment attachment = new ResourceAttachment();
+                attachment.setResource(resource);
+                attachment.setOriginalName("notes-" + j + ".pdf");
+                attachment.setStoredName(i + "-" + j);
+                attachment.setContentType("application/pdf");
+                attachment.setSize(1024);
+                resource.getAttachments().add(attachment);
+            }
+            entityManager.persist(resource);
+            ids.add(resource.getId());
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void exportWritesOneLinePerResourceWithItsAttachments() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long written = exportService.writeNdjson(out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(written).isEqualTo(RESOURCES);
+        assertThat(lines).hasSize(RESOURCES);
+        for (int i = 0; i < RESOURCES; i++) {
+            JsonNode line = objectMapper.readTree(lines[i]);
+            assertThat(line.get("id").asLong()).isEqualTo(ids.get(i));
+            assertThat(line.get("attachments")).hasSize(i % 3);
+            assertThat(line.get("uploaderName").isNull()).isEqualTo(i % 2 != 0);
+        }
+    }
+
+    @Test
+    void listPagesFollowEachOtherWithoutGapsOrRepeats() {
+        List<Long> listed = new ArrayList<>();
+        long after = 0;
+        while (true) {
+            List<ResourceResponse> page = hydrator.hydrateAfter(after, 7);
+            page.forEach(r -> listed.add(r.getId()));
+            if (page.size() < 7) {
+                break;
+            }
+            after = page.get(page.size() - 1).getId();
+        }
+
+        assertThat(listed).isEqualTo(ids);
+    }
+}
@@ -0,0 +1,115 @@
+package com.search.app.service;
+
+import com.search.app.dto.ResourceResponse;
+import com.search.app.model.CourseResource;
+import com.search.app.model.ResourceAttachment;
+import com.search.app.model.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Hydrating a page must cost the same number of statements whatever its size.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Import(ResourceHydrator.class)
+class ResourceHydratorTest {
+
+    private static final int RESOURCES = 250;
+    private static final int ATTACHMENTS_PER_RESOURCE = 3;
+
+    @Autowired
+    private ResourceHydrator hydrator;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private long firstId;
+
+    @BeforeEach
+    void seed() {
+        User uploader = new User(null, "alice", "secret", "alice@example.com");
+        entityManager.persist(uploader);
+        for (int i = 0; i < RESOURCES; i++) {
+            CourseResource resource = new CourseResource();
+            resource.setTitle("高等数学 " + i);
+            resource.setCollege("数学学院");
+            resource.setUploader(uploader);
+            for (int j = 0; j < ATTACHMENTS_PER_RESOURCE; j++) {
+                ResourceAttachment attachment = new ResourceAttachment();
+                attachment.setResource(resource);
+                attachment.setOriginalName("notes-" + j + ".pdf");
+                attachment.setStoredName(i + "-" + j);
+                attachment.setContentType("application/pdf");
+                attachment.setSize(1024);
+                resource.getAttachments().add(attachment);
+            }
+            entityManager.persist(resource);
+            if (i == 0) {
+                firstId = resource.getId();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void hydrateAfterIssuesTheSameStatementsForEveryPageSize() {
+        long one = statementsFor(() -> hydrator.hydrateAfter(firstId - 1, 1), 1);
+        long twenty = statementsFor(() -> hydrator.hydrateAfter(firstId - 1, 20), 20);
+        long twoHundred = statementsFor(() -> hydrator.hydrateAfter(firstId - 1, 200), 200);
+
+        assertThat(one).isEqualTo(2);
+        assertThat(twenty).isEqualTo(one);
+        assertThat(twoHundred).isEqualTo(one);
+    }
+
+    @Test
+    void hydrateIssuesTheSameStatementsForEveryPageSize() {
+        long one = statementsFor(() -> hydrator.hydrate(ids(1)), 1);
+        long twenty = statementsFor(() -> hydrator.hydrate(ids(20)), 20);
+        long twoHundred = statementsFor(() -> hydrator.hydrate(ids(200)), 200);
+
+        assertThat(one).isEqualTo(2);
+        assertThat(twenty).isEqualTo(one);
+        assertThat(twoHundred).isEqualTo(one);
+    }
+
+    private List<Long> ids(int n) {
+        // newest first, like a date-sorted search page
+        return LongStream.range(0, n).map(i -> firstId + RESOURCES - 1 - i).boxed().toList();
+    }
+
+    private long statementsFor(Supplier<List<ResourceResponse>> page, int expectedSize) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        entityManager.clear();
+        statistics.clear();
+        List<ResourceResponse> responses = page.get();
+        long statements = statistics.getPrepareStatementCount();
+
+        assertThat(responses).hasSize(expectedSize);
+        assertThat(responses).allSatisfy(r -> {
+            assertThat(r.getUploaderName()).isEqualTo("alice");
+            assertThat(r.getAttachments()).hasSize(ATTACHMENTS_PER_RESOURCE);
+        });
+        return statements;
+    }
+}
@@ -0,0 +1,119 @@
+package com.search.app.service;
+
+import com.search.app.model.CourseResource;
+import com.search.app.model.ResourceAttachment;
+import com.search.app.model.enums.AttachmentCategory;
+import com.search.app.repository.CourseResourceRepository;
+import com.search.app.repository.ResourceAttachmentRepository;
+import com.search.app.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ResourceUploadServiceTest {
+
+    private static final List<AttachmentCategory> CATEGORIES =
+            List.of(AttachmentCategory.NOTE, AttachmentCategory.NOTE, AttachmentCategory.NOTE);
+
+    @TempDir
+    Path dir;
+
+    private final CourseResourceRepository resources = mock(CourseResourceRepository.class);
+    private final ResourceUploadService service = new ResourceUploadService(4);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ResourceAttachmentRepository attachments = mock(ResourceAttachmentRepository.class);
+        when(attachments.existsByStoredName(anyString())).thenReturn(false);
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        FileStorageService storage = new FileStorageService(dir.toString());
+        ReflectionTestUtils.setField(storage, "attachmentRepository", attachments);
+        ReflectionTestUtils.setField(storage, "transactionManager", transactionManager);
+
+        ReflectionTestUtils.setField(service, "storageService", storage);
+        ReflectionTestUtils.setField(service, "resourceRepository", resources);
+        ReflectionTestUtils.setField(service, "userRepository", mock(UserRepository.class));
+        ReflectionTestUtils.setField(service, "indexService", mock(SearchIndexService.class));
+        ReflectionTestUtils.setField(service, "extractionService", mock(ContentExtractionService.class));
+        ReflectionTestUtils.setField(service, "transactionManager", transactionManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void savesOneAttachmentPerFileInUploadOrder() throws IOException {
+        when(resources.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        CourseResource saved = service.upload(resource(), null, uploads("a", "b", "c"), CATEGORIES, 1024);
+
+        assertThat(saved.getAttachments()).extracting(ResourceAttachment::getOriginalName)
+                .containsExactly("a.pdf", "b.pdf", "c.pdf");
+        assertThat(saved.getAttachments()).allSatisfy(a -> assertThat(a.getStoredName()).isEqualTo(a.getContentHash()));
+        assertThat(storedFiles()).hasSize(3);
+    }
+
+    @Test
+    void aFailedSaveDeletesTheFilesItWrote() {
+        when(resources.save(any())).thenThrow(new IllegalStateException("constraint violated"));
+
+        assertThatThrownBy(() -> service.upload(resource(), null, uploads("a", "b", "c"), CATEGORIES, 1024))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(storedFiles()).isEmpty();
+    }
+
+    @Test
+    void aFailedWriteReleasesWhatTheOtherWritersStored() throws IOException {
+        List<MultipartFile> files = new ArrayList<>(uploads("a", "b"));
+        files.add(new MockMultipartFile("files", "empty.pdf", "application/pdf", new byte[0]));
+
+        assertThatThrownBy(() -> service.upload(resource(), null, files, CATEGORIES, 1024))
+                .isInstanceOf(IOException.class);
+        verify(resources, never()).save(any());
+        assertThat(storedFiles()).isEmpty();
+    }
+
+    private List<String> storedFiles() {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(f -> f.getFileName().toString()).toList();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static List<MultipartFile> uploads(String... names) {
+        return Stream.of(names).<MultipartFile>map(name -> new MockMultipartFile("files", name + ".pdf",
+                "application/pdf", ("content of " + name).getBytes(StandardCharsets.UTF_8))).toList();
+    }
+
+    private static CourseResource resource() {
+        CourseResource resource = new CourseResource();
+        resource.setTitle("高等数学");
+        resource.setCollege("数学学院");
+        return resource;
+    }
+}
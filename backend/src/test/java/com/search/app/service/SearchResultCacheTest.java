@@ -0,0 +1,90 @@
+package com.search.app.service;
+
+import com.search.app.search.CjkBigramAnalyzer;
+import com.search.app.search.InvertedIndex;
+import com.search.app.search.RankingParams;
+import com.search.app.search.SearchFilter;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchResultCacheTest {
+
+    private final SearchResultCache cache = new SearchResultCache(100, 1000, List.of("relevance", "date", " Name "));
+
+    @Test
+    void servesEntriesOfTheCurrentGeneration() {
+        cache.put(key("math"), 3, result(1, 2));
+
+        assertThat(cache.get(key("math"), 3).ids()).containsExactly(1L, 2L);
+        assertThat(cache.get(key("physics"), 3)).isNull();
+        assertThat(cache.stats().hits()).isEqualTo(1);
+        assertThat(cache.stats().misses()).isEqualTo(1);
+    }
+
+    @Test
+    void newerGenerationDropsEverything() {
+        cache.put(key("math"), 3, result(1));
+        cache.put(key("physics"), 3, result(2));
+
+        assertThat(cache.get(key("math"), 4)).isNull();
+        assertThat(cache.stats().entries()).isZero();
+        assertThat(cache.stats().weight()).isZero();
+        assertThat(cache.stats().generation()).isEqualTo(4);
+    }
+
+    @Test
+    void staleResultsAreNotStoredOrServed() {
+        cache.get(key("math"), 5);
+        // computed before the catalogue moved to generation 5
+        cache.put(key("math"), 4, result(1));
+
+        assertThat(cache.stats().entries()).isZero();
+        assertThat(cache.get(key("math"), 4)).isNull();
+        assertThat(cache.stats().generation()).isEqualTo(5);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedOverWeight() {
+        SearchResultCache small = new SearchResultCache(100, 25, List.of("relevance"));
+        small.put(key("a"), 1, result(LongStream.range(0, 10).toArray()));
+        small.put(key("b"), 1, result(LongStream.range(0, 10).toArray()));
+        small.get(key("a"), 1);
+        small.put(key("c"), 1, result(LongStream.range(0, 10).toArray()));
+
+        assertThat(small.get(key("a"), 1)).isNotNull();
+        assertThat(small.get(key("b"), 1)).isNull();
+        assertThat(small.get(key("c"), 1)).isNotNull();
+        assertThat(small.stats().evictions()).isEqualTo(1);
+    }
+
+    @Test
+    void cachesOnlyConfiguredSorts() {
+        assertThat(cache.caches("name")).isTrue();
+        assertThat(new SearchResultCache(100, 1000, List.of("date")).caches("relevance")).isFalse();
+        assertThat(new SearchResultCache(0, 1000, List.of("date")).caches("date")).isFalse();
+    }
+
+    @Test
+    void queriesWithTheSameAnalyzedTermsShareAKey() {
+        InvertedIndex index = new InvertedIndex(new CjkBigramAnalyzer(),
+                new RankingParams(1.2f, 0.75f, 3f, 1f, 0.5f, 0.4f, 365, 0.2f, RankingParams.Strategy.TOPK));
+
+        assertThat(index.clauses(List.of("ＭＡＴＨ,", "高等数学")))
+                .isEqualTo(index.clauses(List.of("math", "高等数学!")));
+        assertThat(index.clauses(List.of("math", "!!"))).hasSize(1);
+    }
+
+    private static SearchResultCache.Key key(String token) {
+        return new SearchResultCache.Key(List.of(List.of(token)), true, "relevance", 0, 20, null, 0, false,
+                SearchFilter.NONE, false);
+    }
+
+    private static ResourceSearchService.SearchResult result(long... ids) {
+        return new ResourceSearchService.SearchResult(LongStream.of(ids).boxed().toList(), ids.length, true, null,
+                null, null);
+    }
+}
@@ -15,6 +15,22 @@
 /*!40101 SET @OLD_SQL_MODE=@@SQL_MODE, SQL_MODE='NO_AUTO_VALUE_ON_ZERO' */;
 /*!40111 SET @OLD_SQL_NOTES=@@SQL_NOTES, SQL_NOTES=0 */;
 
+--
+-- Table structure for table `attachment_contents`
+--
+
+DROP TABLE IF EXISTS `attachment_contents`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `attachment_contents` (
+  `attachment_id` bigint NOT NULL,
+  `extracted_at` datetime(6) NOT NULL,
+  `text` longtext,
+  PRIMARY KEY (`attachment_id`),
+  CONSTRAINT `fk_attachment_contents_attachment` FOREIGN KEY (`attachment_id`) REFERENCES `resource_attachments` (`id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
 --
 -- Table structure for table `course_resources`
 --
@@ -50,8 +66,10 @@ CREATE TABLE `resource_attachments` (
   `resource_id` bigint NOT NULL,
   `category` enum('NOTE','EXAM') DEFAULT NULL,
   `title` varchar(255) DEFAULT NULL,
+  `content_hash` varchar(64) DEFAULT NULL,
   PRIMARY KEY (`id`),
   KEY `FKa9y9xk0q0gg0t6sn2vknq15gb` (`resource_id`),
+  KEY `idx_attachment_stored_name` (`stored_name`),
   CONSTRAINT `FKa9y9xk0q0gg0t6sn2vknq15gb` FOREIGN KEY (`resource_id`) REFERENCES `course_resources` (`id`)
 ) ENGINE=InnoDB AUTO_INCREMENT=11 DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 /*!40101 SET character_set_client = @saved_cs_client */;